@@ -19,14 +19,161 @@ export type ActualizeImagePickerMediaType = "image" | "video" | "all";
 // - "high": High quality (720p)
 // - "highest": Maximum quality
 // - "passthrough": No transcoding, just copy the file
+// On Android, videos are transcoded to H.264 MP4; videos that already fit the preset are copied as-is
 export type ActualizeImagePickerVideoQuality = "low" | "medium" | "high" | "highest" | "passthrough";
 
+// Resize mode used together with maxWidth / maxHeight
+// - "fit": The whole image is scaled down to fit inside the bounds
+// - "fill": The image is scaled down to cover the bounds and center-cropped to them
+export type ActualizeImagePickerResizeMode = "fit" | "fill";
+
+// When picked items are processed (Android)
+// - "eager": Before the pick resolves (default)
+// - "lazy": The pick resolves at once with handles; call materialize() for the items that are needed
+export type ActualizeImagePickerMaterializeMode = "eager" | "lazy";
+
+// Encoding of the returned images (Android)
+// - "jpeg": JPEG (default)
+// - "webp": Lossy WebP
+// - "heif": HEIF, on Android 9+ with a hardware HEVC encoder; falls back to JPEG otherwise
+// - "png": Lossless PNG, imageQuality is ignored
+export type ActualizeImagePickerOutputFormat = "jpeg" | "webp" | "heif" | "png";
+
+// Pixel format used while processing images (Android)
+// - "ARGB_8888": Full colour depth with alpha
+// - "RGB_565": Half the memory per pixel, no alpha and reduced colour depth
+export type ActualizeImagePickerBitmapConfig = "ARGB_8888" | "RGB_565";
+
+// How processed files are returned (Android)
+// - "file": As URIs of files in the app's cache (default)
+// - "arraybuffer": As ArrayBuffers in the data field, sent in binary chunks; larger outputs are still returned as files.
+//   A convenience, not zero-copy: the file is written in full first and the bridge carries the bytes base64-encoded
+export type ActualizeImagePickerReturnMode = "file" | "arraybuffer";
+
 // Configurations
 export interface ActualizeImagePickerSingleConfiguration {
     /**
      * The quality of the images returned by the Image Picker, from 0 to 100 (default = 100)
      */
     imageQuality?: number;
+    /**
+     * The encoding of the returned images (default = "jpeg")
+     * Only applies to Android.
+     */
+    outputFormat?: ActualizeImagePickerOutputFormat;
+    /**
+     * Quality overrides per output format, from 0 to 100, e.g. { webp: 75, jpeg: 90 }.
+     * The quality of the format actually written is used, so a JPEG fallback keeps its own quality (default = imageQuality)
+     * Only applies to Android.
+     */
+    formatQuality?: { jpeg?: number; webp?: number; heif?: number };
+    /**
+     * The maximum width of the returned images, in pixels. Images are never upscaled (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxWidth?: number;
+    /**
+     * The maximum height of the returned images, in pixels. Images are never upscaled (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxHeight?: number;
+    /**
+     * How images are fitted to maxWidth / maxHeight: "fit" or "fill" (default = "fit")
+     * Only applies to Android.
+     */
+    resizeMode?: ActualizeImagePickerResizeMode;
+    /**
+     * Copy JPEGs without re-encoding when the output format is "jpeg", its quality is 100 and no resize is requested.
+     * The orientation is then carried in the EXIF orientation tag instead of being applied to the pixels, so viewers
+     * that ignore EXIF show such images rotated, and all other metadata is kept unless stripMetadata is set (default = false)
+     * Only applies to Android.
+     */
+    passthrough?: boolean;
+    /**
+     * Remove metadata such as GPS position and maker notes from the returned images,
+     * keeping only the orientation (default = false)
+     * Only applies to Android.
+     */
+    stripMetadata?: boolean;
+    /**
+     * Reuse previously processed files when the same unchanged item is picked again with the same options (default = true)
+     * Only applies to Android.
+     */
+    cache?: boolean;
+    /**
+     * Raises the size budget of the processed files cache, in megabytes, while this pick is in progress.
+     * Least recently used files are evicted once it is exceeded. The cache is shared, so this never lowers
+     * the budget the app sets with the ActualizeImagePickerCacheSizeMB preference (default = 256)
+     * Only applies to Android.
+     */
+    cacheSizeLimitMB?: number;
+    /**
+     * The pixel format used while processing images. "RGB_565" halves the memory of each bitmap
+     * at the cost of alpha and colour depth (default = "ARGB_8888")
+     * Only applies to Android.
+     */
+    bitmapConfig?: ActualizeImagePickerBitmapConfig;
+    /**
+     * Images with more megapixels than this are decoded tile by tile within a fixed memory budget, 0 to disable (default = 40)
+     * Only applies to Android.
+     */
+    tiledDecodeThresholdMP?: number;
+    /**
+     * Return the time and bytes of each processing stage in the `timings` field of each result (default = false)
+     * Only applies to Android.
+     */
+    timings?: boolean;
+    /**
+     * Identifies this pick in its result and in cancel(), so several picks can be processed at once (default = generated)
+     * Only applies to Android.
+     */
+    requestId?: string;
+    /**
+     * How processed files are returned (default = "file")
+     * Only applies to Android.
+     */
+    returnMode?: ActualizeImagePickerReturnMode;
+    /**
+     * Outputs larger than this are returned as files even with returnMode "arraybuffer", in KB (default = 16384)
+     * Only applies to Android.
+     */
+    arrayBufferMaxKB?: number;
+    /**
+     * Return the SHA-256 of each processed file in its hash field, computed while the file is written (default = false)
+     * Only applies to Android.
+     */
+    hash?: boolean;
+    /**
+     * Also return the SHA-256 of each chunk of this size, in KB, for resumable uploads (default = 0, whole file only)
+     * Only applies to Android.
+     */
+    hashChunkKB?: number;
+    /**
+     * Images are encoded at the highest quality, down to 30, that fits in this many KB; JPEG, WebP and PNG only, HEIF is encoded as JPEG (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxFileSizeKB?: number;
+    /**
+     * Scale images down when even the lowest quality does not fit maxFileSizeKB (default = true)
+     * Only applies to Android.
+     */
+    maxFileSizeDownscale?: boolean;
+    /**
+     * Items taking longer than this many seconds are reported as failed with reason "timeout", 0 for no limit (default = 0)
+     * Only applies to Android.
+     */
+    itemTimeoutSeconds?: number;
+    /**
+     * "lazy" resolves at once with a handle per item instead of processing it; pass the handles to materialize() later (default = "eager")
+     * Only applies to Android.
+     */
+    materialize?: ActualizeImagePickerMaterializeMode;
+    /**
+     * Persist the read permission of lazy handles, where the provider allows it, so they stay usable after a restart.
+     * Persisted permissions count against the app's limit until materialize() or releaseHandles() releases them (default = false)
+     * Only applies to Android.
+     */
+    persistHandles?: boolean;
     /**
      * The type of media to pick: "image", "video", or "all" (default = "image")
      */
@@ -42,9 +189,13 @@ export interface ActualizeImagePickerSingleConfiguration {
     videoQuality?: ActualizeImagePickerVideoQuality;
     /**
      * The message shown in the progress overlay during video transcoding (default = "Processing video...")
-     * Only applies to iOS. On Android, videos are currently copied without transcoding.
+     * Only applies to iOS. On Android, use onProgress to show the transcoding progress.
      */
     videoProcessingMessage?: string;
+    /**
+     * Called while videos are being transcoded, in steps of at least one percent (Android only)
+     */
+    onProgress?: (event: ActualizeImagePickerProgressEvent) => void;
 }
 
 export interface ActualizeImagePickerMultipleConfiguration {
@@ -56,6 +207,129 @@ export interface ActualizeImagePickerMultipleConfiguration {
      * The quality of the images returned by the Image Picker, from 0 to 100 (default = 100)
      */
     imageQuality?: number;
+    /**
+     * The encoding of the returned images (default = "jpeg")
+     * Only applies to Android.
+     */
+    outputFormat?: ActualizeImagePickerOutputFormat;
+    /**
+     * Quality overrides per output format, from 0 to 100, e.g. { webp: 75, jpeg: 90 }.
+     * The quality of the format actually written is used, so a JPEG fallback keeps its own quality (default = imageQuality)
+     * Only applies to Android.
+     */
+    formatQuality?: { jpeg?: number; webp?: number; heif?: number };
+    /**
+     * The maximum width of the returned images, in pixels. Images are never upscaled (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxWidth?: number;
+    /**
+     * The maximum height of the returned images, in pixels. Images are never upscaled (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxHeight?: number;
+    /**
+     * How images are fitted to maxWidth / maxHeight: "fit" or "fill" (default = "fit")
+     * Only applies to Android.
+     */
+    resizeMode?: ActualizeImagePickerResizeMode;
+    /**
+     * Copy JPEGs without re-encoding when the output format is "jpeg", its quality is 100 and no resize is requested.
+     * The orientation is then carried in the EXIF orientation tag instead of being applied to the pixels, so viewers
+     * that ignore EXIF show such images rotated, and all other metadata is kept unless stripMetadata is set (default = false)
+     * Only applies to Android.
+     */
+    passthrough?: boolean;
+    /**
+     * Remove metadata such as GPS position and maker notes from the returned images,
+     * keeping only the orientation (default = false)
+     * Only applies to Android.
+     */
+    stripMetadata?: boolean;
+    /**
+     * Reuse previously processed files when the same unchanged item is picked again with the same options (default = true)
+     * Only applies to Android.
+     */
+    cache?: boolean;
+    /**
+     * Raises the size budget of the processed files cache, in megabytes, while this pick is in progress.
+     * Least recently used files are evicted once it is exceeded. The cache is shared, so this never lowers
+     * the budget the app sets with the ActualizeImagePickerCacheSizeMB preference (default = 256)
+     * Only applies to Android.
+     */
+    cacheSizeLimitMB?: number;
+    /**
+     * The pixel format used while processing images. "RGB_565" halves the memory of each bitmap
+     * at the cost of alpha and colour depth (default = "ARGB_8888")
+     * Only applies to Android.
+     */
+    bitmapConfig?: ActualizeImagePickerBitmapConfig;
+    /**
+     * Images with more megapixels than this are decoded tile by tile within a fixed memory budget, 0 to disable (default = 40)
+     * Only applies to Android.
+     */
+    tiledDecodeThresholdMP?: number;
+    /**
+     * Return the time and bytes of each processing stage in the `timings` field of each result (default = false)
+     * Only applies to Android.
+     */
+    timings?: boolean;
+    /**
+     * Identifies this pick in its result and in cancel(), so several picks can be processed at once (default = generated)
+     * Only applies to Android.
+     */
+    requestId?: string;
+    /**
+     * How processed files are returned (default = "file")
+     * Only applies to Android.
+     */
+    returnMode?: ActualizeImagePickerReturnMode;
+    /**
+     * Outputs larger than this are returned as files even with returnMode "arraybuffer", in KB (default = 16384)
+     * Only applies to Android.
+     */
+    arrayBufferMaxKB?: number;
+    /**
+     * Return the SHA-256 of each processed file in its hash field, computed while the file is written (default = false)
+     * Only applies to Android.
+     */
+    hash?: boolean;
+    /**
+     * Also return the SHA-256 of each chunk of this size, in KB, for resumable uploads (default = 0, whole file only)
+     * Only applies to Android.
+     */
+    hashChunkKB?: number;
+    /**
+     * Images are encoded at the highest quality, down to 30, that fits in this many KB; JPEG, WebP and PNG only, HEIF is encoded as JPEG (default = 0, no limit)
+     * Only applies to Android.
+     */
+    maxFileSizeKB?: number;
+    /**
+     * Scale images down when even the lowest quality does not fit maxFileSizeKB (default = true)
+     * Only applies to Android.
+     */
+    maxFileSizeDownscale?: boolean;
+    /**
+     * Items taking longer than this many seconds are reported as failed with reason "timeout", 0 for no limit (default = 0)
+     * Only applies to Android.
+     */
+    itemTimeoutSeconds?: number;
+    /**
+     * "lazy" resolves at once with a handle per item instead of processing it; pass the handles to materialize() later (default = "eager")
+     * Only applies to Android.
+     */
+    materialize?: ActualizeImagePickerMaterializeMode;
+    /**
+     * Persist the read permission of lazy handles, where the provider allows it, so they stay usable after a restart.
+     * Persisted permissions count against the app's limit until materialize() or releaseHandles() releases them (default = false)
+     * Only applies to Android.
+     */
+    persistHandles?: boolean;
+    /**
+     * Journal the pick on disk so its processing resumes after the app is killed; collect the result with resumePending() (default = false)
+     * Only applies to Android.
+     */
+    durable?: boolean;
     /**
      * The type of media to pick: "image", "video", or "all" (default = "image")
      */
@@ -71,28 +345,476 @@ export interface ActualizeImagePickerMultipleConfiguration {
     videoQuality?: ActualizeImagePickerVideoQuality;
     /**
      * The message shown in the progress overlay during video transcoding (default = "Processing video...")
-     * Only applies to iOS. On Android, videos are currently copied without transcoding.
+     * Only applies to iOS. On Android, use onProgress to show the transcoding progress.
      */
     videoProcessingMessage?: string;
+    /**
+     * Called while videos are being transcoded, in steps of at least one percent (Android only)
+     */
+    onProgress?: (event: ActualizeImagePickerProgressEvent) => void;
+    /**
+     * Called for every item as soon as it has been processed, in completion order.
+     * Setting it enables streaming mode; the promise still resolves with the final summary (Android only)
+     */
+    onItem?: (item: ActualizeImagePickerItemEvent) => void;
+    /**
+     * Called with small previews of the selected items while full-size processing runs: first with every
+     * preview ready within 100 ms of the picker closing, then again for each preview that finishes later.
+     * Previews use the system thumbnail provider where available (Android only)
+     */
+    onPreviews?: (previews: ActualizeImagePickerPreview[]) => void;
+    /**
+     * The maximum width and height of the previews passed to onPreviews, in pixels (default = 256)
+     */
+    previewSize?: number;
 }
 
 // Results
 export interface ActualizeImagePickerGenericResult {
     status: ActualizeImagePickerStatus;
     message?: string;
+    /**
+     * The id of the pick the result belongs to (Android only)
+     */
+    requestId?: string;
 }
 
 export interface ActualizeImagePickerSingleResult {
     imageFileUri?: string;
+    /**
+     * The unprocessed item, with materialize: "lazy" (Android only)
+     */
+    handle?: ActualizeImagePickerHandle;
+    /**
+     * Size of the processed file in bytes (Android only)
+     */
+    size?: number;
+    /**
+     * "arraybuffer" if the processed file was returned in data (Android only)
+     */
+    returnMode?: ActualizeImagePickerReturnMode;
+    /**
+     * The processed file, when returnMode is "arraybuffer" (Android only)
+     */
+    data?: ArrayBuffer;
+    /**
+     * Time spent processing the item, in milliseconds (Android only)
+     */
+    timeMs?: number;
+    /**
+     * Copy statistics for videos that were not transcoded (Android only)
+     */
+    transfer?: ActualizeImagePickerTransferInfo;
+    /**
+     * Transcoding statistics for videos (Android only)
+     */
+    transcode?: ActualizeImagePickerTranscodeInfo;
+    /**
+     * True if the file was returned from the processed files cache without any processing (Android only)
+     */
+    cached?: boolean;
+    /**
+     * The SHA-256 of the processed file, when requested with `hash: true` (Android only)
+     */
+    hash?: ActualizeImagePickerContentHash;
+    /**
+     * Set when the image was decoded tile by tile (Android only)
+     */
+    tiled?: { tiles: number; sampleSize: number };
+    /**
+     * Set when maxFileSizeKB was given: the quality and size chosen, the number of encode passes and scale-downs,
+     * and whether the output fits (Android only)
+     */
+    sizeSearch?: { quality: number; passes: number; downscales: number; width: number; height: number; fits: boolean };
+    /**
+     * Time and bytes of each processing stage, when requested with `timings: true` (Android only)
+     */
+    timings?: ActualizeImagePickerTimings;
+    /**
+     * The format the image was actually encoded in, which may differ from outputFormat after a fallback (Android only)
+     */
+    format?: ActualizeImagePickerOutputFormat;
+    /**
+     * The MIME type of the returned image (Android only)
+     */
+    mimeType?: string;
+    /**
+     * What the content provider reports about the selected item (Android only)
+     */
+    metadata?: ActualizeImagePickerMetadata;
+}
+
+export type ActualizeImagePickerItemStatus = "OK" | "ERROR" | "CANCELED";
+
+export interface ActualizeImagePickerContentHash {
+    algorithm: "SHA-256";
+    /**
+     * Lowercase hex digest of the whole file
+     */
+    sha256: string;
+    size: number;
+    /**
+     * Set when hashChunkKB was given
+     */
+    chunkSize?: number;
+    chunks?: { offset: number; size: number; sha256: string }[];
+}
+
+export interface ActualizeImagePickerTransferInfo {
+    /**
+     * "channel" for a kernel-level file descriptor copy, "stream" for the buffered fallback
+     */
+    method: "channel" | "stream";
+    bytes: number;
+    timeMs: number;
+    throughputMBps: number;
+}
+
+/**
+ * Values the provider does not report are left out.
+ */
+export interface ActualizeImagePickerMetadata {
+    mimeType?: string;
+    displayName?: string;
+    size?: number;
+    width?: number;
+    height?: number;
+    /**
+     * Clockwise rotation in degrees
+     */
+    orientation?: number;
+    durationMs?: number;
+    /**
+     * Milliseconds since the epoch
+     */
+    dateTaken?: number;
+    dateModified?: number;
+}
+
+export interface ActualizeImagePickerTranscodeInfo {
+    preset: ActualizeImagePickerVideoQuality;
+    width: number;
+    height: number;
+    bitrate: number;
+    bytes: number;
+    timeMs: number;
+}
+
+export interface ActualizeImagePickerItemResult {
+    /**
+     * Position of the item in the original selection
+     */
+    index: number;
+    /**
+     * The URI of the selected media, as returned by the picker
+     */
+    sourceUri: string;
+    status: ActualizeImagePickerItemStatus;
+    /**
+     * The URI of the processed local file (only set when status is "OK")
+     */
+    imageFileUri?: string;
+    /**
+     * The reason the item could not be processed (only set when status is "ERROR")
+     */
+    message?: string;
+    /**
+     * "timeout" when the item took longer than itemTimeoutSeconds (Android only)
+     */
+    reason?: "timeout";
+    /**
+     * Size of the processed file in bytes (Android only)
+     */
+    size?: number;
+    /**
+     * "arraybuffer" if the processed file was returned in data (Android only)
+     */
+    returnMode?: ActualizeImagePickerReturnMode;
+    /**
+     * The processed file, when returnMode is "arraybuffer" (Android only)
+     */
+    data?: ArrayBuffer;
+    /**
+     * Time spent processing the item, in milliseconds (Android only)
+     */
+    timeMs?: number;
+    /**
+     * Copy statistics for videos that were not transcoded (Android only)
+     */
+    transfer?: ActualizeImagePickerTransferInfo;
+    /**
+     * Transcoding statistics for videos (Android only)
+     */
+    transcode?: ActualizeImagePickerTranscodeInfo;
+    /**
+     * True if the file was returned from the processed files cache without any processing (Android only)
+     */
+    cached?: boolean;
+    /**
+     * The SHA-256 of the processed file, when requested with `hash: true` (Android only)
+     */
+    hash?: ActualizeImagePickerContentHash;
+    /**
+     * Set when the image was decoded tile by tile (Android only)
+     */
+    tiled?: { tiles: number; sampleSize: number };
+    /**
+     * Set when maxFileSizeKB was given: the quality and size chosen, the number of encode passes and scale-downs,
+     * and whether the output fits (Android only)
+     */
+    sizeSearch?: { quality: number; passes: number; downscales: number; width: number; height: number; fits: boolean };
+    /**
+     * Time and bytes of each processing stage, when requested with `timings: true` (Android only)
+     */
+    timings?: ActualizeImagePickerTimings;
+    /**
+     * The format the image was actually encoded in, which may differ from outputFormat after a fallback (Android only)
+     */
+    format?: ActualizeImagePickerOutputFormat;
+    /**
+     * The MIME type of the returned image (Android only)
+     */
+    mimeType?: string;
+    /**
+     * What the content provider reports about the selected item (Android only)
+     */
+    metadata?: ActualizeImagePickerMetadata;
+}
+
+export interface ActualizeImagePickerPreview {
+    index: number;
+    sourceUri: string;
+    status: ActualizeImagePickerItemStatus;
+    /**
+     * The URI of the preview JPEG (only set when status is "OK")
+     */
+    previewUri?: string;
+    message?: string;
+}
+
+export interface ActualizeImagePickerItemEvent extends ActualizeImagePickerItemResult {
+    type: "item";
+}
+
+export interface ActualizeImagePickerProgressEvent {
+    type: "progress";
+    /**
+     * Position of the item in the original selection
+     */
+    index: number;
+    sourceUri: string;
+    /**
+     * "read" while the item is read from its provider, e.g. downloaded from the cloud,
+     * "transcode" while a video is transcoded
+     */
+    stage: "read" | "transcode";
+    /**
+     * Fraction of the stage that is done, from 0 to 1; not set for reads when the provider reports no size
+     */
+    progress?: number;
+    /**
+     * Bytes read from the provider so far (read stage only)
+     */
+    bytesRead?: number;
+    /**
+     * The size reported by the provider, if any (read stage only)
+     */
+    totalBytes?: number;
 }
 
 export interface ActualizeImagePickerMultipleResult {
+    /**
+     * The URIs of the successfully processed files, in selection order
+     */
     imageFilesUris: string[];
+    /**
+     * Per-item results in selection order, including failed items (Android only)
+     */
+    items?: ActualizeImagePickerItemResult[];
+    /**
+     * The unprocessed items in selection order, with materialize: "lazy"; imageFilesUris is then empty (Android only)
+     */
+    handles?: ActualizeImagePickerHandle[];
+}
+
+export interface ActualizeImagePickerHandle {
+    index: number;
+    sourceUri: string;
+    metadata: ActualizeImagePickerMetadata;
+    /**
+     * "persisted" if read access survives an app restart, with persistHandles, "session" if it lasts until the app is closed
+     */
+    permission: "persisted" | "session";
+}
+
+export interface ActualizeImagePickerMaterializeOptions extends ActualizeImagePickerMultipleConfiguration {
+    /**
+     * Release the read permissions the handles held once they are processed (default = true)
+     */
+    releaseHandles?: boolean;
+}
+
+export interface ActualizeImagePickerBitmapPoolStats {
+    requests: number;
+    hits: number;
+    hitRate: number;
+    pooled: number;
+    retainedBytes: number;
+    peakRetainedBytes: number;
+    maxBytes: number;
+}
+
+export interface ActualizeImagePickerMemoryStats {
+    /**
+     * The current budget for the bitmaps of images in progress, lowered under memory pressure
+     */
+    budgetBytes: number;
+    maxBytes: number;
+    /**
+     * How many images may be in progress at once, lowered under memory pressure
+     */
+    concurrency: number;
+    maxConcurrency: number;
+    /**
+     * 0 for none, 1 for moderate, 2 for critical
+     */
+    pressure: number;
+    pressureEvents: number;
+    active: number;
+    inUseBytes: number;
+    peakInUseBytes: number;
+    queued: number;
+    queuedBytes: number;
+    peakQueuedBytes: number;
+    admitted: number;
+    /**
+     * How many images had to wait for the budget
+     */
+    throttled: number;
+    waitMs: number;
+}
+
+export interface ActualizeImagePickerStageTiming {
+    ms: number;
+    /**
+     * Bytes read (decode) or written (encode, passthrough, transcode, copy, total) by the stage, if applicable;
+     * for admission, the estimated bitmap bytes the item was admitted with
+     */
+    bytes?: number;
+}
+
+/**
+ * Stages: "passthrough", "exif", "admission" (waiting for the memory budget), "decode", "resize", "rotate",
+ * "encode" (including the disk write), "transcode", "copy", "hash" and "total". Only the stages an item went through are present.
+ */
+export interface ActualizeImagePickerTimings {
+    [stage: string]: ActualizeImagePickerStageTiming | number;
+    /**
+     * The largest size of the bitmaps held at the same time while processing the item
+     */
+    peakBitmapBytes: number;
+}
+
+export interface ActualizeImagePickerStageMetrics {
+    count: number;
+    /**
+     * Percentiles over the most recent samples of the stage
+     */
+    p50Ms: number;
+    p95Ms: number;
+    maxMs: number;
+    totalBytes: number;
+}
+
+export interface ActualizeImagePickerMetrics {
+    items: number;
+    peakBitmapBytes: number;
+    /**
+     * The number of recent samples per stage the percentiles are computed over
+     */
+    windowSize: number;
+    /**
+     * The item stages, plus "metadata" (provider queries of a pick) and "pickImage" / "pickImages" (whole picks)
+     */
+    stages: { [stage: string]: ActualizeImagePickerStageMetrics };
+}
+
+export interface ActualizeImagePickerCancelResult {
+    status: ActualizeImagePickerStatus;
+    /**
+     * False if there was no matching pick in progress
+     */
+    canceled: boolean;
+}
+
+export interface ActualizeImagePickerPendingResult {
+    status: ActualizeImagePickerStatus;
+    /**
+     * The results of durable picks that finished after the app was restarted, as pickImages would have resolved them
+     */
+    jobs: (ActualizeImagePickerGenericResult & ActualizeImagePickerMultipleResult & { requestId: string })[];
+}
+
+export interface ActualizeImagePickerCacheStats {
+    hits: number;
+    misses: number;
+    hitRate: number;
+    evictions: number;
+    entries: number;
+    /**
+     * Entries held by picks that have not resolved yet, which are never evicted
+     */
+    pinned: number;
+    bytes: number;
+    maxBytes: number;
 }
 
 export interface ActualizeImagePickerModule {
     pickImage(configuration?: ActualizeImagePickerSingleConfiguration): Promise<ActualizeImagePickerGenericResult & ActualizeImagePickerSingleResult>;
     pickImages(configuration?: ActualizeImagePickerMultipleConfiguration): Promise<ActualizeImagePickerGenericResult & ActualizeImagePickerMultipleResult>;
+    /**
+     * Processes the items of handles returned by a lazy pick, in parallel, and resolves like pickImages
+     * with the items in the order given. Takes the same processing options as pickImages (Android only)
+     */
+    materialize(handles: (ActualizeImagePickerHandle | string)[], options?: ActualizeImagePickerMaterializeOptions): Promise<ActualizeImagePickerGenericResult & ActualizeImagePickerMultipleResult>;
+    /**
+     * Releases the persisted read permissions of handles that will not be materialized (Android only)
+     */
+    releaseHandles(handles: (ActualizeImagePickerHandle | string)[]): Promise<ActualizeImagePickerGenericResult>;
+    /**
+     * Returns the hit/miss counters and size of the processed files cache (Android only)
+     */
+    getCacheStats(): Promise<ActualizeImagePickerCacheStats>;
+    /**
+     * Deletes every file in the processed files cache (Android only)
+     */
+    clearCache(): Promise<ActualizeImagePickerGenericResult>;
+    /**
+     * Returns the reuse counters and retained size of the bitmap pool used while processing images (Android only)
+     */
+    getBitmapPoolStats(): Promise<ActualizeImagePickerBitmapPoolStats>;
+    /**
+     * Returns the memory budget that admits images for decoding, and how much it has throttled them (Android only)
+     */
+    getMemoryStats(): Promise<ActualizeImagePickerMemoryStats>;
+    /**
+     * Returns per-stage processing metrics aggregated since the last reset (Android only)
+     */
+    getMetrics(): Promise<ActualizeImagePickerMetrics>;
+    /**
+     * Clears the processing metrics (Android only)
+     */
+    resetMetrics(): Promise<ActualizeImagePickerGenericResult>;
+    /**
+     * Cancels the pick with the given requestId, or every pick in progress when none is given.
+     * A canceled pick resolves with status "CANCELED" and the items already processed (Android only)
+     */
+    cancel(options?: { requestId?: string }): Promise<ActualizeImagePickerCancelResult>;
+    /**
+     * Returns the results of durable picks that were resumed after the app was killed, once they are done.
+     * Each result is returned once (Android only)
+     */
+    resumePending(): Promise<ActualizeImagePickerPendingResult>;
 }
 
 declare let ActualizeImagePicker: ActualizeImagePickerModule;
@@ -10,50 +10,130 @@
 package earth.actualize.cordova.plugin;
 
 import android.app.Activity;
+import android.app.ActivityManager;
 import android.content.ClipData;
+import android.content.ComponentCallbacks2;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.res.Configuration;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
+import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.provider.MediaStore;
+import android.util.Size;
 
 import androidx.activity.result.ActivityResult;
 import androidx.activity.result.ActivityResultCallback;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.exifinterface.media.ExifInterface;
 
 import org.apache.cordova.CordovaInterface;
 import org.apache.cordova.CordovaPlugin;
 import org.apache.cordova.CordovaWebView;
 import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.channels.ClosedByInterruptException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import earth.actualize.cordova.plugin.utils.AndroidTranscodeBackend;
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+import earth.actualize.cordova.plugin.utils.ContentHasher;
+import earth.actualize.cordova.plugin.utils.ContentMediaSource;
+import earth.actualize.cordova.plugin.utils.ItemStreams;
+import earth.actualize.cordova.plugin.utils.JobJournal;
 import earth.actualize.cordova.plugin.utils.JsonArgs;
+import earth.actualize.cordova.plugin.utils.MediaMetadata;
+import earth.actualize.cordova.plugin.utils.MediaMetadataLoader;
+import earth.actualize.cordova.plugin.utils.MediaSource;
+import earth.actualize.cordova.plugin.utils.MemoryBudget;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+import earth.actualize.cordova.plugin.utils.PipelineMetrics;
+import earth.actualize.cordova.plugin.utils.ProgressInputStream;
+import earth.actualize.cordova.plugin.utils.StageTimings;
+import earth.actualize.cordova.plugin.utils.StreamCopier;
+import earth.actualize.cordova.plugin.utils.VideoTranscoder;
 
 public class ActualizeImagePicker extends CordovaPlugin {
 
-    private CallbackContext callbackContext;
-    private int imageQuality = 100;
-    private int maxImages = 0;
-    private String mediaType = "image"; // "image", "video", or "all"
-    private String videoQuality = "medium"; // "low", "medium", "high", "highest", "passthrough"
-    private String videoProcessingMessage = "Processing video..."; // Message for progress overlay (reserved for future use)
+    // Worker pool shared by all plugin instances, sized to the device's cores
+    private static final int WORKER_COUNT = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // A pick leaves a worker free, so another one can start next to e.g. a long video import, but always
+    // gets two: with one, a dual-core device would no longer overlap one item's reads with another's decode
+    private static final int SESSION_MAX_IN_FLIGHT = Math.max(2, WORKER_COUNT - 1);
+    private static ExecutorService workerPool;
+    // Threads standing in for workers held by abandoned items, which may stay blocked in a read for a while
+    private static final int SPARE_WORKER_COUNT = 2;
+    private static ExecutorService spareWorkerPool;
+
+    // Processed outputs live in their own cache subdirectory, indexed by OutputCache
+    private static final String OUTPUT_CACHE_DIR = "actualize-image-picker";
+    // config.xml preference setting the cache budget in megabytes; picks may only raise it while in progress
+    private static final String CACHE_SIZE_PREFERENCE = "ActualizeImagePickerCacheSizeMB";
+    private static OutputCache outputCache;
+
+    // Previews are kept apart from full-size outputs, with a small budget of their own
+    private static final String PREVIEW_CACHE_DIR = "actualize-image-picker-previews";
+    private static final long PREVIEW_CACHE_MAX_BYTES = 32L * 1024L * 1024L;
+    private static final int PREVIEW_QUALITY = 80;
+    private static OutputCache previewCache;
+
+    // Intermediate bitmaps are reused across items, capped at a quarter of the heap
+    private static final long BITMAP_POOL_MAX_BYTES = Runtime.getRuntime().maxMemory() / 4;
+    private static BitmapPool bitmapPool;
+
+    // Decode work is admitted while its estimated bitmaps fit a quarter of the app's memory class
+    private static final int MEMORY_BUDGET_DIVISOR = 4;
+    private static MemoryBudget memoryBudget;
+    private static boolean memoryCallbacksRegistered = false;
+
+    // Durable picks are journaled in the app's files directory, which the system does not clear
+    private static final String JOURNAL_DIR = "actualize-image-picker-jobs";
+    private static JobJournal jobJournal;
+    private static boolean journalResumed = false;
+    // The journaled picks resumed by this process, if any; kept across WebView reloads
+    private static Future<?> resumedPicks;
+
+    // Per-stage timings of every processed item, aggregated over a rolling window
+    private static final int METRICS_WINDOW_SIZE = 256;
+    private static final PipelineMetrics pipelineMetrics = new PipelineMetrics(METRICS_WINDOW_SIZE);
+
+    // Read progress is reported at least this often when the provider does not report a size
+    private static final long READ_PROGRESS_STEP = 1024L * 1024L;
+
+    // Picks in progress by request id, and the one whose picker is open (the system shows one at a time)
+    private final Map<String, PickSession> sessions = new HashMap<>();
+    private PickSession pickerSession;
+    private long nextSessionId = 1;
 
     // ActivityResultLaunchers for the modern activity result API
     private ActivityResultLauncher<Intent> singleImageLauncher;
@@ -63,6 +143,10 @@ public class ActualizeImagePicker extends CordovaPlugin {
     public void initialize(CordovaInterface cordova, CordovaWebView webView) {
         super.initialize(cordova, webView);
 
+        // Picks a killed process left unfinished carry on in the background
+        resumeJournaledPicks();
+        registerMemoryCallbacks();
+
         android.util.Log.d("ActualizeImagePicker", "initialize: registering ActivityResultLaunchers");
 
         // Get the activity and cast to AppCompatActivity (required for registerForActivityResult)
@@ -106,15 +190,66 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
         final JSONObject jsonArgs = (args.length() > 0 ? args.getJSONObject(0) : new JSONObject());
 
-        this.callbackContext = callbackContext;
-
         switch(action) {
-            case "pickImage":
-                startSingleImagePicker(jsonArgs);
+            case "pickImage": {
+                final PickSession session = openSession(callbackContext, jsonArgs, true);
+                if (session != null) {
+                    startSingleImagePicker(session);
+                }
+                break;
+            }
+
+            case "pickImages": {
+                final PickSession session = openSession(callbackContext, jsonArgs, true);
+                if (session != null) {
+                    startMultipleImagePicker(session);
+                }
+                break;
+            }
+
+            case "materialize": {
+                final PickSession session = openSession(callbackContext, jsonArgs, false);
+                if (session != null) {
+                    materialize(session, jsonArgs);
+                }
+                break;
+            }
+
+            case "releaseHandles":
+                releaseHandles(callbackContext, jsonArgs);
+                break;
+
+            case "resumePending":
+                resumePending(callbackContext);
+                break;
+
+            case "getCacheStats":
+                getCacheStats(callbackContext);
+                break;
+
+            case "cancel":
+                cancel(callbackContext, jsonArgs);
+                break;
+
+            case "clearCache":
+                clearCache(callbackContext);
                 break;
 
-            case "pickImages":
-                startMultipleImagePicker(jsonArgs);
+            case "getBitmapPoolStats":
+                callbackContext.success(getBitmapPool().getStats().jsonObj());
+                break;
+
+            case "getMemoryStats":
+                callbackContext.success(getMemoryBudget().getStats().jsonObj());
+                break;
+
+            case "getMetrics":
+                callbackContext.success(pipelineMetrics.getStats().jsonObj());
+                break;
+
+            case "resetMetrics":
+                pipelineMetrics.reset();
+                callbackContext.success(new JsonArgs().put("status", "OK").jsonObj());
                 break;
 
             default:
@@ -125,37 +260,44 @@ public class ActualizeImagePicker extends CordovaPlugin {
     }
 
     /**
-     * Opens the Android Photo Picker for single-image/video selection
-     * Uses the native Jetpack Photo Picker on Android 11+ or falls back to ACTION_OPEN_DOCUMENT
-     * @param args Map of optional arguments for customisation
+     * Returns the output cache hit/miss counters and size to JS
+     * @param callbackContext the callback receiving the statistics
      */
-    private void startSingleImagePicker(final JSONObject args) {
-        try {
-            this.imageQuality = args.getInt("imageQuality");
-        } catch (Exception ignored) {}
-
-        try {
-            this.mediaType = args.getString("mediaType");
-        } catch (Exception ignored) {
-            this.mediaType = "image";
-        }
-
-        try {
-            this.videoQuality = args.getString("videoQuality");
-        } catch (Exception ignored) {
-            this.videoQuality = "medium";
-        }
+    private void getCacheStats(final CallbackContext callbackContext) {
+        final OutputCache cache = getOutputCache();
+        getWorkerPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                callbackContext.success(cache.getStats().jsonObj());
+            }
+        });
+    }
 
-        try {
-            this.videoProcessingMessage = args.getString("videoProcessingMessage");
-        } catch (Exception ignored) {
-            this.videoProcessingMessage = "Processing video...";
-        }
+    /**
+     * Deletes every processed file kept in the output cache
+     * @param callbackContext the callback notified once the cache is empty
+     */
+    private void clearCache(final CallbackContext callbackContext) {
+        final OutputCache cache = getOutputCache();
+        getWorkerPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                cache.clear();
+                callbackContext.success(new JsonArgs().put("status", "OK").jsonObj());
+            }
+        });
+    }
 
-        String mimeType = getMimeTypeForMediaType(this.mediaType);
+    /**
+     * Opens the Android Photo Picker for single-image/video selection
+     * Uses the native Jetpack Photo Picker on Android 11+ or falls back to ACTION_OPEN_DOCUMENT
+     * @param session the pick, with its options and callback
+     */
+    private void startSingleImagePicker(final PickSession session) {
+        String mimeType = getMimeTypeForMediaType(session.mediaType);
         Intent intent;
 
-        android.util.Log.d("ActualizeImagePicker", "startSingleImagePicker: mediaType=" + this.mediaType + ", mimeType=" + mimeType);
+        android.util.Log.d("ActualizeImagePicker", "startSingleImagePicker: requestId=" + session.id + ", mediaType=" + session.mediaType + ", mimeType=" + mimeType);
         android.util.Log.d("ActualizeImagePicker", "startSingleImagePicker: SDK_INT=" + Build.VERSION.SDK_INT);
 
         // Use the native photo picker on Android 11+ (API 30+)
@@ -183,45 +325,19 @@ public class ActualizeImagePicker extends CordovaPlugin {
             singleImageLauncher.launch(intent);
         } else {
             android.util.Log.e("ActualizeImagePicker", "singleImageLauncher is null - plugin may not have been initialized properly");
-            callbackContext.error("Image picker not initialized. Please ensure the plugin is properly configured.");
+            closeSession(takePickerSession());
+            session.callback.error("Image picker not initialized. Please ensure the plugin is properly configured.");
         }
     }
 
     /**
      * Opens the Android Photo Picker for multi-image/video selection
      * Uses the native Jetpack Photo Picker on Android 13+ or falls back to ACTION_OPEN_DOCUMENT with EXTRA_ALLOW_MULTIPLE
-     * @param args Map of optional arguments for customisation
+     * @param session the pick, with its options and callback
      */
-    private void startMultipleImagePicker(final JSONObject args) {
-        try {
-            this.maxImages = args.getInt("maxImages");
-        } catch (Exception ignored) {
-            this.maxImages = 0;
-        }
-
-        try {
-            this.imageQuality = args.getInt("imageQuality");
-        } catch (Exception ignored) {}
-
-        try {
-            this.mediaType = args.getString("mediaType");
-        } catch (Exception ignored) {
-            this.mediaType = "image";
-        }
-
-        try {
-            this.videoQuality = args.getString("videoQuality");
-        } catch (Exception ignored) {
-            this.videoQuality = "medium";
-        }
-
-        try {
-            this.videoProcessingMessage = args.getString("videoProcessingMessage");
-        } catch (Exception ignored) {
-            this.videoProcessingMessage = "Processing video...";
-        }
-
-        String mimeType = getMimeTypeForMediaType(this.mediaType);
+    private void startMultipleImagePicker(final PickSession session) {
+        final int maxImages = session.maxImages;
+        String mimeType = getMimeTypeForMediaType(session.mediaType);
         Intent intent;
 
         // Use the native photo picker on Android 13+ (API 33+)
@@ -248,7 +364,8 @@ public class ActualizeImagePicker extends CordovaPlugin {
             multipleImageLauncher.launch(intent);
         } else {
             android.util.Log.e("ActualizeImagePicker", "multipleImageLauncher is null - plugin may not have been initialized properly");
-            callbackContext.error("Image picker not initialized. Please ensure the plugin is properly configured.");
+            closeSession(takePickerSession());
+            session.callback.error("Image picker not initialized. Please ensure the plugin is properly configured.");
         }
     }
 
@@ -262,9 +379,10 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
         android.util.Log.d("ActualizeImagePicker", "handleSingleImageResult: resultCode=" + resultCode + ", intent=" + intent);
 
-        // Check if we have a valid callback context
-        if (this.callbackContext == null) {
-            android.util.Log.e("ActualizeImagePicker", "handleSingleImageResult: callbackContext is null!");
+        // Check if we have a pick waiting for this result
+        final PickSession session = takePickerSession();
+        if (session == null) {
+            android.util.Log.e("ActualizeImagePicker", "handleSingleImageResult: no pick is waiting for the picker!");
             return;
         }
 
@@ -273,16 +391,16 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
         if (isCanceled) {
             android.util.Log.d("ActualizeImagePicker", "Single picker canceled");
-            handleSingleImagePickerResult(true, null);
+            handleSingleImagePickerResult(session, true, null);
             return;
         }
         if (intent == null || intent.getData() == null) {
             android.util.Log.d("ActualizeImagePicker", "Single picker: intent or data is null");
-            handleSingleImagePickerResult(true, null);
+            handleSingleImagePickerResult(session, true, null);
             return;
         }
         android.util.Log.d("ActualizeImagePicker", "Single picker success: " + intent.getData().toString());
-        handleSingleImagePickerResult(false, intent.getData().toString());
+        handleSingleImagePickerResult(session, false, intent.getData().toString());
     }
 
     /**
@@ -295,9 +413,10 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
         android.util.Log.d("ActualizeImagePicker", "handleMultipleImageResult: resultCode=" + resultCode + ", intent=" + intent);
 
-        // Check if we have a valid callback context
-        if (this.callbackContext == null) {
-            android.util.Log.e("ActualizeImagePicker", "handleMultipleImageResult: callbackContext is null!");
+        // Check if we have a pick waiting for this result
+        final PickSession session = takePickerSession();
+        if (session == null) {
+            android.util.Log.e("ActualizeImagePicker", "handleMultipleImageResult: no pick is waiting for the picker!");
             return;
         }
 
@@ -306,7 +425,7 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
         if (isCanceled) {
             android.util.Log.d("ActualizeImagePicker", "Multiple picker canceled");
-            handleMultipleImagePickerResult(true, new String[]{});
+            handleMultipleImagePickerResult(session, true, new String[]{});
             return;
         }
 
@@ -319,8 +438,8 @@ public class ActualizeImagePicker extends CordovaPlugin {
                 int count = clipData.getItemCount();
                 android.util.Log.d("ActualizeImagePicker", "Multiple picker: clipData count=" + count);
                 // Apply maxImages limit if set
-                if (maxImages > 0 && count > maxImages) {
-                    count = maxImages;
+                if (session.maxImages > 0 && count > session.maxImages) {
+                    count = session.maxImages;
                 }
                 for (int i = 0; i < count; i++) {
                     Uri uri = clipData.getItemAt(i).getUri();
@@ -336,7 +455,7 @@ public class ActualizeImagePicker extends CordovaPlugin {
         }
 
         android.util.Log.d("ActualizeImagePicker", "Multiple picker success: " + uriList.size() + " items");
-        handleMultipleImagePickerResult(false, uriList.toArray(new String[0]));
+        handleMultipleImagePickerResult(session, false, uriList.toArray(new String[0]));
     }
 
     /**--------------------------------
@@ -345,177 +464,1044 @@ public class ActualizeImagePicker extends CordovaPlugin {
 
      /**
      * Handles Single Image/Video Picker's result and returns the JSON data to Cordova JS
+     * @param session the pick the result belongs to
      * @param isCanceled true if the operation was canceled by the user, false otherwise
      * @param mediaFileUri the URI of the selected file
      */
-    private void handleSingleImagePickerResult(final boolean isCanceled, final String mediaFileUri) {
-        if (isCanceled) {
-            callbackContext.success(new JsonArgs().put("status", "CANCELED").jsonObj());
+    private void handleSingleImagePickerResult(final PickSession session, final boolean isCanceled,
+                                               final String mediaFileUri) {
+        if (isCanceled || session.job.isCanceled()) {
+            closeSession(session);
+            session.callback.success(new JsonArgs().put("status", "CANCELED").put("requestId", session.id).jsonObj());
             return;
         }
 
         if (mediaFileUri == null) {
-            callbackContext.error("Found null 'mediaFileUri' in handleSingleImagePickerResult");
+            closeSession(session);
+            session.callback.error("Found null 'mediaFileUri' in handleSingleImagePickerResult");
             return;
         }
 
+        // Processing runs in the background; the result callback is only used to deliver the outcome
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (ProcessingOptions.MATERIALIZE_LAZY.equals(session.options.materialize)) {
+                        resolveHandles(session, new String[] {mediaFileUri}, true);
+                        return;
+                    }
+                    processSingleItem(session, mediaFileUri);
+                } finally {
+                    closeSession(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Processes the item of a single pick and sends the result to JS. Runs on a background thread.
+     */
+    private void processSingleItem(final PickSession session, final String mediaFileUri) {
+        final CallbackContext callback = session.callback;
+        final ProcessingOptions options = session.options;
+        final long pickStart = System.nanoTime();
+        final MediaMetadata metadata = MediaMetadataLoader.load(cordova.getContext().getContentResolver(),
+            new String[] {mediaFileUri}).get(mediaFileUri);
+        pipelineMetrics.record(StageTimings.METADATA, System.nanoTime() - pickStart, -1);
+
         // Always process the media to convert content URI to accessible local file
-        final String outputPath = copyMediaToLocal(mediaFileUri, this.imageQuality);
-        if (outputPath == null) {
-            callbackContext.error("Failed to process media file");
+        final ItemWatchdog watchdog = new ItemWatchdog(session.job, 1, options.itemTimeoutMs);
+        final Future<ProcessedMedia> future = watchdog.submit(0, new Callable<ProcessedMedia>() {
+            @Override
+            public ProcessedMedia call() throws Exception {
+                final ProcessedMedia media = processItem(session, mediaFileUri, metadata,
+                    createProgressListener(callback, 0, mediaFileUri, options),
+                    createReadListener(callback, 0, mediaFileUri, metadata.size, options), watchdog.streams(0));
+                sendArrayBuffer(session, 0, media);
+                return media;
+            }
+        });
+        final ProcessedMedia media;
+        try {
+            media = future.get();
+        } catch (CancellationException e) {
+            if (watchdog.isTimedOut(0)) {
+                callback.error("Failed to process media file: " + watchdog.timeoutError().getMessage());
+                return;
+            }
+            callback.success(new JsonArgs().put("status", "CANCELED").put("requestId", session.id).jsonObj());
+            return;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof InterruptedIOException || cause instanceof ClosedByInterruptException) {
+                callback.success(new JsonArgs().put("status", "CANCELED").put("requestId", session.id).jsonObj());
+                return;
+            }
+            android.util.Log.e("ActualizeImagePicker", "Failed to process " + mediaFileUri, cause);
+            callback.error("Failed to process media file: " + cause.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.error("Failed to process media file: Interrupted");
             return;
         }
-        final String outputUri = Uri.fromFile(new File(outputPath)).toString();
-
-        JsonArgs outResult = new JsonArgs();
-        outResult.put("status", "OK");
-        outResult.put("imageFileUri", outputUri);
-        callbackContext.success(outResult.jsonObj());
+        trimOutputCache(Collections.singleton(media.cacheKey));
+        callback.success(media.buildResult(metadata).put("requestId", session.id).jsonObj());
+        pipelineMetrics.record("pickImage", System.nanoTime() - pickStart, new File(media.outputPath).length());
     }
 
     /**
      * Handles Multiple Image/Video Picker's result and returns the JSON data to Cordova JS
+     * @param session the pick the result belongs to
      * @param isCanceled true if the operation was canceled by the user, false otherwise
      * @param mediaFilesUris an array containing the file URIs for all the media selected
      */
-    private void handleMultipleImagePickerResult(final boolean isCanceled, final String[] mediaFilesUris) {
-        if (isCanceled) {
-            callbackContext.success(new JsonArgs().put("status", "CANCELED").jsonObj());
+    private void handleMultipleImagePickerResult(final PickSession session, final boolean isCanceled,
+                                                 final String[] mediaFilesUris) {
+        if (isCanceled || session.job.isCanceled()) {
+            closeSession(session);
+            session.callback.success(new JsonArgs().put("status", "CANCELED").put("requestId", session.id).jsonObj());
+            return;
+        }
+
+        // Processing runs in the background; the result callback is only used to deliver the outcome
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (ProcessingOptions.MATERIALIZE_LAZY.equals(session.options.materialize)) {
+                        resolveHandles(session, mediaFilesUris, false);
+                        return;
+                    }
+                    if (session.options.durable) {
+                        journalPick(session, mediaFilesUris);
+                    }
+                    processMultipleItems(session, mediaFilesUris, Collections.<Integer, JSONObject>emptyMap());
+                } finally {
+                    closeSession(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Keeps the selection readable across restarts where the provider allows it, and journals the pick.
+     */
+    private void journalPick(final PickSession session, final String[] mediaFilesUris) {
+        for (String uri : mediaFilesUris) {
+            persistReadPermission(uri);
+        }
+        try {
+            getJobJournal().create(session.journalId, session.id, session.args, mediaFilesUris);
+        } catch (IOException e) {
+            android.util.Log.w("ActualizeImagePicker", "journalPick: could not journal " + session.id, e);
+        }
+    }
+
+    /**
+     * Forgets a journaled pick and releases the persisted permissions of its selection.
+     * @param journalId the pick's journal id, not its requestId
+     */
+    private void forgetPick(final String journalId, final String[] mediaFilesUris) {
+        getJobJournal().remove(journalId);
+        releaseReadPermissions(mediaFilesUris);
+    }
+
+    /**
+     * Keeps an item readable beyond this process where the provider allows it.
+     * @return false if the grant is not persistable, in which case it lasts as long as the process
+     */
+    private boolean persistReadPermission(final String uri) {
+        try {
+            cordova.getContext().getContentResolver().takePersistableUriPermission(Uri.parse(uri),
+                Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            return true;
+        } catch (SecurityException e) {
+            // Photo picker grants and some providers are not persistable
+            android.util.Log.d("ActualizeImagePicker", "persistReadPermission: not persistable for " + uri);
+            return false;
+        }
+    }
+
+    private void releaseReadPermissions(final String[] mediaFilesUris) {
+        final ContentResolver resolver = cordova.getContext().getContentResolver();
+        for (String uri : mediaFilesUris) {
+            try {
+                resolver.releasePersistableUriPermission(Uri.parse(uri), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+            } catch (SecurityException ignored) {
+                // The permission was never persisted
+            }
+        }
+    }
+
+    /**
+     * Resolves a lazy pick right away with a handle per item instead of processing it: the source
+     * URI, its metadata and the read permission held for it. Items are processed later, and only
+     * those that are needed, through the materialize action. Handles hold the grant of the picker,
+     * which lasts until the app is closed, unless persistHandles asks for one that survives restarts.
+     * @param single true to resolve with a single handle, as pickImage does
+     */
+    private void resolveHandles(final PickSession session, final String[] mediaFilesUris, final boolean single) {
+        final Map<String, MediaMetadata> metadata = MediaMetadataLoader.load(
+            cordova.getContext().getContentResolver(), mediaFilesUris);
+        final JSONArray handles = new JSONArray();
+        for (int i = 0; i < mediaFilesUris.length; i++) {
+            handles.put(new JsonArgs()
+                .put("index", i)
+                .put("sourceUri", mediaFilesUris[i])
+                .put("metadata", metadata.get(mediaFilesUris[i]).toJson())
+                .put("permission", session.options.persistHandles && persistReadPermission(mediaFilesUris[i])
+                    ? "persisted" : "session")
+                .jsonObj());
+        }
+        final JsonArgs result = new JsonArgs()
+            .put("status", "OK")
+            .put("requestId", session.id)
+            .put("materialize", ProcessingOptions.MATERIALIZE_LAZY);
+        if (single) {
+            result.put("handle", handles.optJSONObject(0));
+        } else {
+            result.put("imageFilesUris", new JSONArray());
+            result.put("handles", handles);
+        }
+        session.callback.success(result.jsonObj());
+    }
+
+    /**
+     * Processes the items of handles returned by a lazy pick, in parallel and in the order given,
+     * and resolves like pickImages. Unless releaseHandles is false, the read permissions the
+     * handles held are released afterwards.
+     * @param session the materialization, with the processing options passed along with the handles
+     * @param args {handles: [{sourceUri} or URI strings], releaseHandles?, ...processing options}
+     */
+    private void materialize(final PickSession session, final JSONObject args) {
+        final String[] mediaFilesUris;
+        try {
+            mediaFilesUris = getHandleUris(args);
+        } catch (IllegalArgumentException e) {
+            closeSession(session);
+            session.callback.error(e.getMessage());
             return;
         }
+        if (mediaFilesUris.length == 0) {
+            closeSession(session);
+            session.callback.error("No handles to materialize");
+            return;
+        }
+
+        final boolean releaseHandles = args.optBoolean("releaseHandles", true);
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    processMultipleItems(session, mediaFilesUris, Collections.<Integer, JSONObject>emptyMap());
+                    if (releaseHandles) {
+                        releaseReadPermissions(mediaFilesUris);
+                    }
+                } finally {
+                    closeSession(session);
+                }
+            }
+        });
+    }
+
+    /**
+     * Releases the persisted read permissions of handles that will not be materialized. Grants
+     * that were never persisted are left alone: they end when the app is closed.
+     * @param callbackContext the callback receiving the outcome
+     * @param args {handles: [{sourceUri} or URI strings]}
+     */
+    private void releaseHandles(final CallbackContext callbackContext, final JSONObject args) {
+        final String[] mediaFilesUris;
+        try {
+            mediaFilesUris = getHandleUris(args);
+        } catch (IllegalArgumentException e) {
+            callbackContext.error(e.getMessage());
+            return;
+        }
+        releaseReadPermissions(mediaFilesUris);
+        callbackContext.success(new JsonArgs().put("status", "OK").jsonObj());
+    }
+
+    /**
+     * @param args {handles: [{sourceUri} or URI strings]}
+     * @return the source URIs of the handles, in the order given
+     * @throws IllegalArgumentException if a handle has no sourceUri
+     */
+    private static String[] getHandleUris(final JSONObject args) {
+        final JSONArray handles = args.optJSONArray("handles");
+        final String[] uris = new String[handles != null ? handles.length() : 0];
+        for (int i = 0; i < uris.length; i++) {
+            final JSONObject handle = handles.optJSONObject(i);
+            uris[i] = handle != null ? handle.optString("sourceUri", "") : handles.optString(i, "");
+            if (uris[i].isEmpty()) {
+                throw new IllegalArgumentException("Handle " + i + " has no sourceUri");
+            }
+        }
+        return uris;
+    }
+
+    /**
+     * Restarts the journaled picks the previous process did not finish. Runs once per process;
+     * items completed before the restart are not processed again.
+     */
+    private void resumeJournaledPicks() {
+        synchronized (ActualizeImagePicker.class) {
+            if (journalResumed) {
+                return;
+            }
+            journalResumed = true;
+            resumedPicks = cordova.getThreadPool().submit(new Runnable() {
+                @Override
+                public void run() {
+                    resumeRecoveredPicks();
+                }
+            });
+        }
+    }
+
+    /**
+     * Processes the unfinished picks found in the journal on a background thread, one after the other.
+     * Picks journaled by this process are processing already and are left alone.
+     */
+    private void resumeRecoveredPicks() {
+        for (JobJournal.Entry entry : getJobJournal().getRecoveredEntries()) {
+            if (entry.result != null) {
+                continue;
+            }
+            final PickSession session = PickSession.resume(entry, getWorkerPool(), getSpareWorkerPool(),
+                SESSION_MAX_IN_FLIGHT);
+            synchronized (this) {
+                // Cancelable by its requestId, unless a new pick took it meanwhile
+                if (!sessions.containsKey(session.id)) {
+                    sessions.put(session.id, session);
+                }
+            }
+            android.util.Log.d("ActualizeImagePicker", "resumeRecoveredPicks: resuming " + session.id
+                + " with " + entry.items.size() + " of " + entry.uris.length + " items done");
+            try {
+                processMultipleItems(session, entry.uris, entry.items);
+            } catch (RuntimeException e) {
+                android.util.Log.e("ActualizeImagePicker", "resumeRecoveredPicks: could not resume " + session.id, e);
+            } finally {
+                closeSession(session);
+            }
+        }
+    }
+
+    /**
+     * Returns the results of the durable picks that finished while JS was not listening, waiting
+     * for the ones resumed after a restart. Delivered picks are removed from the journal.
+     * @param callbackContext the callback receiving {status, jobs}, with one pickImages result per pick
+     */
+    private void resumePending(final CallbackContext callbackContext) {
+        final Future<?> resumed = resumedPicks;
+        cordova.getThreadPool().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (resumed != null) {
+                    try {
+                        resumed.get();
+                    } catch (ExecutionException | CancellationException e) {
+                        android.util.Log.w("ActualizeImagePicker", "resumePending: resuming failed", e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                final JSONArray jobs = new JSONArray();
+                for (JobJournal.Entry entry : getJobJournal().getEntries()) {
+                    if (entry.result != null) {
+                        jobs.put(entry.result);
+                        forgetPick(entry.id, entry.uris);
+                    }
+                }
+                callbackContext.success(new JsonArgs().put("status", "OK").put("jobs", jobs).jsonObj());
+            }
+        });
+    }
+
+    /**
+     * Processes the items of a multiple pick on the worker pool and sends the results to JS.
+     * Runs on a background thread, which waits for the items in selection order.
+     * @param completed the journal records of items completed before a restart, by index
+     */
+    private void processMultipleItems(final PickSession session, final String[] mediaFilesUris,
+                                      final Map<Integer, JSONObject> completed) {
+        final CallbackContext callback = session.callback;
+        final ProcessingOptions options = session.options;
+        final PickJob job = session.job;
+        // One batched provider query up front drives routing and is returned with each item
+        final long pickStart = System.nanoTime();
+        final Map<String, MediaMetadata> metadata = MediaMetadataLoader.load(
+            cordova.getContext().getContentResolver(), mediaFilesUris);
+        pipelineMetrics.record(StageTimings.METADATA, System.nanoTime() - pickStart, -1);
+
+        if (options.previews) {
+            sendPreviews(job, callback, mediaFilesUris, metadata, options.previewSize);
+        }
+
+        // Fan out to the worker pool; futures are kept in selection order
+        final List<Future<ProcessedMedia>> futures = new ArrayList<>(mediaFilesUris.length);
+        final ItemWatchdog watchdog = new ItemWatchdog(job, mediaFilesUris.length, options.itemTimeoutMs);
+        for (int i = 0; i < mediaFilesUris.length; i++) {
+            final int index = i;
+            final String path = mediaFilesUris[i];
+            final MediaMetadata itemMetadata = metadata.get(path);
+            final JSONObject record = completed.get(i);
+            if (record != null && new File(record.optString("outputPath", "")).exists()) {
+                // Completed before a restart, and its output has not been evicted since
+                futures.add(null);
+                continue;
+            }
+            final Future<ProcessedMedia> future = watchdog.submit(index, new Callable<ProcessedMedia>() {
+                @Override
+                public ProcessedMedia call() throws Exception {
+                    try {
+                        // Always process the media to convert content URI to accessible local file
+                        final ProcessedMedia media = processItem(session, path, itemMetadata,
+                            createProgressListener(callback, index, path, options),
+                            createReadListener(callback, index, path, itemMetadata.size, options),
+                            watchdog.streams(index));
+                        if (watchdog.isTimedOut(index)) {
+                            // Already reported as failed
+                            return media;
+                        }
+                        sendArrayBuffer(session, index, media);
+                        if (options.durable) {
+                            getJobJournal().recordItem(session.journalId, index, media.cacheKey, media.outputPath,
+                                ProcessedMedia.buildItemResult(index, path, itemMetadata, media, null).jsonObj());
+                        }
+                        if (options.streamResults && !job.isCanceled()) {
+                            sendItemEvent(callback, ProcessedMedia.buildItemResult(index, path, itemMetadata, media, null));
+                        }
+                        return media;
+                    } catch (Exception e) {
+                        // Timed out items are reported once they are abandoned
+                        if (options.streamResults && !job.isCanceled() && !watchdog.isTimedOut(index)) {
+                            sendItemEvent(callback, ProcessedMedia.buildItemResult(index, path, itemMetadata, null, e));
+                        }
+                        throw e;
+                    }
+                }
+            });
+            futures.add(future);
+        }
 
         JSONArray mediaUris = new JSONArray();
-        for(String path : mediaFilesUris) {
-            // Always process the media to convert content URI to accessible local file
-            String outPath = copyMediaToLocal(path, this.imageQuality);
-            if (outPath == null) {
-                // Skip media files that failed to process
+        JSONArray items = new JSONArray();
+        Set<String> outputKeys = new HashSet<>();
+        long outputBytes = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == null) {
+                final JSONObject record = completed.get(i);
+                final JSONObject result = record.optJSONObject("result");
+                items.put(result);
+                mediaUris.put(result.optString("imageFileUri"));
+                outputKeys.add(record.optString("cacheKey"));
+                outputBytes += new File(record.optString("outputPath")).length();
                 continue;
             }
+            JsonArgs item;
             try {
-                final String mediaUri = Uri.fromFile(new File(outPath)).toString();
-                mediaUris.put(mediaUri);
-            } catch(Exception e) {
-                e.printStackTrace();
+                final ProcessedMedia media = futures.get(i).get();
+                item = ProcessedMedia.buildItemResult(i, mediaFilesUris[i], metadata.get(mediaFilesUris[i]), media, null);
+                mediaUris.put(media.getOutputUri());
+                outputKeys.add(media.cacheKey);
+                outputBytes += new File(media.outputPath).length();
+            } catch (CancellationException e) {
+                if (watchdog.isTimedOut(i)) {
+                    item = ProcessedMedia.buildItemResult(i, mediaFilesUris[i], metadata.get(mediaFilesUris[i]), null,
+                        watchdog.timeoutError());
+                    if (options.streamResults && !job.isCanceled()) {
+                        sendItemEvent(callback, ProcessedMedia.buildItemResult(i, mediaFilesUris[i],
+                            metadata.get(mediaFilesUris[i]), null, watchdog.timeoutError()));
+                    }
+                } else {
+                    item = ProcessedMedia.buildItemResult(i, mediaFilesUris[i], metadata.get(mediaFilesUris[i]), null, e);
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                android.util.Log.e("ActualizeImagePicker", "Failed to process " + mediaFilesUris[i], cause);
+                item = ProcessedMedia.buildItemResult(i, mediaFilesUris[i], metadata.get(mediaFilesUris[i]), null, cause);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                item = ProcessedMedia.buildItemResult(i, mediaFilesUris[i], metadata.get(mediaFilesUris[i]), null, e);
             }
+            items.put(item.jsonObj());
         }
 
+        // Evict old outputs only once the whole batch is known, never the files being returned
+        trimOutputCache(outputKeys);
+
         JsonArgs outResult = new JsonArgs();
 
-        outResult.put("status", "OK");
+        if (options.streamResults) {
+            outResult.put("type", "complete");
+        }
+        // A canceled pick still returns the items that were finished
+        outResult.put("status", job.isCanceled() ? "CANCELED" : "OK");
+        outResult.put("requestId", session.id);
         outResult.put("imageFilesUris", mediaUris);
+        outResult.put("items", items);
 
-        callbackContext.success(outResult.jsonObj());
+        if (callback != null) {
+            callback.success(outResult.jsonObj());
+            if (options.durable) {
+                forgetPick(session.journalId, mediaFilesUris);
+            }
+        } else if (job.isCanceled()) {
+            forgetPick(session.journalId, mediaFilesUris);
+        } else {
+            // Resumed after a restart: kept until JS asks for it with resumePending
+            try {
+                getJobJournal().complete(session.journalId, outResult.jsonObj());
+            } catch (IOException e) {
+                android.util.Log.w("ActualizeImagePicker", "Could not journal the result of " + session.id, e);
+            }
+        }
+        pipelineMetrics.record("pickImages", System.nanoTime() - pickStart, outputBytes);
     }
 
-    /**--------------------------------
-     *    PRIVATE UTILITY FUNCTIONS
-     *---------------------------------
     /**
-     * Copies the image from a content URI to a local file path, applying the specified quality.
-     * This is necessary because content URIs from the photo picker may not be directly accessible
-     * by Cordova's FileTransfer plugin.
-     *
-     * @param imagePath the content URI or path of the original image
-     * @param quality the desired quality for the output image (from 0 to 100)
-     * @return the path of the local image file, or null in case of failure
+     * Registers a new pick and, if it opens a picker, makes it the one waiting for the picker.
+     * @param opensPicker false for materializations, which process handles without a picker
+     * @return the session, or null if it could not be started, in which case the callback has been notified
      */
-    private String copyImageToLocal(final String imagePath, final int quality) {
-        try {
-            // Retrieves Bitmap
-            final Uri imageUri = Uri.parse(imagePath);
-            Bitmap originalBitmap = null;
-
-            if (imagePath.startsWith("content:/")) {
-                originalBitmap = MediaStore.Images.Media.getBitmap(this.cordova.getContext().getContentResolver(), imageUri);
+    private PickSession openSession(final CallbackContext callbackContext, final JSONObject args,
+                                    final boolean opensPicker) {
+        final String error;
+        synchronized (this) {
+            // Default ids skip those of picks resumed from the journal, which restart at 1 in every process
+            String defaultId;
+            do {
+                defaultId = (opensPicker ? "pick-" : "materialize-") + nextSessionId++;
+            } while (sessions.containsKey(defaultId));
+            final PickSession session = PickSession.fromJson(defaultId, callbackContext, args, getWorkerPool(),
+                getSpareWorkerPool(), SESSION_MAX_IN_FLIGHT);
+            if (opensPicker && pickerSession != null) {
+                error = "Another picker is already open";
+            } else if (sessions.containsKey(session.id)) {
+                error = "A pick with requestId '" + session.id + "' is already in progress";
             } else {
-                originalBitmap = BitmapFactory.decodeFile(imageUri.getPath(), new BitmapFactory.Options());
+                sessions.put(session.id, session);
+                if (opensPicker) {
+                    pickerSession = session;
+                }
+                return session;
+            }
+        }
+        callbackContext.error(error);
+        return null;
+    }
+
+    /**
+     * @return the pick that was waiting for the picker to close, or null if there is none
+     */
+    private synchronized PickSession takePickerSession() {
+        final PickSession session = pickerSession;
+        pickerSession = null;
+        return session;
+    }
+
+    /**
+     * Unregisters a pick once it has resolved, and lets its outputs be evicted again.
+     */
+    private void closeSession(final PickSession session) {
+        if (session == null) {
+            return;
+        }
+        synchronized (this) {
+            if (sessions.get(session.id) == session) {
+                sessions.remove(session.id);
             }
+        }
+        session.releaseOutputs(getOutputCache());
+    }
 
-            if (originalBitmap == null) {
-                throw new IOException("Could not load image. Bitmap is null");
+    /**
+     * Cancels a pick in progress, or all of them when no requestId is given. Items being processed
+     * stop at their next stage and delete their partial output; the pick resolves with a CANCELED
+     * status and the items already finished. If the picker is still open, its selection is
+     * discarded once it closes.
+     * @param callbackContext the callback receiving whether there was anything to cancel
+     * @param args the optional requestId of the pick to cancel
+     */
+    private void cancel(final CallbackContext callbackContext, final JSONObject args) {
+        final String requestId = args.optString("requestId", "");
+        final List<PickSession> canceled = new ArrayList<>();
+        synchronized (this) {
+            if (requestId.isEmpty()) {
+                canceled.addAll(sessions.values());
+            } else if (sessions.containsKey(requestId)) {
+                canceled.add(sessions.get(requestId));
             }
+        }
+        for (PickSession session : canceled) {
+            session.job.cancel();
+        }
+        callbackContext.success(new JsonArgs().put("status", "OK").put("canceled", !canceled.isEmpty()).jsonObj());
+    }
 
-            // Compresses Bitmap
-            final ByteArrayOutputStream decodeStream = new ByteArrayOutputStream();
-            originalBitmap.compress(Bitmap.CompressFormat.JPEG, quality, decodeStream);
+    /**
+     * Creates a small preview for every selected item on the pick's job, ahead of its full-size
+     * items, and sends them to JS as they are ready. Returns right away, so full-size processing
+     * never waits for a slow preview.
+     * @param job the pick the previews belong to
+     * @param callback the callback of the pick, kept open for the results that follow
+     * @param mediaFilesUris the selected URIs
+     * @param metadata the provider metadata of the selected items
+     * @param size the maximum width and height of the previews
+     */
+    private void sendPreviews(final PickJob job, final CallbackContext callback, final String[] mediaFilesUris,
+                              final Map<String, MediaMetadata> metadata, final int size) {
+        final PreviewSender sender = new PreviewSender(job, new CallbackPickEvents(callback), getPreviewCache(),
+            mediaFilesUris.length);
+        for (int i = 0; i < mediaFilesUris.length; i++) {
+            final int index = i;
+            final String path = mediaFilesUris[i];
+            job.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    JsonArgs preview = new JsonArgs();
+                    preview.put("index", index);
+                    preview.put("sourceUri", path);
+                    String previewKey = null;
+                    try {
+                        final File previewFile = new File(createPreview(path, metadata.get(path), size));
+                        previewKey = previewFile.getName().substring(0, previewFile.getName().indexOf('.'));
+                        preview.put("status", "OK");
+                        preview.put("previewUri", Uri.fromFile(previewFile).toString());
+                    } catch (IOException | RuntimeException e) {
+                        android.util.Log.w("ActualizeImagePicker", "Failed to create preview for " + path, e);
+                        preview.put("status", "ERROR");
+                        preview.put("message", String.valueOf(e.getMessage()));
+                    }
+                    sender.add(preview, previewKey);
+                    return null;
+                }
+            });
+        }
+        sender.start();
+    }
+
+    /**
+     * In the "arraybuffer" return mode, sends the processed file to JS in binary chunks ahead of its
+     * result, marking the result accordingly. Files above the size limit are returned as files.
+     */
+    private static void sendArrayBuffer(final PickSession session, final int index, final ProcessedMedia media) {
+        if (!ProcessingOptions.RETURN_MODE_ARRAYBUFFER.equals(session.options.returnMode) || session.job.isCanceled()) {
+            return;
+        }
+        final File file = new File(media.outputPath);
+        if (file.length() > session.options.arrayBufferMaxBytes) {
+            return;
+        }
+        try {
+            ArrayBufferSender.send(new CallbackPickEvents(session.callback), index, file);
+            media.details.put("returnMode", ProcessingOptions.RETURN_MODE_ARRAYBUFFER);
+        } catch (IOException e) {
+            android.util.Log.w("ActualizeImagePicker", "sendArrayBuffer: returning " + file + " as a file", e);
+        }
+    }
 
-            // Decides Output Path
-            final String outputFileName = String.format(Locale.US, "%d.jpg", imagePath.hashCode());
-            final File outputDir = cordova.getActivity().getCacheDir();
-            final String outputPath = outputDir + "/" + outputFileName;
+    /**
+     * Sends an intermediate per-item result to JS, keeping the callback open for the final summary
+     */
+    private static void sendItemEvent(final CallbackContext callback, final JsonArgs item) {
+        item.put("type", "item");
+        PluginResult result = new PluginResult(PluginResult.Status.OK, item.jsonObj());
+        result.setKeepCallback(true);
+        callback.sendPluginResult(result);
+    }
 
-            // Saves File
-            final OutputStream tmpStream = new FileOutputStream(outputPath);
-            decodeStream.writeTo(tmpStream);
-            decodeStream.close();
-            tmpStream.close();
+    /**
+     * Processes one item, timing each stage. The timings are always added to the pipeline metrics,
+     * and returned in the item's details when requested.
+     */
+    private ProcessedMedia processItem(final PickSession session, final String mediaUri,
+                                       final MediaMetadata metadata,
+                                       final VideoTranscoder.ProgressListener listener,
+                                       final ProgressInputStream.Listener readListener,
+                                       final ItemStreams streams) throws IOException {
+        final ProcessingOptions options = session.options;
+        final StageTimings timings = new StageTimings();
+        final long start = timings.begin();
+        final ProcessedMedia media;
+        try {
+            media = copyMediaToLocal(session, mediaUri, metadata, listener, readListener, streams, timings);
+        } catch (IOException | RuntimeException e) {
+            timings.end(StageTimings.TOTAL, start);
+            pipelineMetrics.record(timings);
+            throw e;
+        }
+        timings.end(StageTimings.TOTAL, start, new File(media.outputPath).length());
+        pipelineMetrics.record(timings);
 
-            // Corrects the image rotation using bitmap metadata, if necessary
-            final Bitmap bitmap = handleImageRotation(imagePath, originalBitmap);
-            final OutputStream outputStream = new FileOutputStream(outputPath);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-            outputStream.close();
+        media.details.put("timeMs", (System.nanoTime() - start) / 1000000L);
+        if (options.timings) {
+            media.details.put("timings", timings.toJson());
+        }
+        return media;
+    }
 
-            return outputPath;
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Creates a listener forwarding the transcoding progress of an item to JS, if requested
+     * @return the listener, or null if progress events are disabled
+     */
+    private static VideoTranscoder.ProgressListener createProgressListener(final CallbackContext callback,
+            final int index, final String sourceUri, final ProcessingOptions options) {
+        if (!options.progressEvents) {
             return null;
         }
+        return new VideoTranscoder.ProgressListener() {
+            @Override
+            public void onProgress(double fraction) {
+                JsonArgs event = new JsonArgs();
+                event.put("type", "progress");
+                event.put("stage", "transcode");
+                event.put("index", index);
+                event.put("sourceUri", sourceUri);
+                event.put("progress", Math.round(fraction * 100.0) / 100.0);
+                PluginResult result = new PluginResult(PluginResult.Status.OK, event.jsonObj());
+                result.setKeepCallback(true);
+                callback.sendPluginResult(result);
+            }
+        };
     }
 
-    private Bitmap handleImageRotation(String imagePath, Bitmap bitmap) {
+    /**
+     * Creates a listener forwarding the bytes read from the provider for an item to JS, if requested.
+     * Events are sent whenever the percentage changes, or every READ_PROGRESS_STEP bytes when the
+     * provider does not report a size.
+     * @param totalBytes the size reported by the provider, or -1 if unknown
+     * @return the listener, or null if progress events are disabled
+     */
+    private static ProgressInputStream.Listener createReadListener(final CallbackContext callback,
+            final int index, final String sourceUri, final long totalBytes, final ProcessingOptions options) {
+        if (!options.progressEvents) {
+            return null;
+        }
+        return new ProgressInputStream.Listener() {
+            // Images may be read more than once; only progress beyond the furthest point is reported
+            private long lastReported = 0;
+
+            @Override
+            public synchronized void onBytesRead(long bytesRead) {
+                final long bytes = totalBytes > 0 ? Math.min(bytesRead, totalBytes) : bytesRead;
+                final long step = totalBytes > 0 ? Math.max(1, totalBytes / 100) : READ_PROGRESS_STEP;
+                final boolean finished = totalBytes > 0 && bytes == totalBytes;
+                if (bytes <= lastReported || (bytes - lastReported < step && !finished)) {
+                    return;
+                }
+                lastReported = bytes;
+                JsonArgs event = new JsonArgs();
+                event.put("type", "progress");
+                event.put("stage", "read");
+                event.put("index", index);
+                event.put("sourceUri", sourceUri);
+                event.put("bytesRead", bytes);
+                if (totalBytes > 0) {
+                    event.put("totalBytes", totalBytes);
+                    event.put("progress", Math.round(100.0 * bytes / totalBytes) / 100.0);
+                }
+                PluginResult result = new PluginResult(PluginResult.Status.OK, event.jsonObj());
+                result.setKeepCallback(true);
+                callback.sendPluginResult(result);
+            }
+        };
+    }
 
-        Bitmap rotatedBitmap = null;
-        try {
+    /**
+     * Returns the worker pool used for media processing, creating it on first use.
+     * Idle threads time out so the pool costs nothing between picks.
+     */
+    private static synchronized ExecutorService getWorkerPool() {
+        if (workerPool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                WORKER_COUNT, WORKER_COUNT, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ActualizeImagePicker-" + threadCount.incrementAndGet());
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+            executor.allowCoreThreadTimeOut(true);
+            workerPool = executor;
+        }
+        return workerPool;
+    }
 
-            ExifInterface ei;
+    /**
+     * Returns the threads that run items in place of workers held by abandoned items, creating
+     * them on first use. Tasks are handed over directly and rejected when every thread is busy,
+     * so the allowance stays bounded and the worker pool keeps its size.
+     */
+    private static synchronized ExecutorService getSpareWorkerPool() {
+        if (spareWorkerPool == null) {
+            final AtomicInteger threadCount = new AtomicInteger();
+            spareWorkerPool = new ThreadPoolExecutor(
+                0, SPARE_WORKER_COUNT, 30, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "ActualizeImagePicker-spare-" + threadCount.incrementAndGet());
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
+        }
+        return spareWorkerPool;
+    }
 
-            if (imagePath.startsWith("content:/")) {
-                InputStream inputStream = cordova
-                        .getContext()
-                        .getContentResolver()
-                        .openInputStream(Uri.parse(imagePath));
+    /**
+     * Returns the memory budget shared by all workers, sized from the app's memory class on first use.
+     */
+    private MemoryBudget getMemoryBudget() {
+        synchronized (ActualizeImagePicker.class) {
+            if (memoryBudget == null) {
+                final ActivityManager activityManager =
+                    (ActivityManager) cordova.getContext().getSystemService(Context.ACTIVITY_SERVICE);
+                final long memoryClassBytes = activityManager != null && activityManager.getMemoryClass() > 0
+                    ? activityManager.getMemoryClass() * 1024L * 1024L : Runtime.getRuntime().maxMemory();
+                memoryBudget = new MemoryBudget(memoryClassBytes / MEMORY_BUDGET_DIVISOR, WORKER_COUNT);
+            }
+            return memoryBudget;
+        }
+    }
 
-                ei = new ExifInterface(inputStream);
-            } else {
-                ei = new ExifInterface(imagePath);
+    /**
+     * Lowers the memory budget and empties the bitmap pool when the system reports memory pressure.
+     * Registered once per process on the application context, which outlives the plugin.
+     */
+    private void registerMemoryCallbacks() {
+        synchronized (ActualizeImagePicker.class) {
+            if (memoryCallbacksRegistered) {
+                return;
+            }
+            memoryCallbacksRegistered = true;
+        }
+        final MemoryBudget budget = getMemoryBudget();
+        cordova.getContext().getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                final int pressure;
+                switch (level) {
+                    case ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL:
+                    case ComponentCallbacks2.TRIM_MEMORY_COMPLETE:
+                        pressure = MemoryBudget.PRESSURE_CRITICAL;
+                        break;
+                    case ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE:
+                    case ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW:
+                    case ComponentCallbacks2.TRIM_MEMORY_BACKGROUND:
+                    case ComponentCallbacks2.TRIM_MEMORY_MODERATE:
+                        pressure = MemoryBudget.PRESSURE_MODERATE;
+                        break;
+                    default:
+                        // TRIM_MEMORY_UI_HIDDEN only means the app went to the background
+                        return;
+                }
+                android.util.Log.d("ActualizeImagePicker", "onTrimMemory: level " + level);
+                budget.onPressure(pressure);
+                getBitmapPool().clear();
             }
 
-            int orientation = ei.getAttributeInt(ExifInterface.TAG_ORIENTATION,
-                    ExifInterface.ORIENTATION_UNDEFINED);
+            @Override
+            public void onLowMemory() {
+                android.util.Log.d("ActualizeImagePicker", "onLowMemory");
+                budget.onPressure(MemoryBudget.PRESSURE_CRITICAL);
+                getBitmapPool().clear();
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+        });
+    }
+
+    /**
+     * Returns the pool of reusable bitmaps shared by all workers, creating it on first use.
+     */
+    private static synchronized BitmapPool getBitmapPool() {
+        if (bitmapPool == null) {
+            bitmapPool = new BitmapPool(BITMAP_POOL_MAX_BYTES);
+        }
+        return bitmapPool;
+    }
+
+    private OutputCache getPreviewCache() {
+        synchronized (ActualizeImagePicker.class) {
+            if (previewCache == null) {
+                final File cacheDir = new File(cordova.getActivity().getCacheDir(), PREVIEW_CACHE_DIR);
+                previewCache = new OutputCache(cacheDir, PREVIEW_CACHE_MAX_BYTES);
+            }
+            return previewCache;
+        }
+    }
+
+    /**
+     * Returns the cache holding processed outputs, creating it on first use.
+     */
+    private OutputCache getOutputCache() {
+        synchronized (ActualizeImagePicker.class) {
+            if (outputCache == null) {
+                final File cacheDir = new File(cordova.getActivity().getCacheDir(), OUTPUT_CACHE_DIR);
+                outputCache = new OutputCache(cacheDir, getCacheBudget());
+            }
+            return outputCache;
+        }
+    }
+
+    /**
+     * @return the output cache budget set by the app, in bytes
+     */
+    private long getCacheBudget() {
+        return Math.max(0, preferences.getInteger(CACHE_SIZE_PREFERENCE, ProcessingOptions.DEFAULT_CACHE_SIZE_MB))
+            * 1024L * 1024L;
+    }
 
-            switch (orientation) {
+    /**
+     * Evicts least recently used outputs beyond the budget, which is the app's, raised to the
+     * largest cacheSizeLimitMB of the picks in progress: the cache is shared, so a pick asking
+     * for less can't evict what the app or another pick allows.
+     * @param keep the keys handed to the caller, kept even if they are not pinned
+     */
+    private void trimOutputCache(final Collection<String> keep) {
+        long maxBytes = getCacheBudget();
+        synchronized (this) {
+            for (PickSession session : sessions.values()) {
+                maxBytes = Math.max(maxBytes, session.options.cacheMaxBytes);
+            }
+        }
+        final OutputCache cache = getOutputCache();
+        synchronized (cache) {
+            cache.setMaxBytes(maxBytes);
+            cache.trimToSize(keep);
+        }
+    }
+
+    /**
+     * Returns the journal of durable picks, creating it on first use.
+     */
+    private JobJournal getJobJournal() {
+        synchronized (ActualizeImagePicker.class) {
+            if (jobJournal == null) {
+                jobJournal = new JobJournal(new File(cordova.getContext().getFilesDir(), JOURNAL_DIR));
+            }
+            return jobJournal;
+        }
+    }
 
-                case ExifInterface.ORIENTATION_ROTATE_90:
-                    rotatedBitmap = rotateImage(bitmap, 90);
-                    break;
+    /**
+     * Returns the image pipeline, reading through the app's content resolver into the output cache.
+     */
+    private ImageProcessor getImageProcessor() {
+        return new ImageProcessor(new ContentMediaSource(cordova.getContext().getContentResolver()),
+            getBitmapPool(), getOutputCache(), getMemoryBudget());
+    }
+
+    /**
+     * @param readListener receives the bytes read from the provider, or null
+     * @param streams registers the streams the processor opens, so they can be closed if the item times out
+     */
+    private ImageProcessor getImageProcessor(final ProgressInputStream.Listener readListener,
+                                             final ItemStreams streams) {
+        final MediaSource mediaSource = streams.wrap(new ContentMediaSource(cordova.getContext().getContentResolver()));
+        return new ImageProcessor(mediaSource, getBitmapPool(), getOutputCache(), getMemoryBudget(), readListener);
+    }
+
+    /**--------------------------------
+     *    PRIVATE UTILITY FUNCTIONS
+     *---------------------------------
+    /**
+     * Writes a small JPEG preview of an image or video to the preview cache.
+     * @param mediaUri the content URI or path of the media
+     * @param metadata the provider metadata of the media
+     * @param size the maximum width and height of the preview
+     * @return the path of the preview file
+     * @throws IOException if no preview could be created
+     */
+    private String createPreview(final String mediaUri, final MediaMetadata metadata, final int size) throws IOException {
+        final OutputCache cache = getPreviewCache();
+        final String sourceVersion = metadata.version();
+        final String cacheKey = OutputCache.keyFor(mediaUri,
+            sourceVersion != null ? sourceVersion : UUID.randomUUID().toString(), "preview", String.valueOf(size));
+        if (sourceVersion != null) {
+            final File cachedFile = cache.get(cacheKey);
+            if (cachedFile != null) {
+                return cachedFile.getPath();
+            }
+        }
 
-                case ExifInterface.ORIENTATION_ROTATE_180:
-                    rotatedBitmap = rotateImage(bitmap, 180);
-                    break;
+        final Bitmap preview = loadPreviewBitmap(mediaUri, metadata, size);
+        if (preview == null) {
+            throw new IOException("Could not create preview");
+        }
 
-                case ExifInterface.ORIENTATION_ROTATE_270:
-                    rotatedBitmap = rotateImage(bitmap, 270);
-                    break;
+        final File outputFile = cache.fileFor(cacheKey, "jpg");
+        try {
+            ImageProcessor.writeAtomically(outputFile, new ImageProcessor.OutputWriter() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    if (!preview.compress(Bitmap.CompressFormat.JPEG, PREVIEW_QUALITY, outputStream)) {
+                        throw new IOException("Could not encode preview");
+                    }
+                }
+            });
+        } finally {
+            getBitmapPool().put(preview);
+        }
+        cache.put(cacheKey, outputFile);
+        return outputFile.getPath();
+    }
 
-                case ExifInterface.ORIENTATION_NORMAL:
-                default:
-                    rotatedBitmap = bitmap;
+    /**
+     * Loads a preview bitmap, preferring the system thumbnail provider (API 29+), which usually
+     * serves an already-cached thumbnail. Older versions fall back to a heavily subsampled decode
+     * for images and a scaled frame grab for videos.
+     */
+    private Bitmap loadPreviewBitmap(final String mediaUri, final MediaMetadata metadata, final int size)
+            throws IOException {
+        final Uri uri = Uri.parse(mediaUri);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && mediaUri.startsWith("content:/")) {
+            try {
+                return cordova.getContext().getContentResolver().loadThumbnail(uri, new Size(size, size), null);
+            } catch (IOException e) {
+                android.util.Log.d("ActualizeImagePicker", "loadPreviewBitmap: no system thumbnail for " + mediaUri);
             }
-        } catch(IOException e) {
-            e.printStackTrace();
-            return bitmap;
         }
 
-        return rotatedBitmap;
+        if (metadata.isVideo()) {
+            return grabVideoFrame(uri, size);
+        }
+
+        return getImageProcessor().decodePreview(mediaUri, metadata, size);
     }
 
-    private static Bitmap rotateImage(Bitmap source, float angle) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(angle);
-        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(),
-                matrix, true);
+    /**
+     * Grabs a representative frame of a video, scaled to fit in a square of the given size.
+     */
+    private Bitmap grabVideoFrame(final Uri uri, final int size) throws IOException {
+        final MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(cordova.getContext(), uri);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                return retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, size, size);
+            }
+            final Bitmap frame = retriever.getFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+            return frame != null ? getImageProcessor().fitToSize(frame, size) : null;
+        } catch (RuntimeException e) {
+            throw new IOException("Could not read video frame: " + e.getMessage(), e);
+        } finally {
+            try {
+                retriever.release();
+            } catch (Exception ignored) {}
+        }
     }
 
     /**
@@ -534,89 +1520,194 @@ public class ActualizeImagePicker extends CordovaPlugin {
     }
 
     /**
-     * Checks if the given URI points to a video file.
-     * @param uri the content URI to check
-     * @return true if the URI is a video, false otherwise
+     * Transcodes a video to H.264 MP4 according to the videoQuality preset, or copies it as-is
+     * for "passthrough", for sources that already fit the preset, and when transcoding fails.
+     * @param videoUri the content URI of the video
+     * @param metadata the provider metadata of the video
+     * @param cacheKey the output cache key, used as the file name
+     * @param options the processing options holding the videoQuality preset
+     * @param listener receives the transcoding progress, or null
+     * @param readListener receives the bytes copied when the video is copied instead, or null
+     * @param streams registers the descriptors opened on the video, so they can be closed if it times out
+     * @param timings receives the time and bytes of the transcode or copy
+     * @return the local video file, with the transcode or copy statistics in its details
+     * @throws IOException if the video could not be read or written
      */
-    private boolean isVideoUri(String uri) {
-        if (uri == null) return false;
+    private ProcessedMedia transcodeVideoToLocal(final String videoUri, final MediaMetadata metadata,
+                                                 final String cacheKey, final ProcessingOptions options,
+                                                 final VideoTranscoder.ProgressListener listener,
+                                                 final ProgressInputStream.Listener readListener,
+                                                 final ItemStreams streams,
+                                                 final StageTimings timings) throws IOException {
+        final VideoTranscoder.Preset preset = VideoTranscoder.Preset.forQuality(options.videoQuality);
+        if (preset == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            return copyVideoToLocal(videoUri, metadata.mimeType, cacheKey, options.newHasher(), readListener,
+                streams, timings);
+        }
 
+        final Uri uri = Uri.parse(videoUri);
+        final File outputFile = getOutputCache().fileFor(cacheKey, "mp4");
+        final long transcodeStart = timings.begin();
         try {
-            String mimeType = cordova.getContext().getContentResolver().getType(Uri.parse(uri));
-            return mimeType != null && mimeType.startsWith("video/");
-        } catch (Exception e) {
-            return false;
+            final VideoTranscoder transcoder = new VideoTranscoder(new AndroidTranscodeBackend(cordova.getContext(), uri,
+                metadata.size, streams));
+            final VideoTranscoder.Result result = transcoder.transcode(outputFile, preset, listener);
+            timings.end(StageTimings.TRANSCODE, transcodeStart, result != null ? outputFile.length() : -1);
+            if (result != null) {
+                android.util.Log.d("ActualizeImagePicker", "transcodeVideoToLocal: " + result.width + "x" + result.height
+                    + " at " + result.bitrate + " bps in " + (result.elapsedNanos / 1000000L) + " ms");
+                final ProcessedMedia media = new ProcessedMedia(outputFile.getPath(), cacheKey);
+                media.details.put("transcode", result.toJson());
+                if (options.hash) {
+                    // MediaMuxer writes the file itself, so it is hashed once complete
+                    hashOutput(media, options, timings);
+                }
+                return media;
+            }
+        } catch (InterruptedIOException | ClosedByInterruptException e) {
+            // Canceled, not failed: no fallback copy
+            timings.end(StageTimings.TRANSCODE, transcodeStart);
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Unsupported codecs or containers are delivered as the original file
+            timings.end(StageTimings.TRANSCODE, transcodeStart);
+            android.util.Log.w("ActualizeImagePicker", "transcodeVideoToLocal: could not transcode " + videoUri
+                + ", copying the original", e);
         }
+        return copyVideoToLocal(videoUri, metadata.mimeType, cacheKey, options.newHasher(), readListener,
+            streams, timings);
     }
 
     /**
      * Copies a video from a content URI to a local file path.
+     * The copy goes through file descriptors and FileChannel.transferTo where the provider allows it,
+     * and the file only appears at its final path once it has been fully written.
      * @param videoUri the content URI of the video
-     * @return the path of the local video file, or null in case of failure
+     * @param mimeType the MIME type of the video, used to pick the file extension
+     * @param cacheKey the output cache key, used as the file name
+     * @param hasher hashes the video while it is copied, or null
+     * @param readListener receives the bytes copied so far, or null
+     * @param streams registers the descriptors opened on the video, so they can be closed if it times out
+     * @param timings receives the time and bytes of the copy
+     * @return the local video file, with the copy statistics and the hash in its details
+     * @throws IOException if the video could not be read or written
      */
-    private String copyVideoToLocal(final String videoUri) {
-        try {
-            Uri uri = Uri.parse(videoUri);
-
-            // Get the MIME type to determine the extension
-            String mimeType = cordova.getContext().getContentResolver().getType(uri);
-            String extension = "mp4"; // Default extension
-            if (mimeType != null) {
-                if (mimeType.contains("mp4")) {
-                    extension = "mp4";
-                } else if (mimeType.contains("3gp")) {
-                    extension = "3gp";
-                } else if (mimeType.contains("webm")) {
-                    extension = "webm";
-                } else if (mimeType.contains("mkv")) {
-                    extension = "mkv";
-                } else if (mimeType.contains("avi")) {
-                    extension = "avi";
-                } else if (mimeType.contains("mov") || mimeType.contains("quicktime")) {
-                    extension = "mov";
-                }
+    private ProcessedMedia copyVideoToLocal(final String videoUri, final String mimeType, final String cacheKey,
+                                            final ContentHasher hasher,
+                                            final ProgressInputStream.Listener readListener,
+                                            final ItemStreams streams,
+                                            final StageTimings timings) throws IOException {
+        Uri uri = Uri.parse(videoUri);
+
+        // The MIME type determines the extension
+        String extension = "mp4"; // Default extension
+        if (mimeType != null) {
+            if (mimeType.contains("mp4")) {
+                extension = "mp4";
+            } else if (mimeType.contains("3gp")) {
+                extension = "3gp";
+            } else if (mimeType.contains("webm")) {
+                extension = "webm";
+            } else if (mimeType.contains("mkv")) {
+                extension = "mkv";
+            } else if (mimeType.contains("avi")) {
+                extension = "avi";
+            } else if (mimeType.contains("mov") || mimeType.contains("quicktime")) {
+                extension = "mov";
             }
+        }
 
-            // Generate output path
-            final String outputFileName = String.format(Locale.US, "video_%d_%d.%s",
-                System.currentTimeMillis(), videoUri.hashCode(), extension);
-            final File outputDir = cordova.getActivity().getCacheDir();
-            final String outputPath = outputDir + "/" + outputFileName;
-
-            // Copy the video file
-            InputStream inputStream = cordova.getContext().getContentResolver().openInputStream(uri);
-            if (inputStream == null) {
-                throw new IOException("Could not open input stream for video");
-            }
-
-            OutputStream outputStream = new FileOutputStream(outputPath);
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-
-            inputStream.close();
-            outputStream.close();
-
-            return outputPath;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
+        // Generate output path
+        final File outputFile = getOutputCache().fileFor(cacheKey, extension);
+
+        // Copy the video file
+        final long copyStart = timings.begin();
+        final StreamCopier.Result copyResult = StreamCopier.copy(cordova.getContext().getContentResolver(), uri, outputFile,
+            hasher, readListener, streams);
+        timings.end(StageTimings.COPY, copyStart, copyResult.bytes);
+        android.util.Log.d("ActualizeImagePicker", "copyVideoToLocal: " + copyResult.bytes + " bytes via "
+            + copyResult.method + " at " + copyResult.throughputMBps() + " MB/s");
+
+        final ProcessedMedia media = new ProcessedMedia(outputFile.getPath(), cacheKey);
+        media.details.put("transfer", copyResult.toJson());
+        if (hasher != null) {
+            media.details.put("hash", hasher.toJson());
         }
+        return media;
+    }
+
+    /**
+     * Hashes an output that was not written through a hasher: cache hits and transcoded videos.
+     */
+    private static void hashOutput(final ProcessedMedia media, final ProcessingOptions options,
+                                   final StageTimings timings) throws IOException {
+        final long hashStart = timings.begin();
+        final File outputFile = new File(media.outputPath);
+        media.details.put("hash", ContentHasher.hashFile(outputFile, options.hashChunkSize));
+        timings.end(StageTimings.HASH, hashStart, outputFile.length());
     }
 
     /**
      * Copies a media file (image or video) from a content URI to a local file path.
+     * Outputs are content-addressed: the key covers the source URI, its size and modification
+     * time and the processing options, so re-picking an unchanged item returns the cached file
+     * without any processing.
+     * @param session the pick the media belongs to, with the processing options; its output is kept
+     *                from eviction until the pick is closed
      * @param mediaUri the content URI of the media
-     * @param quality the quality setting for images (ignored for videos)
-     * @return the path of the local file, or null in case of failure
+     * @param metadata the provider metadata of the media, which decides how it is processed
+     * @param listener receives the progress of video transcoding, or null
+     * @param readListener receives the bytes read from the provider, or null
+     * @param streams registers the streams opened on the media, so they can be closed if it times out
+     * @param timings receives the time and bytes of each processing stage
+     * @return the processed local file
+     * @throws IOException if the media could not be processed
      */
-    private String copyMediaToLocal(final String mediaUri, final int quality) {
-        if (isVideoUri(mediaUri)) {
-            return copyVideoToLocal(mediaUri);
+    private ProcessedMedia copyMediaToLocal(final PickSession session, final String mediaUri,
+                                            final MediaMetadata metadata,
+                                            final VideoTranscoder.ProgressListener listener,
+                                            final ProgressInputStream.Listener readListener,
+                                            final ItemStreams streams,
+                                            final StageTimings timings) throws IOException {
+        final ProcessingOptions options = session.options;
+        final boolean isVideo = metadata.isVideo();
+        final OutputCache cache = getOutputCache();
+        final String sourceVersion = options.cache ? metadata.version() : null;
+
+        final String cacheKey;
+        if (sourceVersion != null) {
+            cacheKey = OutputCache.keyFor(mediaUri, sourceVersion, isVideo ? options.videoCacheKey() : options.cacheKey());
+            // Pinned before the lookup, so a concurrent pick's trim can't evict the entry once found
+            session.pinOutput(cache, cacheKey);
+            final File cachedFile = cache.get(cacheKey);
+            if (cachedFile != null) {
+                final ProcessedMedia media = isVideo
+                    ? new ProcessedMedia(cachedFile.getPath(), cacheKey) : ImageProcessor.createImageMedia(cachedFile, cacheKey);
+                media.details.put("size", cachedFile.length());
+                media.details.put("cached", true);
+                if (options.hash) {
+                    hashOutput(media, options, timings);
+                }
+                return media;
+            }
+        } else {
+            // Sources without version info can't be validated later, so they get a unique key
+            cacheKey = OutputCache.keyFor(mediaUri, UUID.randomUUID().toString());
+            session.pinOutput(cache, cacheKey);
+            cache.recordMiss();
+        }
+
+        final ProcessedMedia media;
+        if (isVideo) {
+            media = transcodeVideoToLocal(mediaUri, metadata, cacheKey, options, listener, readListener, streams,
+                timings);
         } else {
-            return copyImageToLocal(mediaUri, quality);
+            media = getImageProcessor(readListener, streams).process(mediaUri, metadata, options, cacheKey, timings);
         }
+        final File outputFile = new File(media.outputPath);
+        cache.put(cacheKey, outputFile);
+        media.details.put("size", outputFile.length());
+        media.details.put("cached", false);
+        return media;
     }
 }
@@ -0,0 +1,87 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import earth.actualize.cordova.plugin.utils.JsonArgs;
+
+/**
+ * Sends processed files to JS as binary messages, for the "arraybuffer" return mode.
+ * Each file goes out in chunks on the pick's callback, kept open: a multipart message
+ * holding a small header ({type: "chunk", index, offset, byteLength}) and the chunk bytes,
+ * which the JS side assembles into one ArrayBuffer per item.
+ *
+ * This saves the app reading the file back itself, not copies: the file has been written in
+ * full before it is sent, and the Cordova bridge carries the bytes base64-encoded.
+ */
+class ArrayBufferSender {
+
+    static final int CHUNK_SIZE = 256 * 1024;
+
+    // The events encode the bytes right away, so each worker thread can reuse one chunk buffer
+    private static final ThreadLocal<byte[]> chunkBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[CHUNK_SIZE];
+        }
+    };
+
+    /**
+     * Sends the whole file as chunks of the given item.
+     * @param events the events of the pick
+     * @param index the index of the item in the selection
+     * @param file the processed file
+     * @throws IOException if the file cannot be read
+     */
+    static void send(final PickEvents events, final int index, final File file) throws IOException {
+        final long byteLength = file.length();
+        final byte[] buffer = chunkBuffer.get();
+        InputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            long offset = 0;
+            while (offset < byteLength) {
+                final int length = readChunk(inputStream, buffer);
+                if (length <= 0) {
+                    throw new IOException("File shrank while sending: " + file);
+                }
+                final JsonArgs header = new JsonArgs()
+                    .put("type", "chunk")
+                    .put("index", index)
+                    .put("offset", offset)
+                    .put("byteLength", byteLength);
+                events.send(header.jsonObj(), buffer, length);
+                offset += length;
+            }
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /**
+     * Fills the buffer, stopping early only at the end of the stream.
+     */
+    private static int readChunk(final InputStream inputStream, final byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            final int bytesRead = inputStream.read(buffer, length, buffer.length - length);
+            if (bytesRead == -1) {
+                break;
+            }
+            length += bytesRead;
+        }
+        return length;
+    }
+}
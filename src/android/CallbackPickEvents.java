@@ -0,0 +1,46 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.PluginResult;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sends the events of a pick on its callback, keeping it open for the result that follows.
+ */
+class CallbackPickEvents implements PickEvents {
+
+    private final CallbackContext callback;
+
+    CallbackPickEvents(final CallbackContext callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void send(final JSONObject event) {
+        final PluginResult result = new PluginResult(PluginResult.Status.OK, event);
+        result.setKeepCallback(true);
+        callback.sendPluginResult(result);
+    }
+
+    @Override
+    public void send(final JSONObject header, final byte[] bytes, final int length) {
+        // PluginResult base64-encodes the bytes right away
+        final List<PluginResult> parts = new ArrayList<>(2);
+        parts.add(new PluginResult(PluginResult.Status.OK, header));
+        parts.add(new PluginResult(PluginResult.Status.OK,
+            length == bytes.length ? bytes : Arrays.copyOf(bytes, length)));
+        final PluginResult result = new PluginResult(PluginResult.Status.OK, parts);
+        result.setKeepCallback(true);
+        callback.sendPluginResult(result);
+    }
+}
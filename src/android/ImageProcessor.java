@@ -0,0 +1,825 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.os.Build;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+import earth.actualize.cordova.plugin.utils.ContentHasher;
+import earth.actualize.cordova.plugin.utils.CountingInputStream;
+import earth.actualize.cordova.plugin.utils.ImageEncoder;
+import earth.actualize.cordova.plugin.utils.ImageGeometry;
+import earth.actualize.cordova.plugin.utils.JpegSegmentRewriter;
+import earth.actualize.cordova.plugin.utils.JsonArgs;
+import earth.actualize.cordova.plugin.utils.MediaMetadata;
+import earth.actualize.cordova.plugin.utils.MediaSource;
+import earth.actualize.cordova.plugin.utils.MemoryBudget;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+import earth.actualize.cordova.plugin.utils.ProgressInputStream;
+import earth.actualize.cordova.plugin.utils.RewindableSource;
+import earth.actualize.cordova.plugin.utils.StageTimings;
+
+/**
+ * The image pipeline: decode (subsampled) -> resize -> orient -> encode, or a lossless JPEG copy.
+ * Items are read through a {@link MediaSource} and written to an {@link OutputCache}, with
+ * intermediate bitmaps drawn from a {@link BitmapPool}, so the pipeline can be driven without
+ * the plugin, e.g. against a fixed corpus of files.
+ */
+public class ImageProcessor {
+
+    // Buffer size used when streaming encoded output to the cache directory
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Largest output bitmap of the tiled decode; larger outputs are scaled down to fit
+    private static final long TILED_OUTPUT_MAX_BYTES = Runtime.getRuntime().maxMemory() / 8;
+
+    // Lowest quality the maxFileSizeKB search goes down to before scaling the image down instead
+    private static final int MIN_SEARCH_QUALITY = 30;
+    // How many times an image may be scaled down to fit maxFileSizeKB
+    private static final int MAX_DOWNSCALE_STEPS = 4;
+    // Images are not scaled down below this side to fit maxFileSizeKB
+    private static final int MIN_DOWNSCALE_SIDE = 64;
+    // Encode buffers that grew past this are dropped rather than kept for the next image
+    private static final int MAX_RETAINED_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    // The in-memory encode buffers of each worker, reused across the passes of a search and across images
+    private static final ThreadLocal<EncodeBuffers> encodeBuffers = new ThreadLocal<EncodeBuffers>() {
+        @Override
+        protected EncodeBuffers initialValue() {
+            return new EncodeBuffers();
+        }
+    };
+
+    private final MediaSource mediaSource;
+    private final BitmapPool pool;
+    private final OutputCache cache;
+    private final MemoryBudget memoryBudget;
+    private final ProgressInputStream.Listener readListener;
+
+    public ImageProcessor(final MediaSource mediaSource, final BitmapPool pool, final OutputCache cache) {
+        this(mediaSource, pool, cache, null);
+    }
+
+    /**
+     * @param memoryBudget admits images only while their estimated bitmap memory fits, or null for no limit
+     */
+    public ImageProcessor(final MediaSource mediaSource, final BitmapPool pool, final OutputCache cache,
+                          final MemoryBudget memoryBudget) {
+        this(mediaSource, pool, cache, memoryBudget, null);
+    }
+
+    /**
+     * @param readListener receives the bytes read from the source by {@link #process}, or null
+     */
+    public ImageProcessor(final MediaSource mediaSource, final BitmapPool pool, final OutputCache cache,
+                          final MemoryBudget memoryBudget, final ProgressInputStream.Listener readListener) {
+        this.mediaSource = mediaSource;
+        this.pool = pool;
+        this.cache = cache;
+        this.memoryBudget = memoryBudget;
+        this.readListener = readListener;
+    }
+
+    /**
+     * Processes an image into a local file in the output cache, encoded at the requested quality.
+     * When a maximum size is requested, the image is decoded subsampled and then resized exactly,
+     * so that memory usage depends on the output size rather than on the source size.
+     * The output format falls back to JPEG where the requested one can't be encoded.
+     * The image is opened once: the passthrough check, EXIF orientation, dimensions and pixels are
+     * all read from the same source, which is closed before returning.
+     *
+     * @param imagePath the content URI or path of the original image
+     * @param metadata the provider metadata of the image
+     * @param options the processing options (format, quality, maximum size and resize mode)
+     * @param cacheKey the output cache key, used as the file name
+     * @param timings receives the time and bytes of each stage
+     * @return the processed image, with its format and MIME type in its details
+     * @throws IOException if the image could not be loaded or written
+     */
+    public ProcessedMedia process(final String imagePath, final MediaMetadata metadata,
+                                  final ProcessingOptions options, final String cacheKey,
+                                  final StageTimings timings) throws IOException {
+        final RewindableSource source = new RewindableSource(mediaSource, imagePath, readListener);
+        try {
+            return process(source, metadata, options, cacheKey, timings);
+        } finally {
+            source.close();
+            if (source.getOpenCount() > 1) {
+                android.util.Log.d("ActualizeImagePicker", "process: " + imagePath + " was opened "
+                    + source.getOpenCount() + " times");
+            }
+        }
+    }
+
+    private ProcessedMedia process(final RewindableSource source, final MediaMetadata metadata,
+                                   final ProcessingOptions options, final String cacheKey,
+                                   final StageTimings timings) throws IOException {
+        // JPEGs that need no pixel transform are copied as-is, keeping orientation in EXIF,
+        // unless they may be too large for maxFileSizeKB
+        if (options.allowsPassthrough() && (options.maxFileSizeBytes == 0
+                || (metadata.size >= 0 && metadata.size <= options.maxFileSizeBytes))) {
+            final long passthroughStart = timings.begin();
+            final File outputFile = cache.fileFor(cacheKey, ImageEncoder.extensionFor(ImageEncoder.FORMAT_JPEG));
+            final ContentHasher hasher = options.newHasher();
+            if (copyJpegPassthrough(source, options, outputFile, hasher)) {
+                timings.end(StageTimings.PASSTHROUGH, passthroughStart, outputFile.length());
+                return putHash(createImageMedia(outputFile, cacheKey), hasher);
+            }
+            timings.end(StageTimings.PASSTHROUGH, passthroughStart);
+        }
+
+        // Pipeline: decode (subsampled) -> resize -> orient -> single encode at the requested quality
+        // Bounds are expressed in display orientation, so swap them for images stored sideways
+        final long exifStart = timings.begin();
+        final int orientation = getOrientation(source, metadata);
+        timings.end(StageTimings.EXIF, exifStart);
+        final boolean swapsAxes = ImageGeometry.swapsAxes(orientation);
+        final int boundsWidth = swapsAxes ? options.maxHeight : options.maxWidth;
+        final int boundsHeight = swapsAxes ? options.maxWidth : options.maxHeight;
+
+        // Retrieves Bitmap
+        checkCanceled();
+        final long boundsStart = timings.begin();
+        final BitmapFactory.Options bounds = decodeBounds(source, timings);
+        timings.end(StageTimings.DECODE, boundsStart);
+
+        // Waits until the memory budget has room for the bitmaps this image will hold at once
+        final long footprint = estimatePeakBytes(bounds.outWidth, bounds.outHeight, boundsWidth, boundsHeight, options);
+        final long admissionStart = timings.begin();
+        admit(footprint);
+        timings.end(StageTimings.ADMISSION, admissionStart, footprint);
+        try {
+            return decodeAndEncode(source, bounds, orientation, boundsWidth, boundsHeight, options, cacheKey, timings);
+        } finally {
+            if (memoryBudget != null) {
+                memoryBudget.release(footprint);
+            }
+        }
+    }
+
+    /**
+     * Decodes an image whose bounds are known and encodes it, once admitted by the memory budget.
+     * @param boundsWidth the maximum width of the output in stored orientation, or 0 for no limit
+     * @param boundsHeight the maximum height of the output in stored orientation, or 0 for no limit
+     */
+    private ProcessedMedia decodeAndEncode(final RewindableSource source, final BitmapFactory.Options bounds,
+                                           final int orientation, final int boundsWidth, final int boundsHeight,
+                                           final ProcessingOptions options, final String cacheKey,
+                                           final StageTimings timings) throws IOException {
+        final long decodeStart = timings.begin();
+        if (options.tiledDecodeThresholdPixels > 0
+                && (long) bounds.outWidth * bounds.outHeight > options.tiledDecodeThresholdPixels) {
+            // Very large images are decoded, resized and rotated tile by tile within a fixed budget
+            final TiledImageDecoder tiledDecoder = new TiledImageDecoder(pool, TILED_OUTPUT_MAX_BYTES);
+            final CountingInputStream tiledStream = new CountingInputStream(source.rewind());
+            final Bitmap tiledBitmap = tiledDecoder.decode(tiledStream, bounds.outWidth, bounds.outHeight,
+                    orientation, boundsWidth, boundsHeight, options.resizeMode, options.bitmapConfig);
+            timings.addBytes(StageTimings.DECODE, tiledStream.getCount());
+            if (tiledBitmap != null) {
+                timings.end(StageTimings.DECODE, decodeStart);
+                timings.recordBitmapBytes(tiledBitmap.getAllocationByteCount()
+                        + (long) TiledImageDecoder.TILE_SIZE * TiledImageDecoder.TILE_SIZE
+                        * BitmapPool.bytesPerPixel(options.bitmapConfig));
+                final ProcessedMedia media = encodeTimed(tiledBitmap, options, cacheKey, timings);
+                media.details.put("tiled", new JsonArgs()
+                        .put("tiles", tiledDecoder.getTileCount())
+                        .put("sampleSize", tiledDecoder.getSampleSize()));
+                return media;
+            }
+        }
+        final Bitmap originalBitmap = decodeSampledBitmap(source, bounds, boundsWidth, boundsHeight,
+                options.resizeMode, options.bitmapConfig, timings);
+        timings.end(StageTimings.DECODE, decodeStart);
+
+        if (originalBitmap == null) {
+            throw new IOException("Could not load image. Bitmap is null");
+        }
+        timings.recordBitmapBytes(originalBitmap.getAllocationByteCount());
+
+        // Resizes before rotating so the rotation only touches the output-sized bitmap
+        Bitmap bitmap = originalBitmap;
+        if (options.hasSizeLimit()) {
+            checkCanceled(bitmap);
+            final long resizeStart = timings.begin();
+            final Bitmap resized = resizeToBounds(bitmap, boundsWidth, boundsHeight, options.resizeMode);
+            recordTransformBytes(timings, bitmap, resized);
+            bitmap = replaceBitmap(bitmap, resized);
+            timings.end(StageTimings.RESIZE, resizeStart);
+        }
+
+        // Corrects the image rotation using bitmap metadata, if necessary
+        checkCanceled(bitmap);
+        final long rotateStart = timings.begin();
+        final Bitmap rotated = handleImageRotation(bitmap, orientation);
+        recordTransformBytes(timings, bitmap, rotated);
+        final Bitmap orientedBitmap = replaceBitmap(bitmap, rotated);
+        timings.end(StageTimings.ROTATE, rotateStart);
+
+        // Compresses Bitmap once, streaming straight to the output file
+        return encodeTimed(orientedBitmap, options, cacheKey, timings);
+    }
+
+    /**
+     * Estimates the most bitmap memory processing an image will hold at once, from its stored size:
+     * the decoded bitmap and the resized one during the resize, or the output and its rotated copy,
+     * or for tiled decodes the budget-limited output and one tile.
+     * @return the estimate in bytes, or 0 if the size of the image is unknown
+     */
+    static long estimatePeakBytes(final int width, final int height, final int boundsWidth, final int boundsHeight,
+                                  final ProcessingOptions options) {
+        if (width <= 0 || height <= 0) {
+            return 0;
+        }
+        final int bytesPerPixel = BitmapPool.bytesPerPixel(options.bitmapConfig);
+        final double scale = options.hasSizeLimit() ? ImageGeometry.computeScale(width, height, boundsWidth,
+            boundsHeight, ProcessingOptions.RESIZE_FILL.equals(options.resizeMode)) : 1;
+        final long outputBytes = Math.round(width * scale) * Math.round(height * scale) * bytesPerPixel;
+        if (options.tiledDecodeThresholdPixels > 0 && (long) width * height > options.tiledDecodeThresholdPixels) {
+            return Math.min(outputBytes, TILED_OUTPUT_MAX_BYTES)
+                + (long) TiledImageDecoder.TILE_SIZE * TiledImageDecoder.TILE_SIZE * bytesPerPixel;
+        }
+        final int sampleSize = options.hasSizeLimit() ? ImageGeometry.computeSampleSize(width, height, scale) : 1;
+        final long decodedBytes = (long) ((width + sampleSize - 1) / sampleSize)
+            * ((height + sampleSize - 1) / sampleSize) * bytesPerPixel;
+        return Math.max(decodedBytes + outputBytes, 2 * outputBytes);
+    }
+
+    /**
+     * Blocks until the memory budget admits an image of the given footprint; canceling the pick
+     * interrupts the wait.
+     */
+    private void admit(final long footprint) throws InterruptedIOException {
+        if (memoryBudget == null) {
+            return;
+        }
+        try {
+            memoryBudget.acquire(footprint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Processing was canceled");
+        }
+    }
+
+    /**
+     * Encodes the final bitmap as the encode stage, returning it to the pool afterwards.
+     */
+    private ProcessedMedia encodeTimed(final Bitmap bitmap, final ProcessingOptions options, final String cacheKey,
+                                       final StageTimings timings) throws IOException {
+        checkCanceled(bitmap);
+        final long encodeStart = timings.begin();
+        try {
+            final ProcessedMedia media = encodeImage(bitmap, options, cacheKey);
+            timings.end(StageTimings.ENCODE, encodeStart, new File(media.outputPath).length());
+            return media;
+        } finally {
+            pool.put(bitmap);
+        }
+    }
+
+    /**
+     * Decodes a small, upright preview of an image.
+     * @param size the maximum width and height of the preview
+     * @return the preview, to be returned to the pool by the caller, or null if the image can't be decoded
+     */
+    public Bitmap decodePreview(final String imagePath, final MediaMetadata metadata, final int size)
+            throws IOException {
+        final RewindableSource source = new RewindableSource(mediaSource, imagePath);
+        final int orientation;
+        final Bitmap bitmap;
+        try {
+            orientation = getOrientation(source, metadata);
+            bitmap = decodeSampledBitmap(source, decodeBounds(source, null), size, size, ProcessingOptions.RESIZE_FIT,
+                    Bitmap.Config.ARGB_8888, null);
+        } finally {
+            source.close();
+        }
+        if (bitmap == null) {
+            return null;
+        }
+        final Bitmap resizedBitmap = replaceBitmap(bitmap, resizeToBounds(bitmap, size, size, ProcessingOptions.RESIZE_FIT));
+        return replaceBitmap(resizedBitmap, handleImageRotation(resizedBitmap, orientation));
+    }
+
+    /**
+     * Scales a bitmap down to fit in a square of the given size.
+     * @return the scaled bitmap, or the bitmap itself if it already fits
+     */
+    public Bitmap fitToSize(final Bitmap bitmap, final int size) {
+        return replaceBitmap(bitmap, resizeToBounds(bitmap, size, size, ProcessingOptions.RESIZE_FIT));
+    }
+
+    /**
+     * Stops processing between stages once the pick has been canceled, which interrupts the worker.
+     */
+    private static void checkCanceled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Processing was canceled");
+        }
+    }
+
+    /**
+     * Like {@link #checkCanceled()}, returning the bitmap in hand to the pool before stopping.
+     */
+    private void checkCanceled(final Bitmap bitmap) throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            pool.put(bitmap);
+            checkCanceled();
+        }
+    }
+
+    /**
+     * Records the bitmap bytes held while a transform has both its source and its result.
+     */
+    private static void recordTransformBytes(final StageTimings timings, final Bitmap source, final Bitmap result) {
+        timings.recordBitmapBytes(source.getAllocationByteCount()
+            + (result != source ? result.getAllocationByteCount() : 0));
+    }
+
+    /**
+     * Encodes the processed bitmap in the requested output format, falling back to JPEG
+     * when the device has no encoder for it.
+     * @return the encoded image, with its format and MIME type in its details
+     */
+    private ProcessedMedia encodeImage(final Bitmap bitmap, final ProcessingOptions options, final String cacheKey)
+            throws IOException {
+        String format = ImageEncoder.resolveFormat(options.outputFormat);
+        if (options.maxFileSizeBytes > 0) {
+            if (ImageEncoder.FORMAT_HEIF.equals(format)) {
+                // HeifWriter only writes files, so the size search can't run in memory
+                android.util.Log.d("ActualizeImagePicker", "encodeImage: maxFileSizeKB is not supported for HEIF, using JPEG");
+                format = ImageEncoder.FORMAT_JPEG;
+            }
+            return encodeToSize(bitmap, format, options, cacheKey);
+        }
+        if (ImageEncoder.FORMAT_HEIF.equals(format)) {
+            final File outputFile = cache.fileFor(cacheKey, ImageEncoder.extensionFor(format));
+            try {
+                ImageEncoder.writeHeif(bitmap, options.qualityFor(format), outputFile);
+                final ProcessedMedia media = createImageMedia(outputFile, cacheKey);
+                if (options.hash) {
+                    // HeifWriter writes the file itself, so it is hashed once complete
+                    media.details.put("hash", ContentHasher.hashFile(outputFile, options.hashChunkSize));
+                }
+                return media;
+            } catch (IOException e) {
+                android.util.Log.w("ActualizeImagePicker", "encodeImage: HEIF not available, falling back to JPEG", e);
+                format = ImageEncoder.FORMAT_JPEG;
+            }
+        }
+
+        final String outputFormat = format;
+        final File outputFile = cache.fileFor(cacheKey, ImageEncoder.extensionFor(outputFormat));
+        final ContentHasher hasher = options.newHasher();
+        writeAtomically(outputFile, hasher, new OutputWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                ImageEncoder.compress(bitmap, outputFormat, options.qualityFor(outputFormat), outputStream);
+            }
+        });
+        return putHash(createImageMedia(outputFile, cacheKey), hasher);
+    }
+
+    /**
+     * Encodes an image under options.maxFileSizeBytes. Each pass encodes into a reused in-memory
+     * buffer: the quality is binary searched between the requested quality and MIN_SEARCH_QUALITY,
+     * and if even the lowest quality is too large the image is scaled down, by the ratio the last
+     * pass missed by, and searched again. Only the final bytes are written to the output file.
+     * If nothing fits within MAX_DOWNSCALE_STEPS, or scaling down is disabled, the smallest encode
+     * is written with fits false.
+     * @param format JPEG, WebP or PNG, which has no quality and is only scaled down
+     * @return the encoded image, with {quality, passes, downscales, width, height, fits} as sizeSearch in its details
+     */
+    private ProcessedMedia encodeToSize(final Bitmap bitmap, final String format, final ProcessingOptions options,
+                                        final String cacheKey) throws IOException {
+        final EncodeBuffers buffers = encodeBuffers.get();
+        final long maxBytes = options.maxFileSizeBytes;
+        final int maxQuality = options.qualityFor(format);
+        final int minQuality = ImageEncoder.FORMAT_PNG.equals(format) ? maxQuality : Math.min(MIN_SEARCH_QUALITY, maxQuality);
+        Bitmap current = bitmap;
+        int passes = 0;
+        int downscales = 0;
+        int quality;
+        boolean fits;
+        try {
+            while (true) {
+                // The highest fitting quality ends up in buffers.best; the top is tried first
+                // since many images fit as requested
+                int low = minQuality;
+                int high = maxQuality;
+                boolean first = true;
+                quality = -1;
+                while (low <= high) {
+                    checkCanceled();
+                    final int candidate = first ? high : (low + high + 1) / 2;
+                    first = false;
+                    buffers.scratch.reset();
+                    ImageEncoder.compress(current, format, candidate, buffers.scratch);
+                    passes++;
+                    if (buffers.scratch.size() <= maxBytes) {
+                        buffers.keepScratch();
+                        quality = candidate;
+                        low = candidate + 1;
+                    } else {
+                        high = candidate - 1;
+                    }
+                }
+                fits = quality >= 0;
+                if (fits || !options.maxFileSizeDownscale || downscales == MAX_DOWNSCALE_STEPS
+                        || Math.min(current.getWidth(), current.getHeight()) <= MIN_DOWNSCALE_SIDE) {
+                    break;
+                }
+
+                // Even the lowest quality is too large: scale down by the ratio it missed by, with some margin
+                final double scale = Math.max(0.5, Math.min(0.9,
+                    Math.sqrt((double) maxBytes / buffers.scratch.size()) * 0.95));
+                final Bitmap scaled = drawScaled(current, null, Math.max(1, (int) (current.getWidth() * scale)),
+                    Math.max(1, (int) (current.getHeight() * scale)));
+                if (current != bitmap) {
+                    pool.put(current);
+                }
+                current = scaled;
+                downscales++;
+            }
+            if (!fits) {
+                // The last pass was the smallest encode of the smallest size
+                buffers.keepScratch();
+                quality = minQuality;
+                android.util.Log.w("ActualizeImagePicker", "encodeToSize: could not fit " + maxBytes
+                    + " bytes, writing " + buffers.best.size());
+            }
+
+            final File outputFile = cache.fileFor(cacheKey, ImageEncoder.extensionFor(format));
+            final ContentHasher hasher = options.newHasher();
+            writeAtomically(outputFile, hasher, new OutputWriter() {
+                @Override
+                public void writeTo(OutputStream outputStream) throws IOException {
+                    buffers.best.writeTo(outputStream);
+                }
+            });
+            final ProcessedMedia media = putHash(createImageMedia(outputFile, cacheKey), hasher);
+            media.details.put("sizeSearch", new JsonArgs()
+                .put("quality", quality)
+                .put("passes", passes)
+                .put("downscales", downscales)
+                .put("width", current.getWidth())
+                .put("height", current.getHeight())
+                .put("fits", fits));
+            return media;
+        } finally {
+            if (current != bitmap) {
+                pool.put(current);
+            }
+            buffers.trim();
+        }
+    }
+
+    /**
+     * A worker's pair of encode buffers: the best fitting encode so far and the pass in progress.
+     */
+    private static class EncodeBuffers {
+        EncodeBuffer best = new EncodeBuffer();
+        EncodeBuffer scratch = new EncodeBuffer();
+
+        /**
+         * Keeps the pass in progress as the best encode, reusing the previous best for the next pass.
+         */
+        void keepScratch() {
+            final EncodeBuffer previous = best;
+            best = scratch;
+            scratch = previous;
+        }
+
+        /**
+         * Empties both buffers, dropping those that grew too large to keep around between images.
+         */
+        void trim() {
+            best = best.capacity() > MAX_RETAINED_BUFFER_SIZE ? new EncodeBuffer() : best;
+            scratch = scratch.capacity() > MAX_RETAINED_BUFFER_SIZE ? new EncodeBuffer() : scratch;
+            best.reset();
+            scratch.reset();
+        }
+    }
+
+    private static class EncodeBuffer extends ByteArrayOutputStream {
+        EncodeBuffer() {
+            super(OUTPUT_BUFFER_SIZE);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+    /**
+     * Adds the hash computed while writing the output to its details.
+     * @param hasher the hasher the output was written through, or null if no hash was requested
+     */
+    private static ProcessedMedia putHash(final ProcessedMedia media, final ContentHasher hasher) {
+        if (hasher != null) {
+            media.details.put("hash", hasher.toJson());
+        }
+        return media;
+    }
+
+    /**
+     * Describes an encoded image file, deriving its format from the file extension.
+     */
+    static ProcessedMedia createImageMedia(final File outputFile, final String cacheKey) {
+        final String format = ImageEncoder.formatForFile(outputFile);
+        final ProcessedMedia media = new ProcessedMedia(outputFile.getPath(), cacheKey);
+        media.details.put("format", format);
+        media.details.put("mimeType", ImageEncoder.mimeTypeFor(format));
+        return media;
+    }
+
+    /**
+     * Copies a JPEG to a local file without decoding it. The original bytes are streamed as-is,
+     * or rewritten segment by segment when metadata stripping is requested, so the orientation
+     * is carried by the EXIF orientation tag instead of rotated pixels.
+     *
+     * @param source the original image
+     * @param options the processing options
+     * @param outputFile the file to write the image to
+     * @param hasher hashes the written bytes, or null
+     * @return true if the image was copied, false if the source is not a JPEG
+     * @throws IOException if the image could not be read or written
+     */
+    private boolean copyJpegPassthrough(final RewindableSource source, final ProcessingOptions options,
+                                        final File outputFile, final ContentHasher hasher) throws IOException {
+        // The rewound stream can't mark, which the signature check needs
+        final InputStream inputStream = new BufferedInputStream(source.rewind());
+        if (!JpegSegmentRewriter.isJpeg(inputStream)) {
+            return false;
+        }
+
+        writeAtomically(outputFile, hasher, new OutputWriter() {
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                JpegSegmentRewriter.copy(inputStream, outputStream, options.stripMetadata);
+            }
+        });
+        return true;
+    }
+
+    interface OutputWriter {
+        void writeTo(OutputStream outputStream) throws IOException;
+    }
+
+    /**
+     * Writes a file under a temporary name and moves it into place once complete,
+     * so a failed write never leaves a partial file at the output path.
+     */
+    static void writeAtomically(final File outputFile, final OutputWriter writer) throws IOException {
+        writeAtomically(outputFile, null, writer);
+    }
+
+    /**
+     * Same as {@link #writeAtomically(File, OutputWriter)}, passing the written bytes through a hasher.
+     * @param hasher hashes the output as it is written, or null
+     */
+    static void writeAtomically(final File outputFile, final ContentHasher hasher, final OutputWriter writer)
+            throws IOException {
+        final File tempFile = new File(outputFile.getPath() + ".part");
+        boolean completed = false;
+        try {
+            final OutputStream fileStream = new FileOutputStream(tempFile);
+            final OutputStream outputStream = new BufferedOutputStream(
+                hasher != null ? hasher.wrap(fileStream) : fileStream, OUTPUT_BUFFER_SIZE);
+            try {
+                writer.writeTo(outputStream);
+            } finally {
+                outputStream.close();
+            }
+            if (!tempFile.renameTo(outputFile)) {
+                throw new IOException("Could not move " + tempFile + " to " + outputFile);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns an intermediate bitmap to the pool as soon as a transform has produced a new one.
+     * @return the bitmap to continue working with
+     */
+    private Bitmap replaceBitmap(final Bitmap previous, final Bitmap next) {
+        if (next != previous) {
+            pool.put(previous);
+        }
+        return next;
+    }
+
+    /**
+     * Reads the dimensions of an image without allocating any pixels.
+     * @return the options holding outWidth and outHeight, which are -1 if the image can't be read
+     */
+    private BitmapFactory.Options decodeBounds(final RewindableSource source, final StageTimings timings)
+            throws IOException {
+        final BitmapFactory.Options boundsOptions = new BitmapFactory.Options();
+        boundsOptions.inJustDecodeBounds = true;
+        decodeImage(source, boundsOptions, timings);
+        return boundsOptions;
+    }
+
+    /**
+     * Decodes an image, subsampling it by a power of two when it is larger than the requested bounds.
+     * The dimensions are known up front, so a pooled bitmap large enough for the result can be
+     * handed to the decoder through inBitmap.
+     *
+     * @param source the image
+     * @param boundsOptions the dimensions of the image, from {@link #decodeBounds}
+     * @param maxWidth the maximum width of the decoded image, or 0 for no limit
+     * @param maxHeight the maximum height of the decoded image, or 0 for no limit
+     * @param resizeMode "fit" to stay inside the bounds, "fill" to cover them
+     * @param config the preferred pixel format of the decoded image
+     * @param timings receives the bytes read from the source, or null
+     * @return the decoded bitmap, which is at least as large as the final output, or null on failure
+     */
+    private Bitmap decodeSampledBitmap(final RewindableSource source, final BitmapFactory.Options boundsOptions,
+                                       final int maxWidth, final int maxHeight, final String resizeMode,
+                                       final Bitmap.Config config, final StageTimings timings) throws IOException {
+        final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inPreferredConfig = config;
+        decodeOptions.inMutable = true;
+        decodeOptions.inSampleSize = 1;
+
+        final int width = boundsOptions.outWidth;
+        final int height = boundsOptions.outHeight;
+        if (width > 0 && height > 0) {
+            if (maxWidth > 0 || maxHeight > 0) {
+                final double scale = ImageGeometry.computeScale(width, height, maxWidth, maxHeight,
+                        ProcessingOptions.RESIZE_FILL.equals(resizeMode));
+                decodeOptions.inSampleSize = ImageGeometry.computeSampleSize(width, height, scale);
+            }
+            final int sampleSize = decodeOptions.inSampleSize;
+            decodeOptions.inBitmap = pool.getForDecode(
+                    (width + sampleSize - 1) / sampleSize, (height + sampleSize - 1) / sampleSize, config);
+        }
+
+        final Bitmap reusable = decodeOptions.inBitmap;
+        Bitmap bitmap;
+        try {
+            bitmap = decodeImage(source, decodeOptions, timings);
+        } catch (IllegalArgumentException e) {
+            // The decoder rejected the pooled bitmap, e.g. for an unsupported format; decode into a new one
+            android.util.Log.d("ActualizeImagePicker", "decodeSampledBitmap: could not reuse pooled bitmap");
+            decodeOptions.inBitmap = null;
+            pool.put(reusable);
+            bitmap = decodeImage(source, decodeOptions, timings);
+        }
+        if (bitmap == null && decodeOptions.inBitmap != null) {
+            pool.put(reusable);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeImage(final RewindableSource source, final BitmapFactory.Options decodeOptions,
+                               final StageTimings timings) throws IOException {
+        final CountingInputStream inputStream = new CountingInputStream(source.rewind());
+        try {
+            return BitmapFactory.decodeStream(inputStream, null, decodeOptions);
+        } finally {
+            if (timings != null) {
+                timings.addBytes(StageTimings.DECODE, inputStream.getCount());
+            }
+        }
+    }
+
+    /**
+     * Resizes a bitmap to the exact requested bounds.
+     * In "fit" mode the whole image is kept inside the bounds; in "fill" mode the image covers
+     * the bounds and is center-cropped to them when both dimensions are given.
+     *
+     * @return the resized bitmap, or the source bitmap if no resize is needed
+     */
+    private Bitmap resizeToBounds(final Bitmap source, final int maxWidth, final int maxHeight,
+                                         final String resizeMode) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final double scale = ImageGeometry.computeScale(width, height, maxWidth, maxHeight,
+                ProcessingOptions.RESIZE_FILL.equals(resizeMode));
+
+        final boolean crop = ProcessingOptions.RESIZE_FILL.equals(resizeMode) && maxWidth > 0 && maxHeight > 0;
+        if (!crop) {
+            if (scale >= 1.0) {
+                return source;
+            }
+            final int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            final int targetHeight = Math.max(1, (int) Math.round(height * scale));
+            return drawScaled(source, null, targetWidth, targetHeight);
+        }
+
+        // Crop the source region that maps onto the bounds, then scale it in the same pass
+        final int outputWidth = Math.max(1, Math.min(maxWidth, (int) Math.round(width * scale)));
+        final int outputHeight = Math.max(1, Math.min(maxHeight, (int) Math.round(height * scale)));
+        final int cropWidth = Math.max(1, Math.min(width, (int) Math.round(outputWidth / scale)));
+        final int cropHeight = Math.max(1, Math.min(height, (int) Math.round(outputHeight / scale)));
+        if (cropWidth == width && cropHeight == height && scale >= 1.0) {
+            return source;
+        }
+
+        final int left = (width - cropWidth) / 2;
+        final int top = (height - cropHeight) / 2;
+        return drawScaled(source, new Rect(left, top, left + cropWidth, top + cropHeight), outputWidth, outputHeight);
+    }
+
+    /**
+     * Draws a region of a bitmap, scaled with filtering, into a pooled bitmap of the given size.
+     * @param sourceRect the region of the source to draw, or null for the whole bitmap
+     */
+    private Bitmap drawScaled(final Bitmap source, final Rect sourceRect, final int width, final int height) {
+        final Bitmap target = pool.get(width, height, getBitmapConfig(source));
+        new Canvas(target).drawBitmap(source, sourceRect, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
+    }
+
+    /**
+     * @return the config to use for bitmaps derived from the source, which must be drawable in software
+     */
+    private static Bitmap.Config getBitmapConfig(final Bitmap source) {
+        final Bitmap.Config config = source.getConfig();
+        if (config == null || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.HARDWARE)) {
+            return Bitmap.Config.ARGB_8888;
+        }
+        return config;
+    }
+
+    /**
+     * Returns the orientation of an image as an ExifInterface.ORIENTATION_* constant, from the
+     * provider metadata when it reports a rotation, otherwise from the image's EXIF data.
+     * Providers also report 0 for images they have not scanned and for mirrored ones, so 0 is not
+     * trusted.
+     */
+    private int getOrientation(final RewindableSource source, final MediaMetadata metadata) {
+        if (metadata.orientation > 0) {
+            final int orientation = ImageGeometry.orientationForDegrees(metadata.orientation);
+            if (orientation != ImageGeometry.ORIENTATION_UNDEFINED) {
+                return orientation;
+            }
+        }
+        return readExifOrientation(source);
+    }
+
+    /**
+     * Reads the EXIF orientation of an image from its header.
+     * @param source the image
+     * @return one of the ExifInterface.ORIENTATION_* constants, ORIENTATION_UNDEFINED if unknown
+     */
+    private int readExifOrientation(final RewindableSource source) {
+        try {
+            return new ExifInterface(source.rewind()).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_UNDEFINED);
+        } catch (IOException e) {
+            android.util.Log.w("ActualizeImagePicker", "readExifOrientation: could not read the EXIF orientation", e);
+            return ExifInterface.ORIENTATION_UNDEFINED;
+        }
+    }
+
+    /**
+     * Turns a bitmap upright, mirroring it where its EXIF orientation says it is stored mirrored.
+     * @return the oriented bitmap, or the bitmap itself if it already is upright
+     */
+    private Bitmap handleImageRotation(final Bitmap bitmap, final int orientation) {
+        final boolean upright = ImageGeometry.rotationDegrees(orientation) == 0 && !ImageGeometry.isMirrored(orientation);
+        return upright ? bitmap : rotateImage(bitmap, orientation);
+    }
+
+    /**
+     * Draws a bitmap stored with the given EXIF orientation upright into a pooled bitmap.
+     */
+    private Bitmap rotateImage(Bitmap source, int orientation) {
+        final boolean swapsAxes = ImageGeometry.swapsAxes(orientation);
+        final int width = swapsAxes ? source.getHeight() : source.getWidth();
+        final int height = swapsAxes ? source.getWidth() : source.getHeight();
+        final Bitmap target = pool.get(width, height, getBitmapConfig(source));
+        final Matrix matrix = ImageGeometry.orientationMatrix(orientation, source.getWidth(), source.getHeight());
+        new Canvas(target).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
+    }
+}
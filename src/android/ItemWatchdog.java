@@ -0,0 +1,155 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import earth.actualize.cordova.plugin.utils.ItemStreams;
+
+/**
+ * Enforces the per-item timeout of a pick. The timeout of an item starts when its task is handed
+ * to the worker pool, so an item waiting behind stuck ones times out as well. One not done at its
+ * deadline is marked as timed out and abandoned: its task is interrupted, its slot in the job
+ * freed, and the streams it opened are closed, which makes reads blocked on a cloud provider that
+ * ignore the interrupt fail. The pick reports the item as failed without waiting for it.
+ */
+class ItemWatchdog {
+
+    private static ScheduledExecutorService scheduler;
+
+    private final PickJob job;
+    private final long timeoutMs;
+    private final AtomicReferenceArray<Future<?>> futures;
+    private final AtomicReferenceArray<ScheduledFuture<?>> alarms;
+    private final AtomicIntegerArray timedOut;
+    // Set by whichever of the alarm and submit abandons the item first
+    private final AtomicIntegerArray abandoned;
+    private final ItemStreams[] streams;
+
+    /**
+     * @param job the job running the items
+     * @param itemCount the number of items of the pick
+     * @param timeoutMs how long each item may take from being handed to the pool, or 0 for no limit
+     */
+    ItemWatchdog(final PickJob job, final int itemCount, final long timeoutMs) {
+        this.job = job;
+        this.timeoutMs = timeoutMs;
+        this.futures = new AtomicReferenceArray<>(itemCount);
+        this.alarms = new AtomicReferenceArray<>(itemCount);
+        this.timedOut = new AtomicIntegerArray(itemCount);
+        this.abandoned = new AtomicIntegerArray(itemCount);
+        this.streams = new ItemStreams[itemCount];
+        for (int i = 0; i < itemCount; i++) {
+            streams[i] = new ItemStreams();
+        }
+    }
+
+    /**
+     * Submits the task of an item to the job, under the item's timeout.
+     */
+    <T> Future<T> submit(final int index, final Callable<T> callable) {
+        final Future<T> future = job.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                try {
+                    return callable.call();
+                } finally {
+                    final ScheduledFuture<?> alarm = alarms.getAndSet(index, null);
+                    if (alarm != null) {
+                        alarm.cancel(false);
+                    }
+                }
+            }
+        }, new Runnable() {
+            @Override
+            public void run() {
+                arm(index);
+            }
+        });
+        futures.set(index, future);
+        // The item may have been dispatched and overrun before its future was known
+        if (timedOut.get(index) != 0) {
+            abandon(index);
+        }
+        return future;
+    }
+
+    /**
+     * @return the streams of an item, which its task opens everything through so they can be closed on timeout
+     */
+    ItemStreams streams(final int index) {
+        return streams[index];
+    }
+
+    private void arm(final int index) {
+        if (timeoutMs <= 0) {
+            return;
+        }
+        alarms.set(index, getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                android.util.Log.w("ActualizeImagePicker", "ItemWatchdog: item " + index + " timed out after "
+                    + timeoutMs + " ms");
+                timedOut.set(index, 1);
+                if (futures.get(index) != null) {
+                    abandon(index);
+                }
+            }
+        }, timeoutMs, TimeUnit.MILLISECONDS));
+    }
+
+    boolean isTimedOut(final int index) {
+        return timedOut.get(index) != 0;
+    }
+
+    /**
+     * @return the error reported for an item that timed out
+     */
+    TimeoutException timeoutError() {
+        return new TimeoutException("Timed out after " + timeoutMs + " ms");
+    }
+
+    private void abandon(final int index) {
+        if (!abandoned.compareAndSet(index, 0, 1)) {
+            return;
+        }
+        // An item that finished or was canceled meanwhile did not time out after all
+        if (!job.abandon(futures.get(index))) {
+            timedOut.set(index, 0);
+            return;
+        }
+        streams[index].close();
+    }
+
+    /**
+     * Returns the timer thread shared by the watchdogs and the preview deadlines, creating it on first use.
+     */
+    static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "ActualizeImagePicker-watchdog");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            scheduler = executor;
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,27 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.json.JSONObject;
+
+/**
+ * Where the events a pick sends ahead of its result go: its Cordova callback, kept open, as
+ * implemented by {@link CallbackPickEvents}. Kept apart from Cordova so the senders run in tests.
+ */
+interface PickEvents {
+
+    /**
+     * Sends a JSON event.
+     */
+    void send(JSONObject event);
+
+    /**
+     * Sends a binary event: a JSON header and the first length bytes, as one multipart message.
+     * The bytes are encoded before this returns, so the caller may reuse the buffer.
+     */
+    void send(JSONObject header, byte[] bytes, int length);
+}
@@ -0,0 +1,202 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The background work of one pick: its items and previews, run on the shared worker pool.
+ * At most maxInFlight tasks of a job are handed to the pool at once and the rest wait here,
+ * so the tasks of concurrent picks interleave in the pool's queue instead of one pick's
+ * whole batch running before the next pick's first item. The plugin keeps maxInFlight below
+ * the pool size where it has more than two workers, so a pick of long-running items doesn't
+ * hold every worker.
+ *
+ * Canceling interrupts the tasks being processed, which stop at their next stage boundary
+ * and delete their partial output, and drops those not started yet.
+ *
+ * A task abandoned while it is running may stay blocked in a read for a while, holding its
+ * worker. Its slot is freed right away, and until it returns the job runs as many of its other
+ * tasks on the spare executor, which has a few threads of its own for abandoned work. The shared
+ * pool keeps its size; when the spare threads are all busy, tasks go to the pool as usual.
+ */
+public class PickJob {
+
+    private final Executor pool;
+    private final Executor spare;
+    private final int maxInFlight;
+    private final List<Future<?>> futures = new ArrayList<>();
+    private final Queue<Task<?>> pending = new ArrayDeque<>();
+    // Tasks on the pool that still hold a slot
+    private final Set<Task<?>> running = new HashSet<>();
+    private int inFlight = 0;
+    // Abandoned tasks still holding a thread, and the tasks run on the spare executor in their stead
+    private int stuck = 0;
+    private int onSpare = 0;
+    private volatile boolean canceled = false;
+
+    private static class Task<T> extends FutureTask<T> {
+        final Runnable onDispatch;
+        // Guarded by the job: whether the task has started and finished running, whether it was
+        // abandoned while running, and whether it runs on the spare executor
+        boolean started = false;
+        boolean finished = false;
+        boolean stuck = false;
+        boolean onSpare = false;
+
+        Task(final Callable<T> callable, final Runnable onDispatch) {
+            super(callable);
+            this.onDispatch = onDispatch;
+        }
+    }
+
+    PickJob(final Executor pool, final int maxInFlight) {
+        this(pool, null, maxInFlight);
+    }
+
+    /**
+     * @param spare runs tasks in place of abandoned ones still holding a thread, or null; it may
+     *              reject them when its threads are busy
+     */
+    PickJob(final Executor pool, final Executor spare, final int maxInFlight) {
+        this.pool = pool;
+        this.spare = spare;
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Queues a task of this job, canceling it right away if the job already is.
+     */
+    <T> Future<T> submit(final Callable<T> callable) {
+        return submit(callable, null);
+    }
+
+    /**
+     * @param onDispatch runs when the task is handed to the pool, e.g. to start its timeout, or null
+     */
+    <T> Future<T> submit(final Callable<T> callable, final Runnable onDispatch) {
+        final Task<T> task = new Task<>(callable, onDispatch);
+        synchronized (this) {
+            futures.add(task);
+            if (canceled) {
+                task.cancel(true);
+                return task;
+            }
+            pending.add(task);
+        }
+        dispatch();
+        return task;
+    }
+
+    synchronized void cancel() {
+        canceled = true;
+        pending.clear();
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * Gives up on a task that overran its time: interrupts it and frees its slot right away, so
+     * the rest of the job goes on even if the task is stuck in a call that ignores interrupts.
+     * @return false if the task had already completed or been canceled
+     */
+    boolean abandon(final Future<?> future) {
+        if (!future.cancel(true)) {
+            return false;
+        }
+        synchronized (this) {
+            if (running.remove(future)) {
+                inFlight--;
+                final Task<?> task = (Task<?>) future;
+                if (task.started && !task.finished) {
+                    task.stuck = true;
+                    stuck++;
+                }
+            }
+        }
+        dispatch();
+        return true;
+    }
+
+    /**
+     * Hands waiting tasks to the pool while fewer than maxInFlight are running or queued there.
+     */
+    private void dispatch() {
+        while (true) {
+            final Task<?> task;
+            synchronized (this) {
+                if (inFlight >= maxInFlight || pending.isEmpty()) {
+                    return;
+                }
+                task = pending.poll();
+                running.add(task);
+                inFlight++;
+                if (spare != null && onSpare < stuck) {
+                    task.onSpare = true;
+                    onSpare++;
+                }
+            }
+            if (task.onDispatch != null) {
+                task.onDispatch.run();
+            }
+            final Runnable runner = new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (PickJob.this) {
+                        task.started = true;
+                    }
+                    try {
+                        task.run();
+                    } finally {
+                        synchronized (PickJob.this) {
+                            task.finished = true;
+                            // Unless an abandoned task already gave up its slot
+                            if (running.remove(task)) {
+                                inFlight--;
+                            }
+                            if (task.stuck) {
+                                stuck--;
+                            }
+                            if (task.onSpare) {
+                                onSpare--;
+                            }
+                        }
+                        dispatch();
+                    }
+                }
+            };
+            if (task.onSpare) {
+                try {
+                    spare.execute(runner);
+                    continue;
+                } catch (RejectedExecutionException e) {
+                    // Every spare thread is taken
+                    synchronized (this) {
+                        task.onSpare = false;
+                        onSpare--;
+                    }
+                }
+            }
+            pool.execute(runner);
+        }
+    }
+}
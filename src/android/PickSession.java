@@ -0,0 +1,104 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.apache.cordova.CallbackContext;
+import org.json.JSONObject;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import earth.actualize.cordova.plugin.utils.JobJournal;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+
+/**
+ * One pickImage / pickImages request: its id, its callback and the options it was started with,
+ * fixed for its whole lifetime, and the job processing its items. Sessions are independent of
+ * each other, so a new pick never changes the settings or the callback of one still processing.
+ */
+public class PickSession {
+
+    final String id;
+    // Key of the pick in the journal, unique across processes unlike the requestId
+    final String journalId;
+    // Null for picks resumed from the journal after a restart, whose JS callback is gone
+    final CallbackContext callback;
+    // The options as passed from JS, kept for the journal
+    final JSONObject args;
+    final ProcessingOptions options;
+    final int maxImages;
+    final String mediaType; // "image", "video", or "all"
+    final String videoProcessingMessage; // Message for progress overlay (reserved for future use)
+    final PickJob job;
+    // Output cache keys of this pick, pinned until it is closed
+    private final Set<String> outputKeys = new HashSet<>();
+    private boolean outputsReleased = false;
+
+    private PickSession(final String id, final String journalId, final CallbackContext callback,
+                        final JSONObject args, final PickJob job) {
+        this.id = id;
+        this.journalId = journalId;
+        this.callback = callback;
+        this.args = args;
+        this.options = ProcessingOptions.fromJson(args);
+        this.maxImages = Math.max(0, args.optInt("maxImages", 0));
+        this.mediaType = args.optString("mediaType", "image");
+        this.videoProcessingMessage = args.optString("videoProcessingMessage", "Processing video...");
+        this.job = job;
+    }
+
+    /**
+     * @param defaultId the id used when the request does not set a requestId
+     * @param callback the callback of the request
+     * @param args the options passed from JS
+     * @param pool the worker pool the session's items run on
+     * @param spare the threads that stand in for workers held by abandoned items
+     * @param maxInFlight how many items of the session may be on the pool at once
+     */
+    static PickSession fromJson(final String defaultId, final CallbackContext callback, final JSONObject args,
+                                final Executor pool, final Executor spare, final int maxInFlight) {
+        final String requestId = args.optString("requestId", "");
+        return new PickSession(requestId.isEmpty() ? defaultId : requestId, UUID.randomUUID().toString(),
+            callback, args, new PickJob(pool, spare, maxInFlight));
+    }
+
+    /**
+     * Recreates a journaled pick after a restart. Nothing listens for events any more, so the
+     * options that send them are dropped; the result is kept in the journal for resumePending.
+     */
+    static PickSession resume(final JobJournal.Entry entry, final Executor pool, final Executor spare,
+                              final int maxInFlight) {
+        final JSONObject args = entry.args;
+        for (String key : new String[] {"streamResults", "previews", "progressEvents", "returnMode"}) {
+            args.remove(key);
+        }
+        return new PickSession(entry.requestId, entry.id, null, args, new PickJob(pool, spare, maxInFlight));
+    }
+
+    /**
+     * Keeps an output of this pick from being evicted by any pick's cache trim until the pick is
+     * closed. Outputs of items that only finish after that, such as abandoned ones, are not pinned.
+     */
+    synchronized void pinOutput(final OutputCache cache, final String key) {
+        if (!outputsReleased && outputKeys.add(key)) {
+            cache.pin(key);
+        }
+    }
+
+    /**
+     * Unpins the outputs of this pick once it has resolved; they are evicted like any other entry from then on.
+     */
+    synchronized void releaseOutputs(final OutputCache cache) {
+        outputsReleased = true;
+        if (!outputKeys.isEmpty()) {
+            cache.unpin(outputKeys);
+            outputKeys.clear();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import earth.actualize.cordova.plugin.utils.JsonArgs;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+
+/**
+ * Sends the previews of a pick to JS as they are created, without holding up its full-size items.
+ * The previews ready when all of them are done, or at the latest BATCH_DEADLINE_MS after the
+ * picker closed, go out in one "previews" event so the grid is filled at once; any preview
+ * finishing later, e.g. of an item a cloud provider is still downloading, follows in an event
+ * of its own.
+ */
+class PreviewSender {
+
+    static final long BATCH_DEADLINE_MS = 100;
+
+    private final PickJob job;
+    private final PickEvents events;
+    private final OutputCache previewCache;
+    private final int count;
+    private final List<JsonArgs> ready = new ArrayList<>();
+    private final Set<String> previewKeys = new HashSet<>();
+    private int done = 0;
+    private boolean batchSent = false;
+
+    /**
+     * @param job the pick the previews belong to
+     * @param events the events of the pick
+     * @param previewCache the cache the previews are written to, trimmed once all are done
+     * @param count the number of previews of the pick
+     */
+    PreviewSender(final PickJob job, final PickEvents events, final OutputCache previewCache, final int count) {
+        this.job = job;
+        this.events = events;
+        this.previewCache = previewCache;
+        this.count = count;
+    }
+
+    /**
+     * Starts the deadline of the first batch; called once the preview tasks have been submitted.
+     */
+    void start() {
+        ItemWatchdog.getScheduler().schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PreviewSender.this) {
+                    batchSent = true;
+                    flush();
+                }
+            }
+        }, BATCH_DEADLINE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a finished preview, sending it right away if the first batch has already gone out.
+     * @param preview the preview result: {index, sourceUri, status, previewUri or message}
+     * @param previewKey the preview's cache key, or null if it failed
+     */
+    synchronized void add(final JsonArgs preview, final String previewKey) {
+        ready.add(preview);
+        if (previewKey != null) {
+            previewKeys.add(previewKey);
+        }
+        done++;
+        if (done == count) {
+            batchSent = true;
+            previewCache.trimToSize(previewKeys);
+        }
+        if (batchSent) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (ready.isEmpty()) {
+            return;
+        }
+        final JSONArray previews = new JSONArray();
+        for (JsonArgs preview : ready) {
+            previews.put(preview.jsonObj());
+        }
+        ready.clear();
+        if (job.isCanceled()) {
+            return;
+        }
+
+        JsonArgs event = new JsonArgs();
+        event.put("type", "previews");
+        event.put("previews", previews);
+        events.send(event.jsonObj());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.net.Uri;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeoutException;
+
+import earth.actualize.cordova.plugin.utils.JsonArgs;
+import earth.actualize.cordova.plugin.utils.MediaMetadata;
+
+/**
+ * The outcome of processing one picked item: the local output file plus any
+ * additional details that are returned to JS alongside its URI.
+ */
+public class ProcessedMedia {
+
+    final String outputPath;
+    final String cacheKey;
+    final JsonArgs details = new JsonArgs();
+
+    ProcessedMedia(final String outputPath, final String cacheKey) {
+        this.outputPath = outputPath;
+        this.cacheKey = cacheKey;
+    }
+
+    /**
+     * @return the file URI of the output, as returned to JS
+     */
+    String getOutputUri() {
+        return Uri.fromFile(new File(outputPath)).toString();
+    }
+
+    /**
+     * Builds the result of a successfully processed item
+     * @param metadata the provider metadata of the item
+     */
+    JsonArgs buildResult(final MediaMetadata metadata) {
+        JsonArgs result = new JsonArgs();
+        result.putAll(details);
+        result.put("status", "OK");
+        result.put("imageFileUri", getOutputUri());
+        result.put("metadata", metadata.toJson());
+        return result;
+    }
+
+    /**
+     * Builds the per-item entry of a multiple picker result
+     * @param index the position of the item in the selection
+     * @param sourceUri the URI returned by the picker
+     * @param metadata the provider metadata of the item
+     * @param media the processed file, or null if processing failed
+     * @param error the processing failure, or null on success
+     */
+    static JsonArgs buildItemResult(final int index, final String sourceUri, final MediaMetadata metadata,
+                                    final ProcessedMedia media, final Throwable error) {
+        JsonArgs item = new JsonArgs();
+        item.put("index", index);
+        item.put("sourceUri", sourceUri);
+        if (media != null) {
+            item.putAll(media.buildResult(metadata));
+        } else if (error instanceof CancellationException || error instanceof InterruptedIOException
+                || error instanceof ClosedByInterruptException) {
+            item.put("status", "CANCELED");
+            item.put("metadata", metadata.toJson());
+        } else {
+            item.put("status", "ERROR");
+            item.put("message", error instanceof InterruptedException ? "Interrupted" : String.valueOf(error.getMessage()));
+            if (error instanceof TimeoutException) {
+                item.put("reason", "timeout");
+            }
+            item.put("metadata", metadata.toJson());
+        }
+        return item;
+    }
+}
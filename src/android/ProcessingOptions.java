@@ -0,0 +1,208 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+
+import org.json.JSONObject;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import earth.actualize.cordova.plugin.utils.ContentHasher;
+import earth.actualize.cordova.plugin.utils.ImageEncoder;
+
+/**
+ * Immutable snapshot of the options that control how picked media is processed and delivered.
+ * Parsed once per pick so that worker threads never read mutable plugin state.
+ */
+public class ProcessingOptions {
+
+    public static final String RESIZE_FIT = "fit";
+    public static final String RESIZE_FILL = "fill";
+
+    public static final String RETURN_MODE_FILE = "file";
+    public static final String RETURN_MODE_ARRAYBUFFER = "arraybuffer";
+
+    public static final String MATERIALIZE_EAGER = "eager";
+    public static final String MATERIALIZE_LAZY = "lazy";
+
+    // Bump when the image pipeline changes its output, so stale cache entries are not reused
+    private static final int PIPELINE_VERSION = 1;
+    // Same for the video pipeline
+    private static final int VIDEO_PIPELINE_VERSION = 1;
+
+    static final int DEFAULT_CACHE_SIZE_MB = 256;
+    private static final int DEFAULT_PREVIEW_SIZE = 256;
+    private static final String DEFAULT_VIDEO_QUALITY = "medium";
+    private static final int DEFAULT_ARRAYBUFFER_MAX_KB = 16 * 1024;
+    private static final int DEFAULT_TILED_DECODE_THRESHOLD_MP = 40;
+
+    final int imageQuality;
+    final String outputFormat;
+    // Quality overrides for individual output formats, applied to the format actually written
+    final Map<String, Integer> formatQuality = new TreeMap<>();
+    final int maxWidth;
+    final int maxHeight;
+    final String resizeMode;
+    final boolean passthrough;
+    final boolean stripMetadata;
+    final boolean cache;
+    final long cacheMaxBytes;
+    final boolean streamResults;
+    final boolean previews;
+    final int previewSize;
+    final Bitmap.Config bitmapConfig;
+    final String videoQuality;
+    final boolean progressEvents;
+    final boolean timings;
+    final String returnMode;
+    // Outputs larger than this are returned as files even in the "arraybuffer" return mode
+    final long arrayBufferMaxBytes;
+    final boolean hash;
+    // Journal the pick on disk so it survives the process being killed
+    final boolean durable;
+    // Images with more pixels than this are decoded tile by tile, 0 to never tile
+    final long tiledDecodeThresholdPixels;
+    // Chunk size of the hash manifest in bytes, 0 for the whole-file hash only
+    final int hashChunkSize;
+    // Images are encoded at the highest quality, and if needed the largest size, that fits in this, 0 for no limit
+    final long maxFileSizeBytes;
+    // Whether images may be scaled down when even the lowest quality does not fit maxFileSizeBytes
+    final boolean maxFileSizeDownscale;
+    // How long each item may take before it is reported as failed, 0 for no limit
+    final long itemTimeoutMs;
+    // "lazy" resolves picks with handles, processed later by the materialize action
+    final String materialize;
+    // Whether the handles of a lazy pick keep their read permission across restarts
+    final boolean persistHandles;
+
+    private ProcessingOptions(final JSONObject args) {
+        this.imageQuality = Math.max(0, Math.min(100, args.optInt("imageQuality", 100)));
+        this.outputFormat = parseOutputFormat(args.optString("outputFormat", ImageEncoder.FORMAT_JPEG));
+        final JSONObject qualities = args.optJSONObject("formatQuality");
+        if (qualities != null) {
+            for (String format : new String[] {ImageEncoder.FORMAT_JPEG, ImageEncoder.FORMAT_WEBP, ImageEncoder.FORMAT_HEIF}) {
+                if (qualities.has(format)) {
+                    formatQuality.put(format, Math.max(0, Math.min(100, qualities.optInt(format, imageQuality))));
+                }
+            }
+        }
+        this.maxWidth = Math.max(0, args.optInt("maxWidth", 0));
+        this.maxHeight = Math.max(0, args.optInt("maxHeight", 0));
+        this.resizeMode = RESIZE_FILL.equals(args.optString("resizeMode", RESIZE_FIT)) ? RESIZE_FILL : RESIZE_FIT;
+        this.passthrough = args.optBoolean("passthrough", false);
+        this.stripMetadata = args.optBoolean("stripMetadata", false);
+        this.cache = args.optBoolean("cache", true);
+        // -1 unless given, leaving the budget to the app
+        this.cacheMaxBytes = args.has("cacheSizeLimitMB")
+            ? Math.max(0, args.optInt("cacheSizeLimitMB", DEFAULT_CACHE_SIZE_MB)) * 1024L * 1024L : -1;
+        this.streamResults = args.optBoolean("streamResults", false);
+        this.previews = args.optBoolean("previews", false);
+        this.previewSize = Math.max(32, Math.min(1024, args.optInt("previewSize", DEFAULT_PREVIEW_SIZE)));
+        this.bitmapConfig = "RGB_565".equals(args.optString("bitmapConfig", "ARGB_8888"))
+            ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        this.videoQuality = parseVideoQuality(args.optString("videoQuality", DEFAULT_VIDEO_QUALITY));
+        this.progressEvents = args.optBoolean("progressEvents", false);
+        this.timings = args.optBoolean("timings", false);
+        this.returnMode = RETURN_MODE_ARRAYBUFFER.equals(args.optString("returnMode", RETURN_MODE_FILE))
+            ? RETURN_MODE_ARRAYBUFFER : RETURN_MODE_FILE;
+        this.arrayBufferMaxBytes = Math.max(0, args.optInt("arrayBufferMaxKB", DEFAULT_ARRAYBUFFER_MAX_KB)) * 1024L;
+        this.hash = args.optBoolean("hash", false);
+        this.durable = args.optBoolean("durable", false);
+        this.tiledDecodeThresholdPixels = Math.max(0, args.optInt("tiledDecodeThresholdMP",
+            DEFAULT_TILED_DECODE_THRESHOLD_MP)) * 1000000L;
+        this.hashChunkSize = Math.max(0, Math.min(1024 * 1024, args.optInt("hashChunkKB", 0))) * 1024;
+        this.maxFileSizeBytes = Math.max(0, args.optInt("maxFileSizeKB", 0)) * 1024L;
+        this.maxFileSizeDownscale = args.optBoolean("maxFileSizeDownscale", true);
+        this.itemTimeoutMs = Math.max(0, Math.round(args.optDouble("itemTimeoutSeconds", 0) * 1000));
+        this.materialize = MATERIALIZE_LAZY.equals(args.optString("materialize", MATERIALIZE_EAGER))
+            ? MATERIALIZE_LAZY : MATERIALIZE_EAGER;
+        this.persistHandles = args.optBoolean("persistHandles", false);
+    }
+
+    /**
+     * Parses the processing options from the JS configuration object
+     * @param args Map of optional arguments for customisation
+     * @return the parsed options, with defaults for missing or invalid values
+     */
+    public static ProcessingOptions fromJson(final JSONObject args) {
+        return new ProcessingOptions(args);
+    }
+
+    private static String parseOutputFormat(final String outputFormat) {
+        switch (outputFormat) {
+            case ImageEncoder.FORMAT_WEBP:
+            case ImageEncoder.FORMAT_HEIF:
+            case ImageEncoder.FORMAT_PNG:
+                return outputFormat;
+            default:
+                return ImageEncoder.FORMAT_JPEG;
+        }
+    }
+
+    private static String parseVideoQuality(final String videoQuality) {
+        switch (videoQuality) {
+            case "low":
+            case "medium":
+            case "high":
+            case "highest":
+            case "passthrough":
+                return videoQuality;
+            default:
+                return DEFAULT_VIDEO_QUALITY;
+        }
+    }
+
+    /**
+     * @return the encoding quality for the given output format
+     */
+    public int qualityFor(final String format) {
+        final Integer quality = formatQuality.get(format);
+        return quality != null ? quality : imageQuality;
+    }
+
+    /**
+     * @return true if a maximum output width or height has been requested
+     */
+    public boolean hasSizeLimit() {
+        return maxWidth > 0 || maxHeight > 0;
+    }
+
+    /**
+     * @return true if no pixel transform is requested, so JPEG sources can be copied without re-encoding
+     */
+    public boolean allowsPassthrough() {
+        return passthrough && ImageEncoder.FORMAT_JPEG.equals(outputFormat)
+            && qualityFor(ImageEncoder.FORMAT_JPEG) == 100 && !hasSizeLimit();
+    }
+
+    /**
+     * @return a hasher for one output, or null if no hash was requested
+     */
+    public ContentHasher newHasher() {
+        return hash ? new ContentHasher(hashChunkSize) : null;
+    }
+
+    /**
+     * @return a string covering every option that affects the processed image, used in output cache keys
+     */
+    public String cacheKey() {
+        return String.format(Locale.US, "image;v=%d;q=%d;w=%d;h=%d;r=%s;p=%b;s=%b;c=%s;f=%s;fq=%s;t=%d;m=%d;md=%b",
+            PIPELINE_VERSION, imageQuality, maxWidth, maxHeight, resizeMode, passthrough, stripMetadata, bitmapConfig,
+            outputFormat, formatQuality, tiledDecodeThresholdPixels, maxFileSizeBytes,
+            maxFileSizeDownscale);
+    }
+
+    /**
+     * @return a string covering every option that affects the processed video, used in output cache keys
+     */
+    public String videoCacheKey() {
+        return String.format(Locale.US, "video;v=%d;q=%s", VIDEO_PIPELINE_VERSION, videoQuality);
+    }
+}
@@ -0,0 +1,240 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+import earth.actualize.cordova.plugin.utils.ImageGeometry;
+
+/**
+ * Decodes very large images tile by tile with BitmapRegionDecoder, drawing each subsampled tile
+ * straight into the resized and rotated output. Only the output and one tile are held at once,
+ * and the output is scaled down further when it would exceed the memory budget, so the heap
+ * used does not grow with the resolution of the source.
+ */
+class TiledImageDecoder {
+
+    // Side of a decoded tile in pixels
+    static final int TILE_SIZE = 1024;
+    // Decoded pixels around each tile, so filtering has real neighbours at the tile seams
+    private static final int TILE_PADDING = 2;
+
+    private final BitmapPool pool;
+    private final long maxOutputBytes;
+
+    private int tileCount = 0;
+    private int sampleSize = 1;
+
+    /**
+     * @param pool the pool the output and the tiles are taken from
+     * @param maxOutputBytes the largest output bitmap allowed, in bytes
+     */
+    TiledImageDecoder(final BitmapPool pool, final long maxOutputBytes) {
+        this.pool = pool;
+        this.maxOutputBytes = maxOutputBytes;
+    }
+
+    /**
+     * Decodes regions of an encoded image. BitmapRegionDecoder on devices; tests use their own,
+     * since the one of the JVM test runtime only decodes regions at the origin of the image.
+     */
+    interface RegionDecoder {
+        /**
+         * @return the region, subsampled and reusing options.inBitmap as BitmapRegionDecoder does
+         */
+        Bitmap decodeRegion(Rect region, BitmapFactory.Options options);
+
+        void recycle();
+    }
+
+    /**
+     * Decodes an image into an upright bitmap fitting (or filling) the given bounds.
+     *
+     * @param inputStream the encoded image, read once
+     * @param width the width of the stored image
+     * @param height the height of the stored image
+     * @param orientation the EXIF orientation of the image
+     * @param maxWidth the maximum width of the output in stored orientation, or 0 for no limit
+     * @param maxHeight the maximum height of the output in stored orientation, or 0 for no limit
+     * @param resizeMode "fit" to stay inside the bounds, "fill" to cover them and crop to them
+     * @param config the pixel format of the output
+     * @return the output bitmap, from the pool, or null if the format can't be decoded by region
+     * @throws IOException if the image can't be read, or processing was canceled
+     */
+    Bitmap decode(final InputStream inputStream, final int width, final int height, final int orientation,
+                  final int maxWidth, final int maxHeight, final String resizeMode, final Bitmap.Config config)
+            throws IOException {
+        final BitmapRegionDecoder decoder;
+        try {
+            decoder = BitmapRegionDecoder.newInstance(inputStream, false);
+        } catch (IOException e) {
+            // Formats without region decoding support go through the regular decode
+            android.util.Log.d("ActualizeImagePicker", "TiledImageDecoder: region decoding not supported: " + e);
+            return null;
+        }
+        if (decoder == null) {
+            return null;
+        }
+        return decode(new RegionDecoder() {
+            @Override
+            public Bitmap decodeRegion(Rect region, BitmapFactory.Options options) {
+                return decoder.decodeRegion(region, options);
+            }
+
+            @Override
+            public void recycle() {
+                decoder.recycle();
+            }
+        }, width, height, orientation, maxWidth, maxHeight, resizeMode, config);
+    }
+
+    /**
+     * Same as {@link #decode(InputStream, int, int, int, int, int, String, Bitmap.Config)}, from a
+     * region decoder, which is recycled before returning.
+     */
+    Bitmap decode(final RegionDecoder decoder, final int width, final int height, final int orientation,
+                  final int maxWidth, final int maxHeight, final String resizeMode, final Bitmap.Config config)
+            throws IOException {
+        try {
+            // Output size and source crop, as in ImageProcessor.resizeToBounds
+            final boolean fill = ProcessingOptions.RESIZE_FILL.equals(resizeMode);
+            final double scale = ImageGeometry.computeScale(width, height, maxWidth, maxHeight, fill);
+            int outputWidth = Math.max(1, (int) Math.round(width * scale));
+            int outputHeight = Math.max(1, (int) Math.round(height * scale));
+            int cropWidth = width;
+            int cropHeight = height;
+            if (fill && maxWidth > 0 && maxHeight > 0) {
+                outputWidth = Math.min(maxWidth, outputWidth);
+                outputHeight = Math.min(maxHeight, outputHeight);
+                cropWidth = Math.max(1, Math.min(width, (int) Math.round(outputWidth / scale)));
+                cropHeight = Math.max(1, Math.min(height, (int) Math.round(outputHeight / scale)));
+            }
+
+            // Keep the output within the memory budget
+            final long outputBytes = (long) outputWidth * outputHeight * BitmapPool.bytesPerPixel(config);
+            if (outputBytes > maxOutputBytes) {
+                final double budgetScale = Math.sqrt((double) maxOutputBytes / outputBytes);
+                outputWidth = Math.max(1, (int) (outputWidth * budgetScale));
+                outputHeight = Math.max(1, (int) (outputHeight * budgetScale));
+                android.util.Log.d("ActualizeImagePicker", "TiledImageDecoder: output limited to "
+                    + outputWidth + "x" + outputHeight + " by the memory budget");
+            }
+
+            final int cropLeft = (width - cropWidth) / 2;
+            final int cropTop = (height - cropHeight) / 2;
+            final Rect crop = new Rect(cropLeft, cropTop, cropLeft + cropWidth, cropTop + cropHeight);
+            final double scaleX = (double) outputWidth / cropWidth;
+            final double scaleY = (double) outputHeight / cropHeight;
+            sampleSize = ImageGeometry.computeSampleSize(cropWidth, cropHeight, Math.max(scaleX, scaleY));
+
+            final boolean swapsAxes = ImageGeometry.swapsAxes(orientation);
+            final Bitmap output = pool.get(swapsAxes ? outputHeight : outputWidth,
+                swapsAxes ? outputWidth : outputHeight, config);
+            boolean completed = false;
+            try {
+                final Canvas canvas = new Canvas(output);
+                canvas.concat(ImageGeometry.orientationMatrix(orientation, outputWidth, outputHeight));
+                drawTiles(decoder, canvas, crop, width, height, scaleX, scaleY, config);
+                completed = true;
+                return output;
+            } finally {
+                if (!completed) {
+                    pool.put(output);
+                }
+            }
+        } finally {
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * @return the number of tiles decoded by the last call to {@link #decode}
+     */
+    int getTileCount() {
+        return tileCount;
+    }
+
+    /**
+     * @return the sample size the tiles were decoded at by the last call to {@link #decode}
+     */
+    int getSampleSize() {
+        return sampleSize;
+    }
+
+    private void drawTiles(final RegionDecoder decoder, final Canvas canvas, final Rect crop,
+                           final int width, final int height, final double scaleX, final double scaleY,
+                           final Bitmap.Config config) throws IOException {
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        final int tileSource = TILE_SIZE * sampleSize;
+        final int padding = TILE_PADDING * sampleSize;
+        tileCount = 0;
+
+        for (int top = crop.top; top < crop.bottom; top += tileSource) {
+            for (int left = crop.left; left < crop.right; left += tileSource) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Processing was canceled");
+                }
+                final int right = Math.min(crop.right, left + tileSource);
+                final int bottom = Math.min(crop.bottom, top + tileSource);
+                final Rect region = new Rect(Math.max(0, left - padding), Math.max(0, top - padding),
+                    Math.min(width, right + padding), Math.min(height, bottom + padding));
+
+                final Bitmap tile = decodeRegion(decoder, region, config);
+                try {
+                    // The unpadded part of the tile, in decoded pixels, and where it lands in the output
+                    final Rect source = new Rect((left - region.left) / sampleSize, (top - region.top) / sampleSize,
+                        Math.min(tile.getWidth(), (right - region.left + sampleSize - 1) / sampleSize),
+                        Math.min(tile.getHeight(), (bottom - region.top + sampleSize - 1) / sampleSize));
+                    final RectF destination = new RectF(
+                        (float) ((left - crop.left) * scaleX), (float) ((top - crop.top) * scaleY),
+                        (float) ((right - crop.left) * scaleX), (float) ((bottom - crop.top) * scaleY));
+                    canvas.drawBitmap(tile, source, destination, paint);
+                    tileCount++;
+                } finally {
+                    pool.put(tile);
+                }
+            }
+        }
+    }
+
+    private Bitmap decodeRegion(final RegionDecoder decoder, final Rect region, final Bitmap.Config config)
+            throws IOException {
+        final BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inSampleSize = sampleSize;
+        decodeOptions.inPreferredConfig = config;
+        decodeOptions.inMutable = true;
+        decodeOptions.inBitmap = pool.getForDecode((region.width() + sampleSize - 1) / sampleSize,
+            (region.height() + sampleSize - 1) / sampleSize, config);
+
+        final Bitmap reusable = decodeOptions.inBitmap;
+        Bitmap tile;
+        try {
+            tile = decoder.decodeRegion(region, decodeOptions);
+        } catch (IllegalArgumentException e) {
+            // The decoder rejected the pooled bitmap; decode into a new one
+            decodeOptions.inBitmap = null;
+            pool.put(reusable);
+            tile = decoder.decodeRegion(region, decodeOptions);
+        }
+        if (tile == null) {
+            pool.put(reusable);
+            throw new IOException("Could not decode region " + region.left + "," + region.top);
+        }
+        return tile;
+    }
+}
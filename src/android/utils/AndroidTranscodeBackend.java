@@ -0,0 +1,279 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link TranscodeBackend} built on MediaExtractor, MediaCodec and MediaMuxer,
+ * reading from a content or file URI.
+ */
+public class AndroidTranscodeBackend implements TranscodeBackend {
+
+    private final Context context;
+    private final Uri source;
+    private final long sourceSize;
+    private final ItemStreams streams;
+
+    /**
+     * @param sourceSize the size of the source in bytes if already known, or -1 to look it up
+     */
+    public AndroidTranscodeBackend(final Context context, final Uri source, final long sourceSize) {
+        this(context, source, sourceSize, null);
+    }
+
+    /**
+     * @param streams receives the descriptors the extractors read from, so a stalled read can be
+     *                unblocked by closing them, or null
+     */
+    public AndroidTranscodeBackend(final Context context, final Uri source, final long sourceSize,
+                                   final ItemStreams streams) {
+        this.context = context;
+        this.source = source;
+        this.sourceSize = sourceSize;
+        this.streams = streams;
+    }
+
+    @Override
+    public Extractor openExtractor() throws IOException {
+        final MediaExtractor extractor = new MediaExtractor();
+        // Opened here rather than by the extractor, so the descriptor it reads from can be closed
+        ParcelFileDescriptor descriptor = null;
+        try {
+            if (streams != null) {
+                descriptor = context.getContentResolver().openFileDescriptor(source, "r");
+                if (descriptor == null) {
+                    throw new IOException("Could not open " + source);
+                }
+                streams.add(descriptor);
+                extractor.setDataSource(descriptor.getFileDescriptor());
+            } else {
+                extractor.setDataSource(context, source, null);
+            }
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            if (descriptor != null) {
+                descriptor.close();
+            }
+            throw e;
+        }
+        final ParcelFileDescriptor sourceDescriptor = descriptor;
+
+        return new Extractor() {
+            @Override
+            public int getTrackCount() {
+                return extractor.getTrackCount();
+            }
+
+            @Override
+            public MediaFormat getTrackFormat(int track) {
+                return extractor.getTrackFormat(track);
+            }
+
+            @Override
+            public void selectTrack(int track) {
+                extractor.selectTrack(track);
+            }
+
+            @Override
+            public int readSampleData(ByteBuffer buffer, int offset) {
+                return extractor.readSampleData(buffer, offset);
+            }
+
+            @Override
+            public long getSampleTime() {
+                return extractor.getSampleTime();
+            }
+
+            @Override
+            public int getSampleFlags() {
+                return extractor.getSampleFlags();
+            }
+
+            @Override
+            public boolean advance() {
+                return extractor.advance();
+            }
+
+            @Override
+            public void release() {
+                extractor.release();
+                if (sourceDescriptor != null) {
+                    try {
+                        sourceDescriptor.close();
+                    } catch (IOException ignored) {}
+                }
+            }
+        };
+    }
+
+    @Override
+    public long getSourceSize() {
+        if (sourceSize >= 0) {
+            return sourceSize;
+        }
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = context.getContentResolver().openAssetFileDescriptor(source, "r");
+            return descriptor != null ? descriptor.getLength() : -1;
+        } catch (IOException | SecurityException e) {
+            return -1;
+        } finally {
+            if (descriptor != null) {
+                try {
+                    descriptor.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    @Override
+    public Codec createDecoder(final String mimeType) throws IOException {
+        return new MediaCodecWrapper(MediaCodec.createDecoderByType(mimeType));
+    }
+
+    @Override
+    public Codec createEncoder(final String mimeType) throws IOException {
+        return new MediaCodecWrapper(MediaCodec.createEncoderByType(mimeType));
+    }
+
+    @Override
+    public FrameBridge createFrameBridge(final Surface encoderSurface, final int width, final int height)
+            throws IOException {
+        return new SurfaceFrameBridge(encoderSurface, width, height);
+    }
+
+    @Override
+    public Muxer createMuxer(final File outputFile) throws IOException {
+        final MediaMuxer muxer = new MediaMuxer(outputFile.getPath(), MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        return new Muxer() {
+            @Override
+            public int addTrack(MediaFormat format) {
+                return muxer.addTrack(format);
+            }
+
+            @Override
+            public void setOrientationHint(int degrees) {
+                muxer.setOrientationHint(degrees);
+            }
+
+            @Override
+            public void start() {
+                muxer.start();
+            }
+
+            @Override
+            public void writeSampleData(int track, ByteBuffer buffer, MediaCodec.BufferInfo info) {
+                muxer.writeSampleData(track, buffer, info);
+            }
+
+            @Override
+            public void stop() {
+                muxer.stop();
+            }
+
+            @Override
+            public void release() {
+                try {
+                    muxer.release();
+                } catch (RuntimeException e) {
+                    android.util.Log.w("ActualizeImagePicker", "Could not release muxer", e);
+                }
+            }
+        };
+    }
+
+    private static class MediaCodecWrapper implements Codec {
+        private final MediaCodec codec;
+        private boolean started = false;
+
+        MediaCodecWrapper(final MediaCodec codec) {
+            this.codec = codec;
+        }
+
+        @Override
+        public void configure(MediaFormat format, Surface surface, boolean encoder) {
+            codec.configure(format, surface, null, encoder ? MediaCodec.CONFIGURE_FLAG_ENCODE : 0);
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            return codec.createInputSurface();
+        }
+
+        @Override
+        public void start() {
+            codec.start();
+            started = true;
+        }
+
+        @Override
+        public int dequeueInputBuffer(long timeoutUs) {
+            return codec.dequeueInputBuffer(timeoutUs);
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(int index) {
+            return codec.getInputBuffer(index);
+        }
+
+        @Override
+        public void queueInputBuffer(int index, int size, long presentationTimeUs, int flags) {
+            codec.queueInputBuffer(index, 0, size, presentationTimeUs, flags);
+        }
+
+        @Override
+        public int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs) {
+            return codec.dequeueOutputBuffer(info, timeoutUs);
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(int index) {
+            return codec.getOutputBuffer(index);
+        }
+
+        @Override
+        public void releaseOutputBuffer(int index, boolean render) {
+            codec.releaseOutputBuffer(index, render);
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            return codec.getOutputFormat();
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            codec.signalEndOfInputStream();
+        }
+
+        @Override
+        public void release() {
+            try {
+                if (started) {
+                    codec.stop();
+                }
+            } catch (RuntimeException e) {
+                android.util.Log.w("ActualizeImagePicker", "Could not stop codec", e);
+            } finally {
+                codec.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pool of mutable bitmaps reused across the image pipeline, so batch processing does not
+ * allocate (and garbage-collect) a new full-size bitmap for every decode, resize and rotation.
+ * Bitmaps are grouped in power-of-two size classes by allocation size; a request is only
+ * served from its own class or the next one, which bounds the memory wasted per reuse.
+ * The total retained size is capped, evicting the oldest bitmaps first.
+ */
+public class BitmapPool {
+
+    private final long maxBytes;
+    private final List<Bitmap> pooled = new ArrayList<>();
+    private long retainedBytes = 0;
+    private long peakRetainedBytes = 0;
+    private long requests = 0;
+    private long hits = 0;
+
+    public BitmapPool(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the number of bytes per pixel for the given config
+     */
+    public static int bytesPerPixel(final Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+
+    private static int sizeClass(final long bytes) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(1, bytes - 1));
+    }
+
+    /**
+     * Returns a pooled bitmap large enough to hold the given dimensions, without changing it.
+     * Intended for BitmapFactory.Options.inBitmap, which reconfigures the bitmap itself.
+     * @return a reusable bitmap, or null if none fits
+     */
+    public synchronized Bitmap getForDecode(final int width, final int height, final Bitmap.Config config) {
+        return take((long) width * height * bytesPerPixel(config));
+    }
+
+    /**
+     * Returns a cleared bitmap with exactly the given dimensions and config,
+     * reusing a pooled one when possible.
+     */
+    public Bitmap get(final int width, final int height, final Bitmap.Config config) {
+        Bitmap bitmap;
+        synchronized (this) {
+            bitmap = take((long) width * height * bytesPerPixel(config));
+        }
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(0);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                bitmap.recycle();
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns a bitmap to the pool. Bitmaps that can't be reused are recycled instead.
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || pooled.contains(bitmap)) {
+            return;
+        }
+        final long bytes = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || bytes > maxBytes || isHardware(bitmap)) {
+            bitmap.recycle();
+            return;
+        }
+
+        pooled.add(bitmap);
+        retainedBytes += bytes;
+        while (retainedBytes > maxBytes && !pooled.isEmpty()) {
+            final Bitmap evicted = pooled.remove(0);
+            retainedBytes -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+        peakRetainedBytes = Math.max(peakRetainedBytes, retainedBytes);
+    }
+
+    /**
+     * Recycles every pooled bitmap, e.g. when the system is low on memory.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : pooled) {
+            bitmap.recycle();
+        }
+        pooled.clear();
+        retainedBytes = 0;
+    }
+
+    public synchronized JsonArgs getStats() {
+        return new JsonArgs()
+            .put("requests", requests)
+            .put("hits", hits)
+            .put("hitRate", requests > 0 ? (double) hits / requests : 0.0)
+            .put("pooled", pooled.size())
+            .put("retainedBytes", retainedBytes)
+            .put("peakRetainedBytes", peakRetainedBytes)
+            .put("maxBytes", maxBytes);
+    }
+
+    private Bitmap take(final long bytes) {
+        requests++;
+        final int requestedClass = sizeClass(bytes);
+        Bitmap best = null;
+        for (Bitmap candidate : pooled) {
+            final long candidateBytes = candidate.getAllocationByteCount();
+            final int candidateClass = sizeClass(candidateBytes);
+            if (candidateBytes >= bytes && candidateClass <= requestedClass + 1
+                    && (best == null || candidateBytes < best.getAllocationByteCount())) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        pooled.remove(best);
+        retainedBytes -= best.getAllocationByteCount();
+        hits++;
+        return best;
+    }
+
+    private static boolean isHardware(final Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && bitmap.getConfig() == Bitmap.Config.HARDWARE;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONArray;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the SHA-256 of an output while it is written, and optionally the SHA-256 of each
+ * fixed-size chunk of it, so uploads can be deduplicated and resumed without reading the file again.
+ * Wrap the output stream with {@link #wrap}, write the whole output, then read {@link #toJson}.
+ */
+public class ContentHasher {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final int chunkSize;
+    private final MessageDigest digest;
+    private final MessageDigest chunkDigest;
+    private final JSONArray chunks = new JSONArray();
+    private long size = 0;
+    private long chunkStart = 0;
+    private JsonArgs result;
+
+    /**
+     * @param chunkSize the size of the chunks listed in the manifest in bytes, or 0 for no manifest
+     */
+    public ContentHasher(final int chunkSize) {
+        this.chunkSize = Math.max(0, chunkSize);
+        this.digest = newDigest();
+        this.chunkDigest = this.chunkSize > 0 ? newDigest() : null;
+    }
+
+    /**
+     * @return a stream hashing every byte written through it before passing it on
+     */
+    public OutputStream wrap(final OutputStream outputStream) {
+        return new FilterOutputStream(outputStream) {
+            @Override
+            public void write(int b) throws IOException {
+                update(new byte[] {(byte) b}, 0, 1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] buffer, int offset, int length) throws IOException {
+                update(buffer, offset, length);
+                out.write(buffer, offset, length);
+            }
+        };
+    }
+
+    public void update(final byte[] buffer, int offset, int length) {
+        if (result != null) {
+            throw new IllegalStateException("The hash has already been computed");
+        }
+        digest.update(buffer, offset, length);
+        size += length;
+        while (chunkDigest != null && length > 0) {
+            final int inChunk = (int) Math.min(length, chunkStart + chunkSize - (size - length));
+            chunkDigest.update(buffer, offset, inChunk);
+            offset += inChunk;
+            length -= inChunk;
+            if (size - length == chunkStart + chunkSize) {
+                endChunk(chunkSize);
+            }
+        }
+    }
+
+    /**
+     * Completes the hash; nothing can be written afterwards.
+     * @return {algorithm, sha256, size} plus {chunkSize, chunks: [{offset, size, sha256}]} when chunks were requested
+     */
+    public JsonArgs toJson() {
+        if (result == null) {
+            if (chunkDigest != null && size > chunkStart) {
+                endChunk((int) (size - chunkStart));
+            }
+            result = new JsonArgs()
+                .put("algorithm", ALGORITHM)
+                .put("sha256", OutputCache.toHex(digest.digest()))
+                .put("size", size);
+            if (chunkDigest != null) {
+                result.put("chunkSize", chunkSize);
+                result.put("chunks", chunks);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Hashes a file that was written by code the hasher could not be placed in, e.g. MediaMuxer.
+     * @return the same as {@link #toJson}
+     * @throws IOException if the file cannot be read
+     */
+    public static JsonArgs hashFile(final File file, final int chunkSize) throws IOException {
+        final ContentHasher hasher = new ContentHasher(chunkSize);
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            final byte[] buffer = new byte[READ_BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                hasher.update(buffer, 0, bytesRead);
+            }
+        } finally {
+            inputStream.close();
+        }
+        return hasher.toJson();
+    }
+
+    private void endChunk(final int length) {
+        chunks.put(new JsonArgs()
+            .put("offset", chunkStart)
+            .put("size", length)
+            .put("sha256", OutputCache.toHex(chunkDigest.digest()))
+            .jsonObj());
+        chunkStart += length;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android version provides SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link MediaSource} reading content URIs through a ContentResolver and anything else as a file path.
+ */
+public class ContentMediaSource implements MediaSource {
+
+    private final ContentResolver resolver;
+
+    public ContentMediaSource(final ContentResolver resolver) {
+        this.resolver = resolver;
+    }
+
+    @Override
+    public InputStream openInputStream(final String uri) throws IOException {
+        if (uri.startsWith("content:/")) {
+            final InputStream inputStream = resolver.openInputStream(Uri.parse(uri));
+            if (inputStream == null) {
+                throw new IOException("Could not open input stream for " + uri);
+            }
+            return inputStream;
+        }
+        return new FileInputStream(Uri.parse(uri).getPath());
+    }
+}
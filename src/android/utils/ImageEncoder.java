@@ -0,0 +1,144 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.heifwriter.HeifWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes bitmaps in the supported output formats.
+ * JPEG, WebP and PNG go through Bitmap.compress; HEIF goes through HeifWriter, which needs
+ * API 28 and a hardware HEVC encoder, so callers must be ready to fall back to JPEG.
+ */
+public class ImageEncoder {
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_WEBP = "webp";
+    public static final String FORMAT_HEIF = "heif";
+    public static final String FORMAT_PNG = "png";
+
+    private static final long HEIF_TIMEOUT_MS = 10000;
+
+    /**
+     * @return the format to attempt for the requested one on this device; unknown formats
+     * and HEIF before API 28 resolve to JPEG
+     */
+    public static String resolveFormat(final String requestedFormat) {
+        if (FORMAT_WEBP.equals(requestedFormat) || FORMAT_PNG.equals(requestedFormat)) {
+            return requestedFormat;
+        }
+        if (FORMAT_HEIF.equals(requestedFormat) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            return FORMAT_HEIF;
+        }
+        return FORMAT_JPEG;
+    }
+
+    public static String extensionFor(final String format) {
+        switch (format) {
+            case FORMAT_WEBP:
+                return "webp";
+            case FORMAT_HEIF:
+                return "heic";
+            case FORMAT_PNG:
+                return "png";
+            default:
+                return "jpg";
+        }
+    }
+
+    public static String mimeTypeFor(final String format) {
+        switch (format) {
+            case FORMAT_WEBP:
+                return "image/webp";
+            case FORMAT_HEIF:
+                return "image/heif";
+            case FORMAT_PNG:
+                return "image/png";
+            default:
+                return "image/jpeg";
+        }
+    }
+
+    /**
+     * @return the format of a file written by this encoder, based on its extension
+     */
+    public static String formatForFile(final File file) {
+        final String name = file.getName();
+        final String extension = name.substring(name.lastIndexOf('.') + 1);
+        for (String format : new String[] {FORMAT_WEBP, FORMAT_HEIF, FORMAT_PNG}) {
+            if (extensionFor(format).equals(extension)) {
+                return format;
+            }
+        }
+        return FORMAT_JPEG;
+    }
+
+    /**
+     * Compresses a bitmap to a stream.
+     * @param format JPEG, WebP (lossy) or PNG; HEIF must go through {@link #writeHeif}
+     * @param quality 0-100, ignored for PNG
+     */
+    @SuppressWarnings("deprecation")
+    public static void compress(final Bitmap bitmap, final String format, final int quality,
+                                final OutputStream outputStream) throws IOException {
+        final Bitmap.CompressFormat compressFormat;
+        if (FORMAT_PNG.equals(format)) {
+            compressFormat = Bitmap.CompressFormat.PNG;
+        } else if (FORMAT_WEBP.equals(format)) {
+            // Before API 30 the single WEBP format is lossy for any quality below 100
+            compressFormat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+        } else {
+            compressFormat = Bitmap.CompressFormat.JPEG;
+        }
+        if (!bitmap.compress(compressFormat, quality, outputStream)) {
+            throw new IOException("Could not encode image as " + format);
+        }
+    }
+
+    /**
+     * Encodes a bitmap as a HEIF file, under a temporary name that is renamed once complete.
+     * @throws IOException if the device has no HEIF encoder or encoding fails
+     */
+    public static void writeHeif(final Bitmap bitmap, final int quality, final File outputFile) throws IOException {
+        final File tempFile = new File(outputFile.getPath() + ".part");
+        boolean completed = false;
+        try {
+            final HeifWriter writer = new HeifWriter.Builder(tempFile.getPath(), bitmap.getWidth(), bitmap.getHeight(),
+                HeifWriter.INPUT_MODE_BITMAP)
+                .setQuality(quality)
+                .setMaxImages(1)
+                .build();
+            try {
+                writer.start();
+                writer.addBitmap(bitmap);
+                writer.stop(HEIF_TIMEOUT_MS);
+            } finally {
+                writer.close();
+            }
+            if (!tempFile.renameTo(outputFile)) {
+                throw new IOException("Could not move " + tempFile + " to " + outputFile);
+            }
+            completed = true;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            // HeifWriter reports missing encoders and timeouts as runtime exceptions
+            throw new IOException("Could not encode image as HEIF: " + e.getMessage(), e);
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+}
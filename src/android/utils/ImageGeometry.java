@@ -0,0 +1,168 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.graphics.Matrix;
+
+/**
+ * Size and orientation arithmetic of the image pipeline. Plain Java apart from
+ * {@link #orientationMatrix}, so it can be exercised on a JVM.
+ */
+public class ImageGeometry {
+
+    // Same values as the ExifInterface.ORIENTATION_* constants
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    /**
+     * Computes the factor by which an image must be scaled to fit in (or fill) the given bounds.
+     * Images are never upscaled, so the result is at most 1.
+     * @param maxWidth the maximum width, or 0 for no limit
+     * @param maxHeight the maximum height, or 0 for no limit
+     * @param fill true to cover the bounds, false to stay inside them
+     */
+    public static double computeScale(final int width, final int height, final int maxWidth, final int maxHeight,
+                                      final boolean fill) {
+        final double scaleX = maxWidth > 0 ? (double) maxWidth / width : Double.NaN;
+        final double scaleY = maxHeight > 0 ? (double) maxHeight / height : Double.NaN;
+
+        double scale;
+        if (Double.isNaN(scaleX)) {
+            scale = scaleY;
+        } else if (Double.isNaN(scaleY)) {
+            scale = scaleX;
+        } else if (fill) {
+            scale = Math.max(scaleX, scaleY);
+        } else {
+            scale = Math.min(scaleX, scaleY);
+        }
+        return Double.isNaN(scale) ? 1.0 : Math.min(1.0, scale);
+    }
+
+    /**
+     * Returns the largest power-of-two sample size that keeps the decoded image
+     * at least as large as the scaled target, so the final resize only ever shrinks.
+     */
+    public static int computeSampleSize(final int width, final int height, final double scale) {
+        final int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        final int targetHeight = Math.max(1, (int) Math.round(height * scale));
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return the clockwise rotation in degrees needed to display an image with the given
+     * EXIF orientation upright, applied after mirroring it if {@link #isMirrored}; 0 for normal
+     * and undefined orientations
+     */
+    public static int rotationDegrees(final int exifOrientation) {
+        switch (exifOrientation) {
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSVERSE:
+                return 90;
+            case ORIENTATION_ROTATE_180:
+            case ORIENTATION_FLIP_VERTICAL:
+                return 180;
+            case ORIENTATION_ROTATE_270:
+            case ORIENTATION_TRANSPOSE:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * @return true if an image with the given EXIF orientation is stored mirrored, so displaying
+     * it upright flips it horizontally before rotating it
+     */
+    public static boolean isMirrored(final int exifOrientation) {
+        switch (exifOrientation) {
+            case ORIENTATION_FLIP_HORIZONTAL:
+            case ORIENTATION_FLIP_VERTICAL:
+            case ORIENTATION_TRANSPOSE:
+            case ORIENTATION_TRANSVERSE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return the EXIF orientation for a clockwise rotation in degrees, or ORIENTATION_UNDEFINED
+     * if it is not a multiple of 90
+     */
+    public static int orientationForDegrees(final int degrees) {
+        switch (degrees) {
+            case 0:
+                return ORIENTATION_NORMAL;
+            case 90:
+                return ORIENTATION_ROTATE_90;
+            case 180:
+                return ORIENTATION_ROTATE_180;
+            case 270:
+                return ORIENTATION_ROTATE_270;
+            default:
+                return ORIENTATION_UNDEFINED;
+        }
+    }
+
+    /**
+     * @return true if displaying an image with the given EXIF orientation swaps its width and height
+     */
+    public static boolean swapsAxes(final int exifOrientation) {
+        switch (exifOrientation) {
+            case ORIENTATION_TRANSPOSE:
+            case ORIENTATION_ROTATE_90:
+            case ORIENTATION_TRANSVERSE:
+            case ORIENTATION_ROTATE_270:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Builds the transform that draws an image stored with the given EXIF orientation upright:
+     * a horizontal flip for mirrored orientations, then the rotation, moved back into the
+     * upright bounds.
+     * @param width the width of the image as stored
+     * @param height the height of the image as stored
+     */
+    public static Matrix orientationMatrix(final int exifOrientation, final int width, final int height) {
+        final Matrix matrix = new Matrix();
+        if (isMirrored(exifOrientation)) {
+            matrix.postScale(-1, 1);
+            matrix.postTranslate(width, 0);
+        }
+        final int degrees = rotationDegrees(exifOrientation);
+        matrix.postRotate(degrees);
+        switch (degrees) {
+            case 90:
+                matrix.postTranslate(height, 0);
+                break;
+            case 180:
+                matrix.postTranslate(width, height);
+                break;
+            case 270:
+                matrix.postTranslate(0, width);
+                break;
+            default:
+                break;
+        }
+        return matrix;
+    }
+}
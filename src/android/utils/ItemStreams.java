@@ -0,0 +1,78 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The streams and file descriptors one item has opened. Reads from a cloud provider that is still
+ * downloading block in native code and ignore interrupts; closing the descriptor they are blocked
+ * on makes them fail instead, which is how an item that overran its timeout gives its worker back.
+ * Streams are closed by their readers as usual; closing them again here is harmless.
+ */
+public class ItemStreams implements Closeable {
+
+    private final List<Closeable> streams = new ArrayList<>();
+    private boolean closed = false;
+
+    /**
+     * Registers a stream or descriptor of the item.
+     * @return the stream, for chaining
+     * @throws InterruptedIOException if the item was already abandoned, after closing the stream
+     */
+    public <T extends Closeable> T add(final T stream) throws InterruptedIOException {
+        synchronized (this) {
+            if (!closed) {
+                streams.add(stream);
+                return stream;
+            }
+        }
+        closeQuietly(stream);
+        throw new InterruptedIOException("Item was abandoned");
+    }
+
+    /**
+     * @return a source registering every stream it opens, unwrapped so readers can still check their type
+     */
+    public MediaSource wrap(final MediaSource mediaSource) {
+        return new MediaSource() {
+            @Override
+            public InputStream openInputStream(String uri) throws IOException {
+                return add(mediaSource.openInputStream(uri));
+            }
+        };
+    }
+
+    /**
+     * Closes every stream of the item, and any it opens from now on.
+     */
+    @Override
+    public void close() {
+        final List<Closeable> open;
+        synchronized (this) {
+            closed = true;
+            open = new ArrayList<>(streams);
+            streams.clear();
+        }
+        for (Closeable stream : open) {
+            closeQuietly(stream);
+        }
+    }
+
+    private static void closeQuietly(final Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException | RuntimeException ignored) {
+            // Closing only serves to unblock the reader
+        }
+    }
+}
@@ -0,0 +1,266 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On-disk journal of durable picks, so an import survives the process being killed.
+ * Each pick is one JSON file named after its journal id, which is unique across processes
+ * unlike the request id JS sees, holding the request id and the options the pick was started
+ * with, the selected URIs, the result of every item completed so far and, once the pick is
+ * done, its final result. Files are rewritten atomically after every change, so a journal
+ * entry is always either the previous or the next state. Like {@link OutputCache}, the
+ * directory is the index and is scanned once on first use.
+ */
+public class JobJournal {
+
+    private static final String SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".part";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File directory;
+    private final Map<String, JSONObject> entries = new LinkedHashMap<>();
+    // Entries left by a previous process, as opposed to those of picks running in this one
+    private final Set<String> recovered = new HashSet<>();
+    private boolean loaded = false;
+
+    /**
+     * A journaled pick, as read back from disk.
+     */
+    public static class Entry {
+        // The journal id
+        public final String id;
+        public final String requestId;
+        public final JSONObject args;
+        public final String[] uris;
+        // Completed items by index: {cacheKey, outputPath, result}
+        public final Map<Integer, JSONObject> items;
+        // The final result once the pick is done, null while it is still processing
+        public final JSONObject result;
+
+        Entry(final String id, final JSONObject json) {
+            this.id = id;
+            this.requestId = json.optString("requestId", id);
+            this.args = json.optJSONObject("args") != null ? json.optJSONObject("args") : new JSONObject();
+            final JSONArray uriArray = json.optJSONArray("uris");
+            this.uris = new String[uriArray != null ? uriArray.length() : 0];
+            for (int i = 0; i < uris.length; i++) {
+                uris[i] = uriArray.optString(i);
+            }
+            this.items = new LinkedHashMap<>();
+            final JSONObject itemObject = json.optJSONObject("items");
+            if (itemObject != null) {
+                for (int i = 0; i < uris.length; i++) {
+                    final JSONObject item = itemObject.optJSONObject(String.valueOf(i));
+                    if (item != null) {
+                        items.put(i, item);
+                    }
+                }
+            }
+            this.result = json.optJSONObject("result");
+        }
+    }
+
+    public JobJournal(final File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Journals a new pick before any of its items is processed. An existing entry is never replaced.
+     * @param id the journal id of the pick
+     * @param requestId the request id the pick's results carry
+     * @throws IOException if the journal can't be written, or already holds the id
+     */
+    public synchronized void create(final String id, final String requestId, final JSONObject args,
+                                    final String[] uris) throws IOException {
+        ensureLoaded();
+        if (entries.containsKey(id) || fileFor(id).exists()) {
+            throw new IOException("A pick is already journaled as " + id);
+        }
+        final JSONObject json = new JSONObject();
+        try {
+            json.put("id", id);
+            json.put("requestId", requestId);
+            json.put("createdAt", System.currentTimeMillis());
+            json.put("args", args);
+            final JSONArray uriArray = new JSONArray();
+            for (String uri : uris) {
+                uriArray.put(uri);
+            }
+            json.put("uris", uriArray);
+            json.put("items", new JSONObject());
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        write(id, json);
+        entries.put(id, json);
+    }
+
+    /**
+     * Records a completed item, so it is not processed again after a restart.
+     */
+    public synchronized void recordItem(final String id, final int index, final String cacheKey,
+                                        final String outputPath, final JSONObject result) throws IOException {
+        final JSONObject json = entries.get(id);
+        if (json == null) {
+            return;
+        }
+        try {
+            json.getJSONObject("items").put(String.valueOf(index), new JSONObject()
+                .put("cacheKey", cacheKey)
+                .put("outputPath", outputPath)
+                .put("result", result));
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        write(id, json);
+    }
+
+    /**
+     * Stores the final result of a pick that finished without anyone to deliver it to.
+     */
+    public synchronized void complete(final String id, final JSONObject result) throws IOException {
+        final JSONObject json = entries.get(id);
+        if (json == null) {
+            return;
+        }
+        try {
+            json.put("result", result);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        }
+        write(id, json);
+    }
+
+    /**
+     * Forgets a pick once its result has been delivered or it has been canceled.
+     */
+    public synchronized void remove(final String id) {
+        ensureLoaded();
+        entries.remove(id);
+        recovered.remove(id);
+        fileFor(id).delete();
+    }
+
+    /**
+     * @return the picks journaled by a previous process, which nothing in this one is processing
+     */
+    public synchronized List<Entry> getRecoveredEntries() {
+        ensureLoaded();
+        final List<Entry> result = new ArrayList<>(recovered.size());
+        for (Map.Entry<String, JSONObject> entry : entries.entrySet()) {
+            if (recovered.contains(entry.getKey())) {
+                result.add(new Entry(entry.getKey(), entry.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return every journaled pick
+     */
+    public synchronized List<Entry> getEntries() {
+        ensureLoaded();
+        final List<Entry> result = new ArrayList<>(entries.size());
+        for (Map.Entry<String, JSONObject> entry : entries.entrySet()) {
+            result.add(new Entry(entry.getKey(), entry.getValue()));
+        }
+        return result;
+    }
+
+    private File fileFor(final String id) {
+        // Journal ids are hashed into fixed-length file names
+        return new File(directory, OutputCache.keyFor(id) + SUFFIX);
+    }
+
+    private void write(final String id, final JSONObject json) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        final File file = fileFor(id);
+        final File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        boolean completed = false;
+        try {
+            final OutputStream outputStream = new FileOutputStream(tempFile);
+            try {
+                outputStream.write(json.toString().getBytes(UTF8));
+            } finally {
+                outputStream.close();
+            }
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Could not move " + tempFile + " to " + file);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Reads the journal directory, deleting leftover temporary and unreadable files.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(SUFFIX)) {
+                file.delete();
+                continue;
+            }
+            try {
+                final JSONObject json = new JSONObject(read(file));
+                entries.put(json.getString("id"), json);
+                recovered.add(json.getString("id"));
+            } catch (IOException | JSONException e) {
+                android.util.Log.w("ActualizeImagePicker", "JobJournal: dropping unreadable entry " + file, e);
+                file.delete();
+            }
+        }
+    }
+
+    private static String read(final File file) throws IOException {
+        final InputStream inputStream = new FileInputStream(file);
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+            final byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, bytesRead);
+            }
+            return new String(bytes.toByteArray(), UTF8);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
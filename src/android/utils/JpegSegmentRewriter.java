@@ -0,0 +1,234 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies JPEG files at the segment level, without decoding any pixels.
+ * Optionally drops metadata segments (EXIF, XMP, comments, vendor APPn blocks) and replaces
+ * the EXIF block with a minimal one that only carries the orientation tag.
+ */
+public class JpegSegmentRewriter {
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP2 = 0xE2;
+    private static final int MARKER_APP14 = 0xEE;
+    private static final int MARKER_APP15 = 0xEF;
+    private static final int MARKER_COM = 0xFE;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TYPE_SHORT = 3;
+
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Checks the JPEG signature without consuming the stream.
+     * @param in a stream that supports mark/reset
+     * @return true if the stream starts with a JPEG SOI marker
+     */
+    public static boolean isJpeg(final InputStream in) throws IOException {
+        in.mark(3);
+        try {
+            return in.read() == 0xFF && in.read() == MARKER_SOI && in.read() == 0xFF;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Copies a JPEG stream to the output.
+     * @param in the source JPEG stream
+     * @param out the destination stream
+     * @param stripMetadata true to drop metadata segments and keep only the orientation
+     * @return the number of bytes written
+     * @throws IOException if the source is not a valid JPEG or cannot be read
+     */
+    public static long copy(final InputStream in, final OutputStream out, final boolean stripMetadata) throws IOException {
+        final byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        if (!stripMetadata) {
+            return copyRemaining(in, out, buffer);
+        }
+
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readUnsignedByte() != 0xFF || data.readUnsignedByte() != MARKER_SOI) {
+            throw new IOException("Not a JPEG file");
+        }
+        out.write(0xFF);
+        out.write(MARKER_SOI);
+        long written = 2;
+
+        while (true) {
+            int marker = data.readUnsignedByte();
+            if (marker != 0xFF) {
+                throw new IOException("Invalid JPEG marker");
+            }
+            // Markers may be preceded by any number of fill bytes
+            while (marker == 0xFF) {
+                marker = data.readUnsignedByte();
+            }
+
+            if (marker == MARKER_EOI || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                out.write(0xFF);
+                out.write(marker);
+                written += 2;
+                if (marker == MARKER_EOI) {
+                    return written;
+                }
+                continue;
+            }
+
+            final int length = data.readUnsignedShort();
+            if (length < 2) {
+                throw new IOException("Invalid JPEG segment length");
+            }
+            final int payloadLength = length - 2;
+            data.readFully(buffer, 0, payloadLength);
+
+            if (marker == MARKER_SOS) {
+                // Entropy-coded data follows; everything after this point is copied verbatim
+                written += writeSegment(out, marker, buffer, payloadLength);
+                return written + copyRemaining(data, out, buffer);
+            }
+
+            if (marker == MARKER_APP1 && startsWith(buffer, payloadLength, EXIF_HEADER)) {
+                final int orientation = parseOrientation(buffer, EXIF_HEADER.length, payloadLength);
+                if (orientation > 1) {
+                    final byte[] exif = buildOrientationExif(orientation);
+                    written += writeSegment(out, MARKER_APP1, exif, exif.length);
+                }
+            } else if (isKeptSegment(marker)) {
+                written += writeSegment(out, marker, buffer, payloadLength);
+            }
+        }
+    }
+
+    /**
+     * Segments that affect decoding (tables, frame headers) are always kept, along with
+     * JFIF (APP0), ICC profiles (APP2) and the Adobe color transform (APP14).
+     */
+    private static boolean isKeptSegment(final int marker) {
+        if (marker == MARKER_COM) {
+            return false;
+        }
+        if (marker >= MARKER_APP0 && marker <= MARKER_APP15) {
+            return marker == MARKER_APP0 || marker == MARKER_APP2 || marker == MARKER_APP14;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the orientation tag in IFD0 of a TIFF structure.
+     * @return the orientation value, or 0 if absent or malformed
+     */
+    private static int parseOrientation(final byte[] data, final int tiffStart, final int end) {
+        if (end - tiffStart < 8) {
+            return 0;
+        }
+        final boolean littleEndian;
+        if (data[tiffStart] == 'I' && data[tiffStart + 1] == 'I') {
+            littleEndian = true;
+        } else if (data[tiffStart] == 'M' && data[tiffStart + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return 0;
+        }
+
+        final long ifdOffset = readInt(data, tiffStart + 4, littleEndian) & 0xFFFFFFFFL;
+        if (ifdOffset < 8 || tiffStart + ifdOffset + 2 > end) {
+            return 0;
+        }
+        final int ifdStart = tiffStart + (int) ifdOffset;
+
+        final int entryCount = readShort(data, ifdStart, littleEndian);
+        for (int i = 0; i < entryCount; i++) {
+            final int entry = ifdStart + 2 + i * 12;
+            if (entry + 12 > end) {
+                return 0;
+            }
+            if (readShort(data, entry, littleEndian) == TAG_ORIENTATION) {
+                final int value = readShort(data, entry + 8, littleEndian);
+                return value >= 1 && value <= 8 ? value : 0;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Builds a minimal big-endian EXIF payload with a single IFD0 entry for the orientation.
+     */
+    private static byte[] buildOrientationExif(final int orientation) {
+        return new byte[] {
+            'E', 'x', 'i', 'f', 0, 0,
+            // TIFF header: big-endian, magic 42, IFD0 at offset 8
+            'M', 'M', 0, 42, 0, 0, 0, 8,
+            // IFD0 with one entry: Orientation, SHORT, count 1, value
+            0, 1,
+            (byte) (TAG_ORIENTATION >> 8), (byte) TAG_ORIENTATION, 0, TYPE_SHORT, 0, 0, 0, 1,
+            0, (byte) orientation, 0, 0,
+            // No next IFD
+            0, 0, 0, 0
+        };
+    }
+
+    private static int writeSegment(final OutputStream out, final int marker, final byte[] payload, final int payloadLength)
+            throws IOException {
+        final int length = payloadLength + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(payload, 0, payloadLength);
+        return payloadLength + 4;
+    }
+
+    private static long copyRemaining(final InputStream in, final OutputStream out, final byte[] buffer) throws IOException {
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+            out.write(buffer, 0, bytesRead);
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    private static boolean startsWith(final byte[] data, final int length, final byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readShort(final byte[] data, final int offset, final boolean littleEndian) {
+        final int b0 = data[offset] & 0xFF;
+        final int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(final byte[] data, final int offset, final boolean littleEndian) {
+        if (littleEndian) {
+            return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8
+                    | (data[offset + 2] & 0xFF) << 16 | (data[offset + 3] & 0xFF) << 24;
+        }
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+}
@@ -28,6 +28,11 @@ public class JsonArgs {
         return this;
     }
 
+    public JsonArgs put(final String key, final long value) {
+        this.argsMap.put(key, value);
+        return this;
+    }
+
     public JsonArgs put(final String key, final double value) {
         this.argsMap.put(key, value);
         return this;
@@ -58,6 +63,11 @@ public class JsonArgs {
         return this;
     }
 
+    public JsonArgs putAll(final JsonArgs other) {
+        this.argsMap.putAll(other.argsMap);
+        return this;
+    }
+
     public JSONObject jsonObj() {
         return new JSONObject(this.argsMap);
     }
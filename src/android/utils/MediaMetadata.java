@@ -0,0 +1,92 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+/**
+ * What the content provider reports about a picked item, collected once per pick by
+ * {@link MediaMetadataLoader}. Unknown numeric values are -1, unknown strings are null.
+ */
+public class MediaMetadata {
+
+    public final String mimeType;
+    public final String displayName;
+    public final long size;
+    public final int width;
+    public final int height;
+    // Clockwise rotation in degrees
+    public final int orientation;
+    public final long durationMs;
+    public final long dateTakenMs;
+    public final long dateModifiedMs;
+    // MediaStore's modification counter, which also changes for edits within the same second
+    public final long generationModified;
+
+    MediaMetadata(final String mimeType, final String displayName, final long size, final int width, final int height,
+                  final int orientation, final long durationMs, final long dateTakenMs, final long dateModifiedMs,
+                  final long generationModified) {
+        this.mimeType = mimeType;
+        this.displayName = displayName;
+        this.size = size;
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+        this.durationMs = durationMs;
+        this.dateTakenMs = dateTakenMs;
+        this.dateModifiedMs = dateModifiedMs;
+        this.generationModified = generationModified;
+    }
+
+    /**
+     * @return metadata with nothing known but the MIME type
+     */
+    public static MediaMetadata ofMimeType(final String mimeType) {
+        return new MediaMetadata(mimeType, null, -1, -1, -1, -1, -1, -1, -1, -1);
+    }
+
+    public boolean isVideo() {
+        return mimeType != null && mimeType.startsWith("video/");
+    }
+
+    /**
+     * @return a string identifying the current version of the item, built from its size,
+     * modification time and generation, or null if the provider reports no size or neither of the
+     * others, as an edit that keeps the size could not be told apart then
+     */
+    public String version() {
+        if (size < 0 || (dateModifiedMs < 0 && generationModified < 0)) {
+            return null;
+        }
+        return size + ":" + dateModifiedMs + (generationModified >= 0 ? ":" + generationModified : "");
+    }
+
+    /**
+     * @return the known values, for the JSON result
+     */
+    public JsonArgs toJson() {
+        final JsonArgs json = new JsonArgs();
+        if (mimeType != null) {
+            json.put("mimeType", mimeType);
+        }
+        if (displayName != null) {
+            json.put("displayName", displayName);
+        }
+        putIfKnown(json, "size", size);
+        putIfKnown(json, "width", width);
+        putIfKnown(json, "height", height);
+        putIfKnown(json, "orientation", orientation);
+        putIfKnown(json, "durationMs", durationMs);
+        putIfKnown(json, "dateTaken", dateTakenMs);
+        putIfKnown(json, "dateModified", dateModifiedMs);
+        return json;
+    }
+
+    private static void putIfKnown(final JsonArgs json, final String key, final long value) {
+        if (value >= 0) {
+            json.put(key, value);
+        }
+    }
+}
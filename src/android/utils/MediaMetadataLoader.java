@@ -0,0 +1,221 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.BaseColumns;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the metadata of every picked item with as few provider queries as possible.
+ * MediaStore item URIs are resolved with one query per volume, selecting all ids at once.
+ * Photo picker, document and other provider URIs can't be selected in bulk and are queried
+ * one by one, reading whichever of the known columns the provider exposes.
+ */
+public class MediaMetadataLoader {
+
+    // SQLite limits the number of bound arguments per statement
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static final String COLUMN_DURATION_MILLIS = "duration_millis";
+    // MediaStore.MediaColumns.GENERATION_MODIFIED, Android 11+
+    private static final String COLUMN_GENERATION_MODIFIED = "generation_modified";
+
+    private static final String[] BATCH_PROJECTION = {
+        BaseColumns._ID,
+        MediaStore.MediaColumns.MIME_TYPE,
+        MediaStore.MediaColumns.DISPLAY_NAME,
+        MediaStore.MediaColumns.SIZE,
+        MediaStore.MediaColumns.WIDTH,
+        MediaStore.MediaColumns.HEIGHT,
+        MediaStore.MediaColumns.ORIENTATION,
+        MediaStore.MediaColumns.DURATION,
+        MediaStore.MediaColumns.DATE_TAKEN,
+        MediaStore.MediaColumns.DATE_MODIFIED,
+    };
+    private static final String[] BATCH_PROJECTION_GENERATION = withColumn(BATCH_PROJECTION, COLUMN_GENERATION_MODIFIED);
+
+    /**
+     * Loads the metadata of the given URIs.
+     * @param resolver the content resolver used for the queries
+     * @param uris the content or file URIs of the picked items
+     * @return the metadata of every URI, with unknown values for items the provider knows nothing about
+     */
+    public static Map<String, MediaMetadata> load(final ContentResolver resolver, final String[] uris) {
+        final Map<String, MediaMetadata> metadata = new HashMap<>();
+
+        // MediaStore items, grouped by volume: content://media/<volume>/.../<id>
+        final Map<String, Map<Long, String>> volumes = new LinkedHashMap<>();
+        for (String uriString : uris) {
+            final Uri uri = Uri.parse(uriString);
+            final List<String> segments = uri.getPathSegments();
+            if (!MediaStore.AUTHORITY.equals(uri.getAuthority()) || segments == null || segments.size() < 3
+                    || "picker".equals(segments.get(0))) {
+                continue;
+            }
+            try {
+                final long id = Long.parseLong(segments.get(segments.size() - 1));
+                Map<Long, String> ids = volumes.get(segments.get(0));
+                if (ids == null) {
+                    ids = new HashMap<>();
+                    volumes.put(segments.get(0), ids);
+                }
+                ids.put(id, uriString);
+            } catch (NumberFormatException ignored) {
+                // Not an item URI
+            }
+        }
+        for (Map.Entry<String, Map<Long, String>> volume : volumes.entrySet()) {
+            queryVolume(resolver, volume.getKey(), volume.getValue(), metadata);
+        }
+
+        // Everything the batches did not cover
+        for (String uri : uris) {
+            if (!metadata.containsKey(uri)) {
+                metadata.put(uri, querySingle(resolver, uri));
+            }
+        }
+        return metadata;
+    }
+
+    private static void queryVolume(final ContentResolver resolver, final String volume, final Map<Long, String> ids,
+                                    final Map<String, MediaMetadata> metadata) {
+        final List<Long> pending = new ArrayList<>(ids.keySet());
+        for (int start = 0; start < pending.size(); start += MAX_BATCH_SIZE) {
+            final List<Long> batch = pending.subList(start, Math.min(pending.size(), start + MAX_BATCH_SIZE));
+            final StringBuilder selection = new StringBuilder(BaseColumns._ID).append(" IN (");
+            final String[] selectionArgs = new String[batch.size()];
+            for (int i = 0; i < batch.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+                selectionArgs[i] = String.valueOf(batch.get(i));
+            }
+            selection.append(')');
+
+            Cursor cursor = null;
+            try {
+                // Older versions reject the query if it names a column they don't have
+                cursor = resolver.query(MediaStore.Files.getContentUri(volume),
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? BATCH_PROJECTION_GENERATION : BATCH_PROJECTION,
+                    selection.toString(), selectionArgs, null);
+                while (cursor != null && cursor.moveToNext()) {
+                    final String uri = ids.get(cursor.getLong(cursor.getColumnIndex(BaseColumns._ID)));
+                    if (uri != null) {
+                        metadata.put(uri, fromCursor(cursor, null));
+                    }
+                }
+            } catch (Exception e) {
+                // Without broad media permissions the collection can't be queried; the items are queried one by one
+                android.util.Log.d("ActualizeImagePicker", "MediaMetadataLoader: batch query failed for " + volume + ": " + e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+        }
+    }
+
+    private static MediaMetadata querySingle(final ContentResolver resolver, final String uriString) {
+        final Uri uri = Uri.parse(uriString);
+        if (!uriString.startsWith("content:/")) {
+            final File file = new File(uri.getPath());
+            return new MediaMetadata(URLConnection.guessContentTypeFromName(file.getName()), file.getName(),
+                file.exists() ? file.length() : -1, -1, -1, -1, -1, -1, file.exists() ? file.lastModified() : -1, -1);
+        }
+
+        String mimeType = null;
+        try {
+            mimeType = resolver.getType(uri);
+        } catch (Exception e) {
+            android.util.Log.w("ActualizeImagePicker", "MediaMetadataLoader: could not get the type of " + uriString, e);
+        }
+
+        Cursor cursor = null;
+        try {
+            cursor = resolver.query(uri, null, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                return fromCursor(cursor, mimeType);
+            }
+        } catch (Exception e) {
+            android.util.Log.w("ActualizeImagePicker", "MediaMetadataLoader: could not query " + uriString, e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return MediaMetadata.ofMimeType(mimeType);
+    }
+
+    /**
+     * Reads the current row, accepting the column names of MediaStore, the photo picker and document providers.
+     * @param mimeType the MIME type reported by the resolver, used when the row has none
+     */
+    private static MediaMetadata fromCursor(final Cursor cursor, final String mimeType) {
+        final String rowMimeType = getString(cursor, MediaStore.MediaColumns.MIME_TYPE);
+        final String displayName = getString(cursor, OpenableColumns.DISPLAY_NAME);
+
+        long dateModified = getLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+        if (dateModified < 0) {
+            // MediaStore reports seconds
+            dateModified = getLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+            dateModified = dateModified >= 0 ? dateModified * 1000L : -1;
+        }
+        long duration = getLong(cursor, MediaStore.MediaColumns.DURATION);
+        if (duration < 0) {
+            duration = getLong(cursor, COLUMN_DURATION_MILLIS);
+        }
+
+        return new MediaMetadata(
+            rowMimeType != null ? rowMimeType : mimeType,
+            displayName,
+            getLong(cursor, OpenableColumns.SIZE),
+            getDimension(cursor, MediaStore.MediaColumns.WIDTH),
+            getDimension(cursor, MediaStore.MediaColumns.HEIGHT),
+            (int) getLong(cursor, MediaStore.MediaColumns.ORIENTATION),
+            duration,
+            getLong(cursor, MediaStore.MediaColumns.DATE_TAKEN),
+            dateModified,
+            getLong(cursor, COLUMN_GENERATION_MODIFIED));
+    }
+
+    private static String[] withColumn(final String[] projection, final String column) {
+        final String[] extended = new String[projection.length + 1];
+        System.arraycopy(projection, 0, extended, 0, projection.length);
+        extended[projection.length] = column;
+        return extended;
+    }
+
+    private static String getString(final Cursor cursor, final String column) {
+        final int index = cursor.getColumnIndex(column);
+        return index >= 0 && !cursor.isNull(index) ? cursor.getString(index) : null;
+    }
+
+    private static long getLong(final Cursor cursor, final String column) {
+        final int index = cursor.getColumnIndex(column);
+        return index >= 0 && !cursor.isNull(index) ? cursor.getLong(index) : -1;
+    }
+
+    /**
+     * Providers report 0 for dimensions they have not scanned yet.
+     */
+    private static int getDimension(final Cursor cursor, final String column) {
+        final long value = getLong(cursor, column);
+        return value > 0 ? (int) value : -1;
+    }
+}
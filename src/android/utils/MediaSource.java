@@ -0,0 +1,24 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Opens the picked items for reading. The plugin reads through a ContentResolver
+ * ({@link ContentMediaSource}); other implementations can serve files from a fixed corpus.
+ */
+public interface MediaSource {
+
+    /**
+     * @param uri the content URI or path of the item
+     * @return a stream over the item's bytes, which the caller closes
+     * @throws IOException if the item can't be opened
+     */
+    InputStream openInputStream(String uri) throws IOException;
+}
@@ -0,0 +1,160 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+/**
+ * Admission control for decode work: each image declares the bitmap memory it will hold at
+ * once, and is admitted only while the sum over the images in progress fits the budget and
+ * fewer than the allowed number are in progress. An image larger than the whole budget is
+ * admitted alone, so it still gets processed. Under memory pressure the budget and the
+ * concurrency are lowered, and they return to normal once no pressure has been reported
+ * for a while.
+ */
+public class MemoryBudget {
+
+    public static final int PRESSURE_NONE = 0;
+    public static final int PRESSURE_MODERATE = 1;
+    public static final int PRESSURE_CRITICAL = 2;
+
+    // How long after the last pressure signal the budget stays lowered
+    private static final long RECOVERY_NANOS = 30L * 1000 * 1000 * 1000;
+
+    private final long maxBytes;
+    private final int maxConcurrency;
+
+    private int pressure = PRESSURE_NONE;
+    private long lastPressureNanos = 0;
+    private long inUseBytes = 0;
+    private int active = 0;
+    private int queued = 0;
+    private long queuedBytes = 0;
+
+    private long admitted = 0;
+    private long throttled = 0;
+    private long waitNanos = 0;
+    private long peakInUseBytes = 0;
+    private long peakQueuedBytes = 0;
+    private long pressureEvents = 0;
+
+    /**
+     * @param maxBytes the budget when there is no memory pressure
+     * @param maxConcurrency how many images may be in progress when there is no memory pressure
+     */
+    public MemoryBudget(final long maxBytes, final int maxConcurrency) {
+        this.maxBytes = maxBytes;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * Waits until an image of the given footprint fits, then counts it as in progress.
+     * Every call must be followed by {@link #release} with the same footprint.
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized void acquire(final long bytes) throws InterruptedException {
+        if (!fits(bytes)) {
+            throttled++;
+            queued++;
+            queuedBytes += bytes;
+            peakQueuedBytes = Math.max(peakQueuedBytes, queuedBytes);
+            final long waitStart = System.nanoTime();
+            try {
+                while (!fits(bytes)) {
+                    wait(recoveryDelayMillis());
+                }
+            } finally {
+                queued--;
+                queuedBytes -= bytes;
+                waitNanos += System.nanoTime() - waitStart;
+            }
+        }
+        admitted++;
+        active++;
+        inUseBytes += bytes;
+        peakInUseBytes = Math.max(peakInUseBytes, inUseBytes);
+    }
+
+    public synchronized void release(final long bytes) {
+        active--;
+        inUseBytes -= bytes;
+        notifyAll();
+    }
+
+    /**
+     * Lowers the budget: to half the bytes and concurrency for moderate pressure, to a quarter of
+     * the bytes and one image at a time for critical pressure. Lower levels than the current one
+     * only extend its duration.
+     */
+    public synchronized void onPressure(final int level) {
+        pressureEvents++;
+        pressure = Math.max(currentPressure(), level);
+        lastPressureNanos = System.nanoTime();
+        android.util.Log.d("ActualizeImagePicker", "MemoryBudget: pressure " + pressure + ", budget "
+            + getBudgetBytes() + " bytes, concurrency " + getConcurrency());
+    }
+
+    public synchronized long getBudgetBytes() {
+        return maxBytes >> currentPressure();
+    }
+
+    public synchronized int getConcurrency() {
+        switch (currentPressure()) {
+            case PRESSURE_CRITICAL:
+                return 1;
+            case PRESSURE_MODERATE:
+                return Math.max(1, maxConcurrency / 2);
+            default:
+                return maxConcurrency;
+        }
+    }
+
+    public synchronized JsonArgs getStats() {
+        return new JsonArgs()
+            .put("budgetBytes", getBudgetBytes())
+            .put("maxBytes", maxBytes)
+            .put("concurrency", getConcurrency())
+            .put("maxConcurrency", maxConcurrency)
+            .put("pressure", currentPressure())
+            .put("pressureEvents", pressureEvents)
+            .put("active", active)
+            .put("inUseBytes", inUseBytes)
+            .put("peakInUseBytes", peakInUseBytes)
+            .put("queued", queued)
+            .put("queuedBytes", queuedBytes)
+            .put("peakQueuedBytes", peakQueuedBytes)
+            .put("admitted", admitted)
+            .put("throttled", throttled)
+            .put("waitMs", PipelineMetrics.toMillis(waitNanos));
+    }
+
+    private boolean fits(final long bytes) {
+        if (active == 0) {
+            return true;
+        }
+        return active < getConcurrency() && inUseBytes + bytes <= getBudgetBytes();
+    }
+
+    /**
+     * @return the pressure level, dropping back to none once it has not been reported for RECOVERY_NANOS
+     */
+    private int currentPressure() {
+        if (pressure != PRESSURE_NONE && System.nanoTime() - lastPressureNanos > RECOVERY_NANOS) {
+            pressure = PRESSURE_NONE;
+            notifyAll();
+        }
+        return pressure;
+    }
+
+    /**
+     * @return how long a waiting image may sleep before the pressure could expire, 0 to wait for a release
+     */
+    private long recoveryDelayMillis() {
+        if (currentPressure() == PRESSURE_NONE) {
+            return 0;
+        }
+        return Math.max(1, (RECOVERY_NANOS - (System.nanoTime() - lastPressureNanos)) / 1000000);
+    }
+}
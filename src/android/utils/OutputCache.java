@@ -0,0 +1,259 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content-addressed cache for processed output files.
+ * Entries are named after a SHA-256 key of the source and the processing parameters, so
+ * identical requests map to the same file and different sources never collide.
+ * The cache directory itself is the persistent index: it is scanned once on first use and
+ * the recency of each entry is stored in the file's modification time, so the LRU order
+ * survives app restarts.
+ * Files are expected to be written under a ".part" name and renamed into place once complete;
+ * leftover ".part" files from interrupted writes are removed when the index is loaded.
+ * Entries pinned by a pick in progress are never evicted, whichever pick trims the cache.
+ */
+public class OutputCache {
+
+    private static final String TEMP_SUFFIX = ".part";
+    private static final int KEY_LENGTH = 64;
+
+    private final File directory;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    // Pin counts by key, for the outputs of picks that have not resolved yet
+    private final Map<String, Integer> pins = new HashMap<>();
+    private boolean loaded = false;
+    private long totalBytes = 0;
+    private long maxBytes;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    private static class Entry {
+        final File file;
+        final long bytes;
+
+        Entry(final File file) {
+            this.file = file;
+            this.bytes = file.length();
+        }
+    }
+
+    public OutputCache(final File directory, final long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Builds a cache key from the given parts.
+     * @return a 64-character hex SHA-256 digest
+     */
+    public static String keyFor(final String... parts) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            final Charset utf8 = Charset.forName("UTF-8");
+            for (String part : parts) {
+                digest.update(String.valueOf(part).getBytes(utf8));
+                digest.update((byte) 0);
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(final byte[] bytes) {
+        final char[] digits = "0123456789abcdef".toCharArray();
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = digits[bytes[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the file for a new entry. The file is only indexed once passed to {@link #put}.
+     * @param key the cache key
+     * @param extension the file extension, without the dot
+     */
+    public File fileFor(final String key, final String extension) {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        return new File(directory, key + "." + extension);
+    }
+
+    /**
+     * Looks up a cached entry and marks it as most recently used.
+     * @return the cached file, or null on a miss
+     */
+    public synchronized File get(final String key) {
+        ensureLoaded();
+        final Entry entry = entries.get(key);
+        if (entry == null || !entry.file.exists()) {
+            if (entry != null) {
+                entries.remove(key);
+                totalBytes -= entry.bytes;
+            }
+            misses++;
+            return null;
+        }
+        entry.file.setLastModified(System.currentTimeMillis());
+        hits++;
+        return entry.file;
+    }
+
+    /**
+     * Records a lookup that was not eligible for caching, e.g. because the source has no version info.
+     */
+    public synchronized void recordMiss() {
+        ensureLoaded();
+        misses++;
+    }
+
+    /**
+     * Indexes a newly written file, replacing any previous entry for the same key.
+     */
+    public synchronized void put(final String key, final File file) {
+        ensureLoaded();
+        final Entry entry = new Entry(file);
+        final Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+            if (!previous.file.equals(file)) {
+                previous.file.delete();
+            }
+        }
+        totalBytes += entry.bytes;
+    }
+
+    /**
+     * Protects a key from eviction until it is unpinned as often as it was pinned. The key may be
+     * pinned before its entry is written.
+     */
+    public synchronized void pin(final String key) {
+        final Integer count = pins.get(key);
+        pins.put(key, count != null ? count + 1 : 1);
+    }
+
+    public synchronized void unpin(final Collection<String> keys) {
+        for (String key : keys) {
+            final Integer count = pins.get(key);
+            if (count == null || count <= 1) {
+                pins.remove(key);
+            } else {
+                pins.put(key, count - 1);
+            }
+        }
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its byte budget. Pinned entries are kept.
+     * @param keep further keys that must not be evicted, e.g. outputs restored from a journal
+     */
+    public synchronized void trimToSize(final Collection<String> keep) {
+        ensureLoaded();
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Entry> entry = iterator.next();
+            if (keep.contains(entry.getKey()) || pins.containsKey(entry.getKey())) {
+                continue;
+            }
+            totalBytes -= entry.getValue().bytes;
+            entry.getValue().file.delete();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized void setMaxBytes(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Deletes every cached entry.
+     */
+    public synchronized void clear() {
+        ensureLoaded();
+        for (Entry entry : entries.values()) {
+            entry.file.delete();
+        }
+        entries.clear();
+        totalBytes = 0;
+    }
+
+    public synchronized JsonArgs getStats() {
+        ensureLoaded();
+        final long lookups = hits + misses;
+        return new JsonArgs()
+            .put("hits", hits)
+            .put("misses", misses)
+            .put("hitRate", lookups > 0 ? (double) hits / lookups : 0.0)
+            .put("evictions", evictions)
+            .put("entries", entries.size())
+            .put("pinned", pins.size())
+            .put("bytes", totalBytes)
+            .put("maxBytes", maxBytes);
+    }
+
+    /**
+     * Rebuilds the index from the cache directory, oldest entries first.
+     * Leftover temporary files from interrupted writes are deleted.
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final List<File> cached = new ArrayList<>(files.length);
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (file.isFile() && name.indexOf('.') == KEY_LENGTH) {
+                cached.add(file);
+            }
+        }
+
+        Collections.sort(cached, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : cached) {
+            final Entry entry = new Entry(file);
+            entries.put(file.getName().substring(0, KEY_LENGTH), entry);
+            totalBytes += entry.bytes;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-wide aggregate of {@link StageTimings}. Each stage keeps a running count and byte
+ * total plus its most recent durations in a fixed-size ring, from which p50/p95 are computed
+ * on demand, so recording stays O(1) however many items are processed.
+ */
+public class PipelineMetrics {
+
+    private static class StageWindow {
+        final long[] samples;
+        int next = 0;
+        int filled = 0;
+        long count = 0;
+        long totalBytes = 0;
+        long maxNanos = 0;
+
+        StageWindow(final int size) {
+            samples = new long[size];
+        }
+
+        void add(final long nanos, final long bytes) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            filled = Math.min(samples.length, filled + 1);
+            count++;
+            totalBytes += Math.max(0, bytes);
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        JsonArgs toJson() {
+            final long[] sorted = Arrays.copyOf(samples, filled);
+            Arrays.sort(sorted);
+            return new JsonArgs()
+                .put("count", count)
+                .put("p50Ms", toMillis(percentile(sorted, 50)))
+                .put("p95Ms", toMillis(percentile(sorted, 95)))
+                .put("maxMs", toMillis(maxNanos))
+                .put("totalBytes", totalBytes);
+        }
+    }
+
+    private final int windowSize;
+    private final Map<String, StageWindow> stages = new TreeMap<>();
+    private long items = 0;
+    private long peakBitmapBytes = 0;
+
+    /**
+     * @param windowSize the number of recent samples per stage the percentiles are computed over
+     */
+    public PipelineMetrics(final int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Adds the stages of a processed item.
+     */
+    public synchronized void record(final StageTimings timings) {
+        items++;
+        for (Map.Entry<String, StageTimings.Stage> entry : timings.getStages().entrySet()) {
+            window(entry.getKey()).add(entry.getValue().nanos, entry.getValue().bytes);
+        }
+        peakBitmapBytes = Math.max(peakBitmapBytes, timings.getPeakBitmapBytes());
+    }
+
+    /**
+     * Adds a single sample for a stage that is not tied to one item, such as a whole pick.
+     * @param bytes the bytes processed, or -1 if not applicable
+     */
+    public synchronized void record(final String stage, final long nanos, final long bytes) {
+        window(stage).add(nanos, bytes);
+    }
+
+    public synchronized void reset() {
+        stages.clear();
+        items = 0;
+        peakBitmapBytes = 0;
+    }
+
+    public synchronized JsonArgs getStats() {
+        final JsonArgs stageStats = new JsonArgs();
+        for (Map.Entry<String, StageWindow> entry : stages.entrySet()) {
+            stageStats.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return new JsonArgs()
+            .put("items", items)
+            .put("peakBitmapBytes", peakBitmapBytes)
+            .put("windowSize", windowSize)
+            .put("stages", stageStats);
+    }
+
+    static double toMillis(final long nanos) {
+        return Math.round(nanos / 100000.0) / 10.0;
+    }
+
+    /**
+     * Nearest-rank percentile of sorted samples.
+     */
+    private static long percentile(final long[] sorted, final int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private StageWindow window(final String stage) {
+        StageWindow window = stages.get(stage);
+        if (window == null) {
+            window = new StageWindow(windowSize);
+            stages.put(stage, window);
+        }
+        return window;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reports how many bytes have been read from the wrapped stream, e.g. while a cloud provider
+ * downloads an item. Reports are sent every REPORT_STEP bytes and at the end of the stream;
+ * the listener decides how often to pass them on.
+ */
+public class ProgressInputStream extends CountingInputStream {
+
+    private static final int REPORT_STEP = 64 * 1024;
+
+    public interface Listener {
+        /**
+         * @param bytesRead the bytes read from this stream so far
+         */
+        void onBytesRead(long bytesRead);
+    }
+
+    private final Listener listener;
+    private long lastReported = 0;
+
+    public ProgressInputStream(final InputStream in, final Listener listener) {
+        super(in);
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int result = super.read();
+        report(result < 0);
+        return result;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int result = super.read(buffer, offset, length);
+        report(result < 0);
+        return result;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = super.skip(n);
+        report(false);
+        return skipped;
+    }
+
+    private void report(final boolean ended) {
+        final long count = getCount();
+        if (count - lastReported >= REPORT_STEP || (ended && count > lastReported)) {
+            lastReported = count;
+            listener.onBytesRead(count);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.os.ParcelFileDescriptor;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * One open of a picked item, read several times: header parsing (EXIF, dimensions) followed by the
+ * full decode. Sources backed by a seekable file descriptor are rewound by seeking. Anything else,
+ * such as a pipe from a cloud provider, is read through a buffered stream marked at its start, so
+ * the header passes can be replayed from memory and the final pass consumes the stream.
+ * Only when a pass read further than the mark limit is the item opened again.
+ * Read progress is counted between the raw stream and the buffer, so it reflects the bytes
+ * actually read from the provider and the type of the raw stream stays visible for seeking.
+ */
+public class RewindableSource implements Closeable {
+
+    // Enough for the EXIF and dimension headers of the supported formats
+    private static final int MARK_LIMIT = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MediaSource mediaSource;
+    private final String uri;
+    private final ProgressInputStream.Listener listener;
+    private InputStream raw;
+    private FileChannel channel;
+    private BufferedInputStream buffered;
+    private boolean started = false;
+    private int opens = 0;
+
+    public RewindableSource(final MediaSource mediaSource, final String uri) throws IOException {
+        this(mediaSource, uri, null);
+    }
+
+    /**
+     * @param listener receives the bytes read from the item in the current pass, or null
+     */
+    public RewindableSource(final MediaSource mediaSource, final String uri,
+                            final ProgressInputStream.Listener listener) throws IOException {
+        this.mediaSource = mediaSource;
+        this.uri = uri;
+        this.listener = listener;
+        open();
+    }
+
+    /**
+     * Returns a stream over the item from its first byte. Closing the returned stream has no effect;
+     * the item stays open until {@link #close()}. Streams returned earlier must not be used anymore.
+     */
+    public InputStream rewind() throws IOException {
+        if (channel != null) {
+            if (started) {
+                channel.position(0);
+            }
+            buffered = new BufferedInputStream(counted(), BUFFER_SIZE);
+        } else if (started) {
+            try {
+                buffered.reset();
+            } catch (IOException e) {
+                // A previous pass read past the mark limit
+                android.util.Log.d("ActualizeImagePicker", "RewindableSource: reopening " + uri);
+                closeRaw();
+                open();
+            }
+        }
+        started = true;
+        if (channel == null) {
+            buffered.mark(MARK_LIMIT);
+        }
+        // The mark belongs to this source, so readers that need one must buffer on their own
+        return new FilterInputStream(buffered) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+
+            @Override
+            public void mark(int readLimit) {}
+
+            @Override
+            public void reset() throws IOException {
+                throw new IOException("mark/reset not supported");
+            }
+
+            @Override
+            public void close() {
+                // Closed by RewindableSource.close()
+            }
+        };
+    }
+
+    /**
+     * @return how many times the item has been opened, 1 unless a pass exceeded the mark limit
+     */
+    public int getOpenCount() {
+        return opens;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeRaw();
+    }
+
+    private void open() throws IOException {
+        raw = mediaSource.openInputStream(uri);
+        opens++;
+        started = false;
+        channel = null;
+        // Asset descriptors may start at an offset into a larger file, so only plain descriptors are seeked
+        final Class<?> type = raw.getClass();
+        if (type == FileInputStream.class || type == ParcelFileDescriptor.AutoCloseInputStream.class) {
+            try {
+                final FileChannel fileChannel = ((FileInputStream) raw).getChannel();
+                if (fileChannel.position() == 0) {
+                    channel = fileChannel;
+                }
+            } catch (IOException e) {
+                // Pipes and sockets can't seek
+            }
+        }
+        buffered = new BufferedInputStream(counted(), BUFFER_SIZE);
+    }
+
+    /**
+     * @return the raw stream, counting from its current position if progress is reported
+     */
+    private InputStream counted() {
+        return listener != null ? new ProgressInputStream(raw, listener) : raw;
+    }
+
+    private void closeRaw() throws IOException {
+        if (raw != null) {
+            final InputStream stream = raw;
+            raw = null;
+            stream.close();
+        }
+    }
+}
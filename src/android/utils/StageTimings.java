@@ -0,0 +1,108 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time and bytes spent in each stage of processing one item, plus the peak size of the
+ * bitmaps it held at once. Used by a single worker thread, then handed to {@link PipelineMetrics}.
+ */
+public class StageTimings {
+
+    public static final String METADATA = "metadata";
+    public static final String EXIF = "exif";
+    // Time spent waiting for the memory budget, with the estimated bitmap bytes as its bytes
+    public static final String ADMISSION = "admission";
+    public static final String DECODE = "decode";
+    public static final String RESIZE = "resize";
+    public static final String ROTATE = "rotate";
+    public static final String ENCODE = "encode";
+    public static final String PASSTHROUGH = "passthrough";
+    public static final String TRANSCODE = "transcode";
+    public static final String COPY = "copy";
+    public static final String HASH = "hash";
+    public static final String TOTAL = "total";
+
+    static class Stage {
+        long nanos = 0;
+        long bytes = -1;
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private long peakBitmapBytes = 0;
+
+    /**
+     * @return the start time to pass to {@link #end}
+     */
+    public long begin() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since startNanos to a stage.
+     */
+    public void end(final String stage, final long startNanos) {
+        stage(stage).nanos += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Adds the time elapsed since startNanos and the bytes processed to a stage.
+     */
+    public void end(final String stage, final long startNanos, final long bytes) {
+        end(stage, startNanos);
+        addBytes(stage, bytes);
+    }
+
+    public void addBytes(final String stage, final long bytes) {
+        if (bytes >= 0) {
+            final Stage entry = stage(stage);
+            entry.bytes = Math.max(0, entry.bytes) + bytes;
+        }
+    }
+
+    /**
+     * Records the size of the bitmaps held at the same time, keeping the largest.
+     */
+    public void recordBitmapBytes(final long bytes) {
+        peakBitmapBytes = Math.max(peakBitmapBytes, bytes);
+    }
+
+    Map<String, Stage> getStages() {
+        return stages;
+    }
+
+    long getPeakBitmapBytes() {
+        return peakBitmapBytes;
+    }
+
+    /**
+     * @return { stage: { ms, bytes? }, ..., peakBitmapBytes }, for the optional timings block of a result
+     */
+    public JsonArgs toJson() {
+        final JsonArgs json = new JsonArgs();
+        for (Map.Entry<String, Stage> entry : stages.entrySet()) {
+            final JsonArgs stage = new JsonArgs().put("ms", PipelineMetrics.toMillis(entry.getValue().nanos));
+            if (entry.getValue().bytes >= 0) {
+                stage.put("bytes", entry.getValue().bytes);
+            }
+            json.put(entry.getKey(), stage);
+        }
+        json.put("peakBitmapBytes", peakBitmapBytes);
+        return json;
+    }
+
+    private Stage stage(final String name) {
+        Stage stage = stages.get(name);
+        if (stage == null) {
+            stage = new Stage();
+            stages.put(name, stage);
+        }
+        return stage;
+    }
+}
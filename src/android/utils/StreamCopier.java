@@ -0,0 +1,250 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies content URIs to local files.
+ * Seekable sources are copied with FileChannel.transferTo, which lets the kernel move the bytes
+ * without passing them through the Java heap; pipes and other non-seekable providers fall back
+ * to a large-buffer stream copy. Output is written to a temporary file and renamed on success,
+ * so a failed copy never leaves a partial file behind.
+ */
+public class StreamCopier {
+
+    public static final String METHOD_CHANNEL = "channel";
+    public static final String METHOD_STREAM = "stream";
+
+    private static final int FALLBACK_BUFFER_SIZE = 1024 * 1024;
+    // Bytes moved per transferTo call when progress is reported
+    private static final long TRANSFER_STEP = 8L * 1024 * 1024;
+
+    /**
+     * Statistics about a completed copy.
+     */
+    public static class Result {
+        public final long bytes;
+        public final long elapsedNanos;
+        public final String method;
+
+        Result(final long bytes, final long elapsedNanos, final String method) {
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+            this.method = method;
+        }
+
+        /**
+         * @return the copy throughput in megabytes per second
+         */
+        public double throughputMBps() {
+            if (elapsedNanos <= 0) {
+                return 0;
+            }
+            return (bytes / (1024.0 * 1024.0)) / (elapsedNanos / 1e9);
+        }
+
+        public JsonArgs toJson() {
+            return new JsonArgs()
+                .put("method", method)
+                .put("bytes", bytes)
+                .put("timeMs", elapsedNanos / 1000000L)
+                .put("throughputMBps", Math.round(throughputMBps() * 10.0) / 10.0);
+        }
+    }
+
+    /**
+     * Copies a content URI to the destination file atomically.
+     * @param resolver the content resolver used to open the source
+     * @param source the content URI to copy
+     * @param destination the final output file; it only appears once the copy has completed
+     * @return the copy statistics
+     * @throws IOException if the source cannot be read or the destination cannot be written
+     */
+    public static Result copy(final ContentResolver resolver, final Uri source, final File destination) throws IOException {
+        return copy(resolver, source, destination, null);
+    }
+
+    /**
+     * Copies a content URI to the destination file atomically, hashing the bytes on their way through.
+     * Hashing needs the bytes in user space, so the copy always takes the stream path.
+     * @param hasher hashes the copied bytes, or null to allow the channel copy
+     * @return the copy statistics
+     * @throws IOException if the source cannot be read or the destination cannot be written
+     */
+    public static Result copy(final ContentResolver resolver, final Uri source, final File destination,
+                              final ContentHasher hasher) throws IOException {
+        return copy(resolver, source, destination, hasher, null);
+    }
+
+    /**
+     * Same as {@link #copy(ContentResolver, Uri, File, ContentHasher)}, reporting the bytes read from the source.
+     * @param listener receives the bytes copied so far, or null
+     */
+    public static Result copy(final ContentResolver resolver, final Uri source, final File destination,
+                              final ContentHasher hasher, final ProgressInputStream.Listener listener)
+            throws IOException {
+        return copy(resolver, source, destination, hasher, listener, null);
+    }
+
+    /**
+     * Same as {@link #copy(ContentResolver, Uri, File, ContentHasher, ProgressInputStream.Listener)},
+     * registering the source descriptor so that closing the streams unblocks a stalled copy.
+     * @param streams receives the source descriptor or stream, or null
+     */
+    public static Result copy(final ContentResolver resolver, final Uri source, final File destination,
+                              final ContentHasher hasher, final ProgressInputStream.Listener listener,
+                              final ItemStreams streams) throws IOException {
+        final File tempFile = new File(destination.getPath() + ".part");
+        final long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            final Result result = copyToFile(resolver, source, tempFile, hasher, listener, streams, start);
+            if (!tempFile.renameTo(destination)) {
+                throw new IOException("Could not move " + tempFile + " to " + destination);
+            }
+            completed = true;
+            return result;
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Copies a stream to the destination file atomically, e.g. for sources that are not content URIs.
+     * The stream is consumed but not closed.
+     * @return the copy statistics
+     * @throws IOException if the source cannot be read or the destination cannot be written
+     */
+    public static Result copy(final InputStream source, final File destination) throws IOException {
+        final File tempFile = new File(destination.getPath() + ".part");
+        final long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            final FileOutputStream outputStream = new FileOutputStream(tempFile);
+            final long bytes;
+            try {
+                bytes = copyStream(source, outputStream);
+            } finally {
+                outputStream.close();
+            }
+            if (!tempFile.renameTo(destination)) {
+                throw new IOException("Could not move " + tempFile + " to " + destination);
+            }
+            completed = true;
+            return new Result(bytes, System.nanoTime() - start, METHOD_STREAM);
+        } finally {
+            if (!completed) {
+                tempFile.delete();
+            }
+        }
+    }
+
+    private static Result copyToFile(final ContentResolver resolver, final Uri source, final File target,
+                                     final ContentHasher hasher, final ProgressInputStream.Listener listener,
+                                     final ItemStreams streams, final long start) throws IOException {
+        ParcelFileDescriptor descriptor = null;
+        try {
+            descriptor = resolver.openFileDescriptor(source, "r");
+        } catch (FileNotFoundException | SecurityException | UnsupportedOperationException e) {
+            // Some providers only support openInputStream
+        }
+
+        final InputStream inputStream;
+        final long statSize;
+        if (descriptor != null) {
+            statSize = descriptor.getStatSize();
+            inputStream = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+        } else {
+            statSize = -1;
+            inputStream = resolver.openInputStream(source);
+            if (inputStream == null) {
+                throw new IOException("Could not open input stream for " + source);
+            }
+        }
+        if (streams != null) {
+            streams.add(inputStream);
+        }
+
+        final FileOutputStream outputStream = new FileOutputStream(target);
+        try {
+            if (hasher == null && statSize >= 0 && inputStream instanceof FileInputStream) {
+                final long bytes = transfer(((FileInputStream) inputStream).getChannel(), outputStream.getChannel(),
+                    statSize, listener);
+                return new Result(bytes, System.nanoTime() - start, METHOD_CHANNEL);
+            }
+
+            return new Result(copyStream(listener != null ? new ProgressInputStream(inputStream, listener) : inputStream,
+                hasher != null ? hasher.wrap(outputStream) : outputStream), System.nanoTime() - start, METHOD_STREAM);
+        } finally {
+            try {
+                inputStream.close();
+            } finally {
+                outputStream.close();
+            }
+        }
+    }
+
+    private static long copyStream(final InputStream inputStream, final OutputStream outputStream) throws IOException {
+        final byte[] buffer = new byte[FALLBACK_BUFFER_SIZE];
+        long bytes = 0;
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Copy was canceled");
+            }
+            outputStream.write(buffer, 0, bytesRead);
+            bytes += bytesRead;
+        }
+        return bytes;
+    }
+
+    /**
+     * Moves the first size bytes of the source channel to the target channel.
+     * @throws InterruptedIOException if the copying thread is interrupted
+     * @throws IOException if the source ends before size bytes, so a copy is never silently truncated
+     */
+    static long transfer(final FileChannel source, final FileChannel target, final long size,
+                         final ProgressInputStream.Listener listener) throws IOException {
+        long position = 0;
+        while (position < size) {
+            final long count = listener != null ? Math.min(TRANSFER_STEP, size - position) : size - position;
+            final long transferred;
+            try {
+                transferred = source.transferTo(position, count, target);
+            } catch (ClosedByInterruptException e) {
+                // The worker was interrupted by a cancel, which also closed the channels
+                final InterruptedIOException canceled = new InterruptedIOException("Copy was canceled");
+                canceled.initCause(e);
+                throw canceled;
+            }
+            if (transferred <= 0) {
+                throw new IOException("Source changed while copying: " + position + " of " + size + " bytes");
+            }
+            position += transferred;
+            if (listener != null) {
+                listener.onBytesRead(position);
+            }
+        }
+        return position;
+    }
+}
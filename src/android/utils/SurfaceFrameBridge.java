@@ -0,0 +1,295 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.graphics.SurfaceTexture;
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLExt;
+import android.opengl.EGLSurface;
+import android.opengl.GLES11Ext;
+import android.opengl.GLES20;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Surface;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Moves decoded video frames to an encoder's input surface on the GPU.
+ * The decoder renders into a SurfaceTexture, and each frame is drawn as a textured quad into
+ * an EGL window surface wrapping the encoder's input surface, which scales it to the output size.
+ * Frames never pass through the Java heap.
+ * All methods except the constructor must be called from the thread that created the bridge,
+ * which holds the EGL context.
+ */
+public class SurfaceFrameBridge implements TranscodeBackend.FrameBridge {
+
+    private static final int EGL_RECORDABLE_ANDROID = 0x3142;
+    private static final long FRAME_TIMEOUT_MS = 2500;
+
+    private static final String VERTEX_SHADER =
+        "uniform mat4 uTexMatrix;\n" +
+        "attribute vec4 aPosition;\n" +
+        "attribute vec4 aTexCoord;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "void main() {\n" +
+        "    gl_Position = aPosition;\n" +
+        "    vTexCoord = (uTexMatrix * aTexCoord).xy;\n" +
+        "}\n";
+
+    private static final String FRAGMENT_SHADER =
+        "#extension GL_OES_EGL_image_external : require\n" +
+        "precision mediump float;\n" +
+        "varying vec2 vTexCoord;\n" +
+        "uniform samplerExternalOES sTexture;\n" +
+        "void main() {\n" +
+        "    gl_FragColor = texture2D(sTexture, vTexCoord);\n" +
+        "}\n";
+
+    // Full-screen triangle strip: x, y, u, v
+    private static final float[] QUAD = {
+        -1f, -1f, 0f, 0f,
+         1f, -1f, 1f, 0f,
+        -1f,  1f, 0f, 1f,
+         1f,  1f, 1f, 1f,
+    };
+
+    private final int width;
+    private final int height;
+    private final float[] texMatrix = new float[16];
+    private final Object frameLock = new Object();
+    private boolean frameAvailable = false;
+
+    private EGLDisplay eglDisplay = EGL14.EGL_NO_DISPLAY;
+    private EGLContext eglContext = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface eglSurface = EGL14.EGL_NO_SURFACE;
+    private int program;
+    private int textureId;
+    private int positionLocation;
+    private int texCoordLocation;
+    private int texMatrixLocation;
+    private FloatBuffer quad;
+    private HandlerThread callbackThread;
+    private SurfaceTexture surfaceTexture;
+    private Surface decoderSurface;
+
+    /**
+     * @param encoderSurface the input surface of the encoder
+     * @param width the output width
+     * @param height the output height
+     * @throws IOException if EGL or the GL program could not be set up
+     */
+    public SurfaceFrameBridge(final Surface encoderSurface, final int width, final int height) throws IOException {
+        this.width = width;
+        this.height = height;
+        try {
+            setUpEgl(encoderSurface);
+            setUpProgram();
+
+            // Frame callbacks get a thread of their own, so they arrive even while the caller's looper is busy
+            callbackThread = new HandlerThread("ActualizeImagePicker-frames");
+            callbackThread.start();
+            surfaceTexture = new SurfaceTexture(textureId);
+            surfaceTexture.setOnFrameAvailableListener(new SurfaceTexture.OnFrameAvailableListener() {
+                @Override
+                public void onFrameAvailable(SurfaceTexture texture) {
+                    synchronized (frameLock) {
+                        frameAvailable = true;
+                        frameLock.notifyAll();
+                    }
+                }
+            }, new Handler(callbackThread.getLooper()));
+            decoderSurface = new Surface(surfaceTexture);
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public Surface getDecoderSurface() {
+        return decoderSurface;
+    }
+
+    @Override
+    public void awaitFrame() throws IOException {
+        synchronized (frameLock) {
+            final long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+            while (!frameAvailable) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new IOException("Timed out waiting for a decoded frame");
+                }
+                try {
+                    frameLock.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a decoded frame");
+                }
+            }
+            frameAvailable = false;
+        }
+        surfaceTexture.updateTexImage();
+    }
+
+    @Override
+    public void drawFrame(final long presentationTimeNs) {
+        surfaceTexture.getTransformMatrix(texMatrix);
+
+        GLES20.glViewport(0, 0, width, height);
+        GLES20.glClearColor(0f, 0f, 0f, 1f);
+        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT);
+        GLES20.glUseProgram(program);
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+
+        quad.position(0);
+        GLES20.glVertexAttribPointer(positionLocation, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(positionLocation);
+        quad.position(2);
+        GLES20.glVertexAttribPointer(texCoordLocation, 2, GLES20.GL_FLOAT, false, 16, quad);
+        GLES20.glEnableVertexAttribArray(texCoordLocation);
+        GLES20.glUniformMatrix4fv(texMatrixLocation, 1, false, texMatrix, 0);
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, 4);
+
+        EGLExt.eglPresentationTimeANDROID(eglDisplay, eglSurface, presentationTimeNs);
+        EGL14.eglSwapBuffers(eglDisplay, eglSurface);
+    }
+
+    @Override
+    public void release() {
+        if (decoderSurface != null) {
+            decoderSurface.release();
+            decoderSurface = null;
+        }
+        if (surfaceTexture != null) {
+            surfaceTexture.release();
+            surfaceTexture = null;
+        }
+        if (callbackThread != null) {
+            callbackThread.quitSafely();
+            callbackThread = null;
+        }
+        if (eglDisplay != EGL14.EGL_NO_DISPLAY) {
+            if (program != 0) {
+                GLES20.glDeleteProgram(program);
+                program = 0;
+            }
+            if (textureId != 0) {
+                GLES20.glDeleteTextures(1, new int[] {textureId}, 0);
+                textureId = 0;
+            }
+            EGL14.eglMakeCurrent(eglDisplay, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            if (eglSurface != EGL14.EGL_NO_SURFACE) {
+                EGL14.eglDestroySurface(eglDisplay, eglSurface);
+            }
+            if (eglContext != EGL14.EGL_NO_CONTEXT) {
+                EGL14.eglDestroyContext(eglDisplay, eglContext);
+            }
+            // The default display is shared with the WebView's renderer, so it is not terminated
+            EGL14.eglReleaseThread();
+        }
+        eglDisplay = EGL14.EGL_NO_DISPLAY;
+        eglContext = EGL14.EGL_NO_CONTEXT;
+        eglSurface = EGL14.EGL_NO_SURFACE;
+    }
+
+    private void setUpEgl(final Surface encoderSurface) throws IOException {
+        eglDisplay = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        if (eglDisplay == EGL14.EGL_NO_DISPLAY) {
+            throw new IOException("No EGL display");
+        }
+        final int[] version = new int[2];
+        if (!EGL14.eglInitialize(eglDisplay, version, 0, version, 1)) {
+            eglDisplay = EGL14.EGL_NO_DISPLAY;
+            throw new IOException("Could not initialize EGL");
+        }
+
+        final int[] configAttributes = {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_RENDERABLE_TYPE, EGL14.EGL_OPENGL_ES2_BIT,
+            EGL_RECORDABLE_ANDROID, 1,
+            EGL14.EGL_NONE
+        };
+        final EGLConfig[] configs = new EGLConfig[1];
+        final int[] configCount = new int[1];
+        if (!EGL14.eglChooseConfig(eglDisplay, configAttributes, 0, configs, 0, 1, configCount, 0)
+                || configCount[0] == 0) {
+            throw new IOException("No recordable EGL config");
+        }
+
+        final int[] contextAttributes = {EGL14.EGL_CONTEXT_CLIENT_VERSION, 2, EGL14.EGL_NONE};
+        eglContext = EGL14.eglCreateContext(eglDisplay, configs[0], EGL14.EGL_NO_CONTEXT, contextAttributes, 0);
+        if (eglContext == null || eglContext == EGL14.EGL_NO_CONTEXT) {
+            eglContext = EGL14.EGL_NO_CONTEXT;
+            throw new IOException("Could not create EGL context: " + EGL14.eglGetError());
+        }
+        eglSurface = EGL14.eglCreateWindowSurface(eglDisplay, configs[0], encoderSurface, new int[] {EGL14.EGL_NONE}, 0);
+        if (eglSurface == null || eglSurface == EGL14.EGL_NO_SURFACE) {
+            eglSurface = EGL14.EGL_NO_SURFACE;
+            throw new IOException("Could not create EGL surface: " + EGL14.eglGetError());
+        }
+        if (!EGL14.eglMakeCurrent(eglDisplay, eglSurface, eglSurface, eglContext)) {
+            throw new IOException("Could not make EGL context current: " + EGL14.eglGetError());
+        }
+    }
+
+    private void setUpProgram() throws IOException {
+        program = GLES20.glCreateProgram();
+        final int vertexShader = compileShader(GLES20.GL_VERTEX_SHADER, VERTEX_SHADER);
+        final int fragmentShader = compileShader(GLES20.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        GLES20.glAttachShader(program, vertexShader);
+        GLES20.glAttachShader(program, fragmentShader);
+        GLES20.glLinkProgram(program);
+        GLES20.glDeleteShader(vertexShader);
+        GLES20.glDeleteShader(fragmentShader);
+
+        final int[] status = new int[1];
+        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, status, 0);
+        if (status[0] != GLES20.GL_TRUE) {
+            throw new IOException("Could not link program: " + GLES20.glGetProgramInfoLog(program));
+        }
+        positionLocation = GLES20.glGetAttribLocation(program, "aPosition");
+        texCoordLocation = GLES20.glGetAttribLocation(program, "aTexCoord");
+        texMatrixLocation = GLES20.glGetUniformLocation(program, "uTexMatrix");
+
+        final int[] textures = new int[1];
+        GLES20.glGenTextures(1, textures, 0);
+        textureId = textures[0];
+        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+
+        quad = ByteBuffer.allocateDirect(QUAD.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        quad.put(QUAD).position(0);
+    }
+
+    private static int compileShader(final int type, final String source) throws IOException {
+        final int shader = GLES20.glCreateShader(type);
+        GLES20.glShaderSource(shader, source);
+        GLES20.glCompileShader(shader);
+        final int[] status = new int[1];
+        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            final String log = GLES20.glGetShaderInfoLog(shader);
+            GLES20.glDeleteShader(shader);
+            throw new IOException("Could not compile shader: " + log);
+        }
+        return shader;
+    }
+}
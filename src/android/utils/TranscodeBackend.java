@@ -0,0 +1,101 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The media primitives used by {@link VideoTranscoder}.
+ * The pipeline only talks to these interfaces, so it can run against the MediaCodec-backed
+ * {@link AndroidTranscodeBackend} on a device, or against fakes that produce and consume
+ * buffers in memory on the JVM.
+ */
+public interface TranscodeBackend {
+
+    /**
+     * Reads encoded samples from the source, one selected track at a time.
+     */
+    interface Extractor {
+        int getTrackCount();
+        MediaFormat getTrackFormat(int track);
+        void selectTrack(int track);
+        int readSampleData(ByteBuffer buffer, int offset);
+        long getSampleTime();
+        int getSampleFlags();
+        boolean advance();
+        void release();
+    }
+
+    /**
+     * An encoder or decoder, following the MediaCodec buffer contract.
+     */
+    interface Codec {
+        void configure(MediaFormat format, Surface surface, boolean encoder);
+        Surface createInputSurface();
+        void start();
+        int dequeueInputBuffer(long timeoutUs);
+        ByteBuffer getInputBuffer(int index);
+        void queueInputBuffer(int index, int size, long presentationTimeUs, int flags);
+        int dequeueOutputBuffer(MediaCodec.BufferInfo info, long timeoutUs);
+        ByteBuffer getOutputBuffer(int index);
+        void releaseOutputBuffer(int index, boolean render);
+        MediaFormat getOutputFormat();
+        void signalEndOfInputStream();
+        void release();
+    }
+
+    /**
+     * Carries decoded frames from the decoder's output surface to the encoder's input surface,
+     * scaling them to the output size.
+     */
+    interface FrameBridge {
+        Surface getDecoderSurface();
+        /**
+         * Waits until the decoder has rendered a frame to the decoder surface.
+         * @throws IOException if no frame arrives in time
+         */
+        void awaitFrame() throws IOException;
+        void drawFrame(long presentationTimeNs);
+        void release();
+    }
+
+    /**
+     * Writes encoded samples to the output container.
+     */
+    interface Muxer {
+        int addTrack(MediaFormat format);
+        void setOrientationHint(int degrees);
+        void start();
+        void writeSampleData(int track, ByteBuffer buffer, MediaCodec.BufferInfo info);
+        void stop();
+        void release();
+    }
+
+    /**
+     * Opens a new extractor on the source. Each call returns an independent read position.
+     */
+    Extractor openExtractor() throws IOException;
+
+    /**
+     * @return the size of the source in bytes, or -1 if unknown
+     */
+    long getSourceSize();
+
+    Codec createDecoder(String mimeType) throws IOException;
+
+    Codec createEncoder(String mimeType) throws IOException;
+
+    FrameBridge createFrameBridge(Surface encoderSurface, int width, int height) throws IOException;
+
+    Muxer createMuxer(File outputFile) throws IOException;
+}
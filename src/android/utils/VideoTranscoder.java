@@ -0,0 +1,448 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Transcodes a video to H.264 MP4 with a streaming extractor -> decoder -> encoder -> muxer
+ * pipeline. Decoded frames stay on the GPU and are scaled on their way to the encoder, and
+ * the audio track is copied without re-encoding, interleaved with the video by timestamp.
+ * The rotation of the source is kept as an orientation hint rather than rotating pixels.
+ */
+public class VideoTranscoder {
+
+    private static final String OUTPUT_MIME_TYPE = "video/avc";
+    private static final long TIMEOUT_US = 10000;
+    private static final long STALL_TIMEOUT_NS = 10000L * 1000000L;
+    private static final int DEFAULT_FRAME_RATE = 30;
+    private static final int I_FRAME_INTERVAL_SECONDS = 2;
+    private static final int DEFAULT_AUDIO_BUFFER_SIZE = 256 * 1024;
+    // Sources within this margin of the target bitrate are copied rather than re-encoded
+    private static final double BITRATE_TOLERANCE = 1.2;
+
+    /**
+     * Receives the fraction of the video that has been encoded, from 0 to 1.
+     */
+    public interface ProgressListener {
+        void onProgress(double fraction);
+    }
+
+    /**
+     * Resolution and bitrate targets of a videoQuality preset.
+     */
+    public static class Preset {
+        public final String name;
+        // Maximum length of the longer side, or 0 to keep the source resolution
+        public final int maxDimension;
+        public final int bitrate;
+
+        Preset(final String name, final int maxDimension, final int bitrate) {
+            this.name = name;
+            this.maxDimension = maxDimension;
+            this.bitrate = bitrate;
+        }
+
+        /**
+         * @param quality "low", "medium", "high", "highest" or "passthrough"
+         * @return the preset, or null for "passthrough"
+         */
+        public static Preset forQuality(final String quality) {
+            switch (quality) {
+                case "passthrough":
+                    return null;
+                case "low":
+                    return new Preset("low", 640, 1000000);
+                case "high":
+                    return new Preset("high", 1280, 5000000);
+                case "highest":
+                    return new Preset("highest", 0, 12000000);
+                case "medium":
+                default:
+                    return new Preset("medium", 960, 2500000);
+            }
+        }
+
+        /**
+         * @return the factor by which a video of the given size must be scaled down, at most 1
+         */
+        double scaleFor(final int width, final int height) {
+            final int longSide = Math.max(width, height);
+            return maxDimension > 0 && longSide > maxDimension ? (double) maxDimension / longSide : 1.0;
+        }
+    }
+
+    /**
+     * Statistics about a completed transcode.
+     */
+    public static class Result {
+        public final String preset;
+        public final int width;
+        public final int height;
+        public final int bitrate;
+        public final long bytes;
+        public final long elapsedNanos;
+
+        Result(final String preset, final int width, final int height, final int bitrate, final long bytes,
+               final long elapsedNanos) {
+            this.preset = preset;
+            this.width = width;
+            this.height = height;
+            this.bitrate = bitrate;
+            this.bytes = bytes;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public JsonArgs toJson() {
+            return new JsonArgs()
+                .put("preset", preset)
+                .put("width", width)
+                .put("height", height)
+                .put("bitrate", bitrate)
+                .put("bytes", bytes)
+                .put("timeMs", elapsedNanos / 1000000L);
+        }
+    }
+
+    private final TranscodeBackend backend;
+
+    public VideoTranscoder(final TranscodeBackend backend) {
+        this.backend = backend;
+    }
+
+    /**
+     * Transcodes the source to the destination file atomically.
+     * Sources that already fit the preset's resolution and bitrate are not transcoded.
+     * @param destination the final output file; it only appears once the transcode has completed
+     * @param preset the resolution and bitrate targets
+     * @param listener receives the encoding progress, or null
+     * @return the transcode statistics, or null if the source already fits the preset
+     * @throws IOException if the source cannot be transcoded
+     */
+    public Result transcode(final File destination, final Preset preset, final ProgressListener listener)
+            throws IOException {
+        final long start = System.nanoTime();
+        final TranscodeBackend.Extractor videoExtractor = backend.openExtractor();
+        TranscodeBackend.Extractor audioExtractor = null;
+        try {
+            final int videoTrack = findTrack(videoExtractor, "video/");
+            if (videoTrack < 0) {
+                throw new IOException("No video track found");
+            }
+            final MediaFormat inputFormat = videoExtractor.getTrackFormat(videoTrack);
+            final int sourceWidth = getInteger(inputFormat, MediaFormat.KEY_WIDTH, 0);
+            final int sourceHeight = getInteger(inputFormat, MediaFormat.KEY_HEIGHT, 0);
+            final long durationUs = inputFormat.containsKey(MediaFormat.KEY_DURATION)
+                ? inputFormat.getLong(MediaFormat.KEY_DURATION) : 0;
+            if (sourceWidth <= 0 || sourceHeight <= 0) {
+                throw new IOException("Unknown video size");
+            }
+
+            int sourceBitrate = getInteger(inputFormat, MediaFormat.KEY_BIT_RATE, 0);
+            final long sourceSize = backend.getSourceSize();
+            if (sourceBitrate <= 0 && sourceSize > 0 && durationUs > 0) {
+                // Overall bitrate, including audio; an upper bound for the video track
+                sourceBitrate = (int) Math.min(Integer.MAX_VALUE, sourceSize * 8L * 1000000L / durationUs);
+            }
+
+            final double scale = preset.scaleFor(sourceWidth, sourceHeight);
+            if (scale >= 1.0 && sourceBitrate > 0 && sourceBitrate <= preset.bitrate * BITRATE_TOLERANCE) {
+                return null;
+            }
+
+            final int width = evenDimension(sourceWidth * scale);
+            final int height = evenDimension(sourceHeight * scale);
+            final int bitrate = sourceBitrate > 0 ? Math.min(preset.bitrate, sourceBitrate) : preset.bitrate;
+            final MediaFormat outputFormat = MediaFormat.createVideoFormat(OUTPUT_MIME_TYPE, width, height);
+            outputFormat.setInteger(MediaFormat.KEY_COLOR_FORMAT, MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface);
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+            outputFormat.setInteger(MediaFormat.KEY_FRAME_RATE, getInteger(inputFormat, MediaFormat.KEY_FRAME_RATE, DEFAULT_FRAME_RATE));
+            outputFormat.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS);
+
+            videoExtractor.selectTrack(videoTrack);
+            AudioRemuxer audio = null;
+            audioExtractor = backend.openExtractor();
+            final int audioTrack = findTrack(audioExtractor, "audio/");
+            if (audioTrack >= 0) {
+                audio = new AudioRemuxer(audioExtractor, audioTrack);
+            }
+
+            final File tempFile = new File(destination.getPath() + ".part");
+            boolean completed = false;
+            try {
+                encode(videoExtractor, inputFormat, outputFormat, audio, tempFile,
+                    getInteger(inputFormat, MediaFormat.KEY_ROTATION, 0), durationUs, listener);
+                if (!tempFile.renameTo(destination)) {
+                    throw new IOException("Could not move " + tempFile + " to " + destination);
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    tempFile.delete();
+                }
+            }
+            return new Result(preset.name, width, height, bitrate, destination.length(), System.nanoTime() - start);
+        } finally {
+            videoExtractor.release();
+            if (audioExtractor != null) {
+                audioExtractor.release();
+            }
+        }
+    }
+
+    private void encode(final TranscodeBackend.Extractor extractor, final MediaFormat inputFormat,
+                        final MediaFormat outputFormat, final AudioRemuxer audio, final File outputFile,
+                        final int rotation, final long durationUs, final ProgressListener listener)
+            throws IOException {
+        TranscodeBackend.Codec encoder = null;
+        TranscodeBackend.Codec decoder = null;
+        TranscodeBackend.FrameBridge bridge = null;
+        TranscodeBackend.Muxer muxer = null;
+        Surface encoderSurface = null;
+        try {
+            encoder = backend.createEncoder(OUTPUT_MIME_TYPE);
+            encoder.configure(outputFormat, null, true);
+            encoderSurface = encoder.createInputSurface();
+            bridge = backend.createFrameBridge(encoderSurface,
+                outputFormat.getInteger(MediaFormat.KEY_WIDTH), outputFormat.getInteger(MediaFormat.KEY_HEIGHT));
+            encoder.start();
+
+            decoder = backend.createDecoder(inputFormat.getString(MediaFormat.KEY_MIME));
+            decoder.configure(inputFormat, bridge.getDecoderSurface(), false);
+            decoder.start();
+
+            muxer = backend.createMuxer(outputFile);
+            muxer.setOrientationHint(rotation);
+
+            final MediaCodec.BufferInfo decoderInfo = new MediaCodec.BufferInfo();
+            final MediaCodec.BufferInfo encoderInfo = new MediaCodec.BufferInfo();
+            int muxerTrack = -1;
+            boolean inputDone = false;
+            boolean decoderDone = false;
+            boolean encoderDone = false;
+            double reportedProgress = 0;
+            long lastActivity = System.nanoTime();
+
+            while (!encoderDone) {
+                // A canceled pick interrupts the worker; the partial output is deleted below
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedIOException("Transcoding was canceled");
+                }
+                if (!inputDone) {
+                    inputDone = feedDecoder(extractor, decoder);
+                }
+
+                if (!decoderDone) {
+                    final int index = decoder.dequeueOutputBuffer(decoderInfo, TIMEOUT_US);
+                    if (index >= 0) {
+                        final boolean render = decoderInfo.size > 0;
+                        decoder.releaseOutputBuffer(index, render);
+                        if (render) {
+                            bridge.awaitFrame();
+                            bridge.drawFrame(decoderInfo.presentationTimeUs * 1000L);
+                        }
+                        if ((decoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                            encoder.signalEndOfInputStream();
+                            decoderDone = true;
+                        }
+                        lastActivity = System.nanoTime();
+                    }
+                }
+
+                final int index = encoder.dequeueOutputBuffer(encoderInfo, TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    if (muxerTrack >= 0) {
+                        throw new IOException("Encoder output format changed twice");
+                    }
+                    // The muxer can only start once every track is known
+                    muxerTrack = muxer.addTrack(encoder.getOutputFormat());
+                    if (audio != null) {
+                        audio.addTrack(muxer);
+                    }
+                    muxer.start();
+                    lastActivity = System.nanoTime();
+                } else if (index >= 0) {
+                    final ByteBuffer data = encoder.getOutputBuffer(index);
+                    // Codec config data is already part of the output format passed to the muxer
+                    final boolean isConfig = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                    if (!isConfig && encoderInfo.size > 0) {
+                        if (muxerTrack < 0) {
+                            throw new IOException("Encoder produced data before its output format");
+                        }
+                        if (audio != null) {
+                            audio.writeUntil(muxer, encoderInfo.presentationTimeUs);
+                        }
+                        data.position(encoderInfo.offset);
+                        data.limit(encoderInfo.offset + encoderInfo.size);
+                        muxer.writeSampleData(muxerTrack, data, encoderInfo);
+                        reportedProgress = reportProgress(listener, encoderInfo.presentationTimeUs, durationUs,
+                            reportedProgress);
+                    }
+                    encoder.releaseOutputBuffer(index, false);
+                    encoderDone = (encoderInfo.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                    lastActivity = System.nanoTime();
+                }
+
+                if (System.nanoTime() - lastActivity > STALL_TIMEOUT_NS) {
+                    throw new IOException("Transcoding stalled");
+                }
+            }
+
+            if (muxerTrack < 0) {
+                throw new IOException("No video frames were encoded");
+            }
+            if (audio != null) {
+                audio.writeUntil(muxer, Long.MAX_VALUE);
+            }
+            muxer.stop();
+            if (listener != null) {
+                listener.onProgress(1.0);
+            }
+        } finally {
+            if (decoder != null) {
+                decoder.release();
+            }
+            if (bridge != null) {
+                bridge.release();
+            }
+            if (encoder != null) {
+                encoder.release();
+            }
+            if (encoderSurface != null) {
+                encoderSurface.release();
+            }
+            if (muxer != null) {
+                muxer.release();
+            }
+        }
+    }
+
+    /**
+     * Queues the next sample of the selected track into the decoder, if it has a free input buffer.
+     * @return true once the end of the stream has been queued
+     */
+    private static boolean feedDecoder(final TranscodeBackend.Extractor extractor, final TranscodeBackend.Codec decoder) {
+        final int index = decoder.dequeueInputBuffer(TIMEOUT_US);
+        if (index < 0) {
+            return false;
+        }
+        final int size = extractor.readSampleData(decoder.getInputBuffer(index), 0);
+        if (size < 0) {
+            decoder.queueInputBuffer(index, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+            return true;
+        }
+        decoder.queueInputBuffer(index, size, extractor.getSampleTime(), 0);
+        extractor.advance();
+        return false;
+    }
+
+    /**
+     * Reports progress in steps of at least one percent.
+     * @return the last reported progress
+     */
+    private static double reportProgress(final ProgressListener listener, final long presentationTimeUs,
+                                         final long durationUs, final double reportedProgress) {
+        if (listener == null || durationUs <= 0) {
+            return reportedProgress;
+        }
+        final double progress = Math.min(1.0, (double) presentationTimeUs / durationUs);
+        if (progress - reportedProgress < 0.01) {
+            return reportedProgress;
+        }
+        listener.onProgress(progress);
+        return progress;
+    }
+
+    private static int findTrack(final TranscodeBackend.Extractor extractor, final String mimePrefix) {
+        for (int i = 0; i < extractor.getTrackCount(); i++) {
+            final String mimeType = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME);
+            if (mimeType != null && mimeType.startsWith(mimePrefix)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads an integer key, which some extractors report as a float (e.g. the frame rate).
+     */
+    private static int getInteger(final MediaFormat format, final String key, final int defaultValue) {
+        if (!format.containsKey(key)) {
+            return defaultValue;
+        }
+        try {
+            return format.getInteger(key);
+        } catch (ClassCastException e) {
+            return Math.round(format.getFloat(key));
+        }
+    }
+
+    /**
+     * Encoders require even dimensions.
+     */
+    private static int evenDimension(final double size) {
+        return Math.max(2, (int) Math.round(size / 2) * 2);
+    }
+
+    /**
+     * Copies the samples of an audio track to the muxer as they are, in timestamp order.
+     */
+    private static class AudioRemuxer {
+        private final TranscodeBackend.Extractor extractor;
+        private final MediaFormat format;
+        private final ByteBuffer buffer;
+        private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        private int muxerTrack = -1;
+        private boolean done = false;
+
+        AudioRemuxer(final TranscodeBackend.Extractor extractor, final int track) {
+            this.extractor = extractor;
+            this.format = extractor.getTrackFormat(track);
+            this.buffer = ByteBuffer.allocateDirect(getInteger(format, MediaFormat.KEY_MAX_INPUT_SIZE, DEFAULT_AUDIO_BUFFER_SIZE));
+            extractor.selectTrack(track);
+        }
+
+        void addTrack(final TranscodeBackend.Muxer muxer) {
+            muxerTrack = muxer.addTrack(format);
+        }
+
+        /**
+         * Writes every remaining audio sample up to the given presentation time.
+         */
+        void writeUntil(final TranscodeBackend.Muxer muxer, final long presentationTimeUs) {
+            while (!done) {
+                final long sampleTime = extractor.getSampleTime();
+                if (sampleTime < 0) {
+                    done = true;
+                    break;
+                }
+                if (sampleTime > presentationTimeUs) {
+                    break;
+                }
+                buffer.clear();
+                final int size = extractor.readSampleData(buffer, 0);
+                if (size < 0) {
+                    done = true;
+                    break;
+                }
+                final boolean sync = (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0;
+                info.set(0, size, sampleTime, sync ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                muxer.writeSampleData(muxerTrack, buffer, info);
+                extractor.advance();
+            }
+        }
+    }
+}
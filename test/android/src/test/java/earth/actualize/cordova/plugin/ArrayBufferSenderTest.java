@@ -0,0 +1,91 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class ArrayBufferSenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void filesGoOutInFramedChunks() throws IOException, JSONException {
+        final byte[] data = write(2 * ArrayBufferSender.CHUNK_SIZE + 1000);
+        final Recorder events = new Recorder();
+        ArrayBufferSender.send(events, 3, folder.getRoot().listFiles()[0]);
+
+        assertEquals(3, events.headers.size());
+        final ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int i = 0; i < events.headers.size(); i++) {
+            final JSONObject header = events.headers.get(i);
+            assertEquals("chunk", header.getString("type"));
+            assertEquals(3, header.getInt("index"));
+            assertEquals(assembled.size(), header.getLong("offset"));
+            assertEquals(data.length, header.getLong("byteLength"));
+            assembled.write(events.chunks.get(i));
+        }
+        assertEquals(1000, events.chunks.get(2).length);
+        assertArrayEquals(data, assembled.toByteArray());
+    }
+
+    @Test
+    public void filesOfWholeChunksEndWithoutAnEmptyOne() throws IOException {
+        write(2 * ArrayBufferSender.CHUNK_SIZE);
+        final Recorder events = new Recorder();
+        ArrayBufferSender.send(events, 0, folder.getRoot().listFiles()[0]);
+
+        assertEquals(2, events.chunks.size());
+        assertEquals(ArrayBufferSender.CHUNK_SIZE, events.chunks.get(1).length);
+    }
+
+    private byte[] write(final int size) throws IOException {
+        final byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        Files.write(folder.newFile().toPath(), data);
+        return data;
+    }
+
+    /**
+     * Keeps a copy of every binary event, as the bridge encodes the bytes before the buffer is reused.
+     */
+    private static class Recorder implements PickEvents {
+
+        final List<JSONObject> headers = new ArrayList<>();
+        final List<byte[]> chunks = new ArrayList<>();
+
+        @Override
+        public void send(final JSONObject event) {
+            throw new AssertionError("Unexpected JSON event " + event);
+        }
+
+        @Override
+        public void send(final JSONObject header, final byte[] bytes, final int length) {
+            headers.add(header);
+            chunks.add(Arrays.copyOf(bytes, length));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import earth.actualize.cordova.plugin.utils.MediaSource;
+
+/**
+ * Builds the image corpus of the tests and the corpus report. Quadrant images have a red, green,
+ * blue and white quadrant, so the orientation of an output can be read from its corners; noise
+ * images compress about as badly as camera photos, or worse.
+ */
+final class Corpus {
+
+    static final int TOP_LEFT = Color.RED;
+    static final int TOP_RIGHT = Color.GREEN;
+    static final int BOTTOM_LEFT = Color.BLUE;
+    static final int BOTTOM_RIGHT = Color.WHITE;
+
+    private static final int[] QUADRANT_COLORS = {TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT};
+
+    private Corpus() {
+    }
+
+    /**
+     * @return the width and height of a 4:3 landscape image with the given number of megapixels
+     */
+    static int[] sizeFor(final double megapixels) {
+        final int height = (int) Math.round(Math.sqrt(megapixels * 1000000 * 3 / 4));
+        return new int[] {height * 4 / 3, height};
+    }
+
+    /**
+     * Writes a JPEG whose stored pixels have the four quadrant colors, tagged with an EXIF orientation.
+     * @param orientation the EXIF orientation, 1 to 8
+     */
+    static File quadrantJpeg(final File directory, final int width, final int height, final int orientation)
+            throws IOException {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            final Canvas canvas = new Canvas(bitmap);
+            final Paint paint = new Paint();
+            for (int quadrant = 0; quadrant < 4; quadrant++) {
+                paint.setColor(QUADRANT_COLORS[quadrant]);
+                final int left = quadrant % 2 == 0 ? 0 : width / 2;
+                final int top = quadrant < 2 ? 0 : height / 2;
+                canvas.drawRect(left, top, quadrant % 2 == 0 ? width / 2 : width,
+                    quadrant < 2 ? height / 2 : height, paint);
+            }
+            final File file = new File(directory, "quadrants-" + width + "x" + height + "-" + orientation + ".jpg");
+            write(bitmap, Bitmap.CompressFormat.JPEG, 90, file);
+            setOrientation(file, orientation);
+            return file;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Writes a JPEG of random blocks of pixels, which leaves the encoder little to compress.
+     * @param blockSize the side of the blocks of one color: 1 for pure noise, 4 for about the
+     *                  bytes per pixel of a camera photo
+     */
+    static File noiseJpeg(final File directory, final int width, final int height, final int blockSize,
+                          final long seed) throws IOException {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            final Random random = new Random(seed);
+            final int[] row = new int[width];
+            for (int y = 0; y < height; y += blockSize) {
+                for (int x = 0; x < width; x++) {
+                    row[x] = x % blockSize == 0 ? 0xFF000000 | random.nextInt(0x1000000) : row[x - 1];
+                }
+                for (int line = y; line < Math.min(height, y + blockSize); line++) {
+                    bitmap.setPixels(row, 0, width, 0, line, width, 1);
+                }
+            }
+            final File file = new File(directory, "noise-" + width + "x" + height + "-" + blockSize + "-" + seed
+                + ".jpg");
+            write(bitmap, Bitmap.CompressFormat.JPEG, 95, file);
+            return file;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    static void setOrientation(final File file, final int orientation) throws IOException {
+        final ExifInterface exif = new ExifInterface(file.getPath());
+        exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(orientation));
+        exif.saveAttributes();
+    }
+
+    /**
+     * Where the stored quadrants of a quadrant image end up once it is displayed upright, by EXIF
+     * orientation, as given by the EXIF specification: 2 and 4 are mirrored, 5 is mirrored along
+     * the main diagonal and 7 along the other one.
+     * @return the quadrant colors expected at the corners of the output, in the order TL, TR, BL, BR
+     */
+    static int[] expectedCorners(final int orientation) {
+        switch (orientation) {
+            case 2:
+                return new int[] {TOP_RIGHT, TOP_LEFT, BOTTOM_RIGHT, BOTTOM_LEFT};
+            case 3:
+                return new int[] {BOTTOM_RIGHT, BOTTOM_LEFT, TOP_RIGHT, TOP_LEFT};
+            case 4:
+                return new int[] {BOTTOM_LEFT, BOTTOM_RIGHT, TOP_LEFT, TOP_RIGHT};
+            case 5:
+                return new int[] {TOP_LEFT, BOTTOM_LEFT, TOP_RIGHT, BOTTOM_RIGHT};
+            case 6:
+                return new int[] {BOTTOM_LEFT, TOP_LEFT, BOTTOM_RIGHT, TOP_RIGHT};
+            case 7:
+                return new int[] {BOTTOM_RIGHT, TOP_RIGHT, BOTTOM_LEFT, TOP_LEFT};
+            case 8:
+                return new int[] {TOP_RIGHT, BOTTOM_RIGHT, TOP_LEFT, BOTTOM_LEFT};
+            default:
+                return new int[] {TOP_LEFT, TOP_RIGHT, BOTTOM_LEFT, BOTTOM_RIGHT};
+        }
+    }
+
+    /**
+     * @return the quadrant colors at the four corners of a bitmap, in the order TL, TR, BL, BR
+     */
+    static int[] cornerColors(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        return new int[] {
+            nearestQuadrantColor(bitmap.getPixel(width / 4, height / 4)),
+            nearestQuadrantColor(bitmap.getPixel(width * 3 / 4, height / 4)),
+            nearestQuadrantColor(bitmap.getPixel(width / 4, height * 3 / 4)),
+            nearestQuadrantColor(bitmap.getPixel(width * 3 / 4, height * 3 / 4)),
+        };
+    }
+
+    /**
+     * Classifies a decoded pixel, which lossy encoding has moved off its quadrant color.
+     */
+    private static int nearestQuadrantColor(final int pixel) {
+        int nearest = QUADRANT_COLORS[0];
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int color : QUADRANT_COLORS) {
+            final int red = Color.red(pixel) - Color.red(color);
+            final int green = Color.green(pixel) - Color.green(color);
+            final int blue = Color.blue(pixel) - Color.blue(color);
+            final int distance = red * red + green * green + blue * blue;
+            if (distance < nearestDistance) {
+                nearest = color;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    private static void write(final Bitmap bitmap, final Bitmap.CompressFormat format, final int quality,
+                              final File file) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            if (!bitmap.compress(format, quality, out)) {
+                throw new IOException("Could not encode " + file);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Serves corpus files by path, either seekable like a local document or as a stream that can't
+     * seek, like a pipe from a cloud provider, and counts how often each source is opened.
+     */
+    static class Source implements MediaSource {
+
+        private final boolean seekable;
+        private int opens = 0;
+
+        Source(final boolean seekable) {
+            this.seekable = seekable;
+        }
+
+        @Override
+        public synchronized InputStream openInputStream(final String uri) throws IOException {
+            opens++;
+            final InputStream file = new FileInputStream(uri);
+            return seekable ? file : new FilterInputStream(file) {};
+        }
+
+        synchronized int getOpenCount() {
+            return opens;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Locale;
+
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+import earth.actualize.cordova.plugin.utils.FakeTranscodeBackend;
+import earth.actualize.cordova.plugin.utils.MediaMetadata;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+import earth.actualize.cordova.plugin.utils.PipelineMetrics;
+import earth.actualize.cordova.plugin.utils.StageTimings;
+import earth.actualize.cordova.plugin.utils.VideoTranscoder;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Processes a corpus of 1-100 MP images, with about the bytes per pixel of camera photos, in all
+ * eight EXIF orientations with each processing profile, and transcodes large videos through
+ * {@link FakeTranscodeBackend}, then writes the throughput, allocation rate and peak memory of
+ * every configuration to report.json and report.txt in corpus.reportDir. Run through the
+ * corpusReport task, not with the unit tests. Bitmap pixels are allocated natively, so they show
+ * in peakBitmapMB rather than in the heap figures.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class CorpusReport {
+
+    private static final String[][] PROFILES = {
+        {"full", "{imageQuality: 90}"},
+        {"resized", "{imageQuality: 85, maxWidth: 2048, maxHeight: 2048}"},
+        {"passthrough", "{passthrough: true, stripMetadata: true}"},
+    };
+
+    // name, width, height, seconds, bitrate, videoQuality
+    private static final Object[][] VIDEOS = {
+        {"4k-5min-50mbps", 3840, 2160, 300, 50000000, "medium"},
+        {"4k-1min-80mbps", 3840, 2160, 60, 80000000, "high"},
+        {"1080p-10min-16mbps", 1920, 1080, 600, 16000000, "low"},
+    };
+
+    // Blocks of this side compress to about the bytes per pixel of a camera photo
+    private static final int CAMERA_BLOCK_SIZE = 4;
+
+    private static final MediaMetadata JPEG = MediaMetadata.ofMimeType("image/jpeg");
+    private static final double MB = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writeReport() throws Exception {
+        final File reportDirectory = new File(System.getProperty("corpus.reportDir", "build/reports/corpus"));
+        final int repeats = Integer.parseInt(System.getProperty("corpus.repeats", "3"));
+        final JSONArray rows = new JSONArray();
+
+        // Compiles the pipeline before anything is measured
+        final File warmup = Corpus.noiseJpeg(folder.getRoot(), 1024, 768, CAMERA_BLOCK_SIZE, 0);
+        for (String[] profile : PROFILES) {
+            measureImages(warmup, 1, 1, profile, 2);
+        }
+
+        for (String value : System.getProperty("corpus.megapixels", "1,12,24,48,100").split(",")) {
+            final double megapixels = Double.parseDouble(value.trim());
+            final int[] size = Corpus.sizeFor(megapixels);
+            final File upright = Corpus.noiseJpeg(folder.getRoot(), size[0], size[1], CAMERA_BLOCK_SIZE, 1);
+            for (int orientation = 1; orientation <= 8; orientation++) {
+                final File image = new File(folder.getRoot(), "corpus-" + value.trim() + "mp-" + orientation + ".jpg");
+                Files.copy(upright.toPath(), image.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Corpus.setOrientation(image, orientation);
+                for (String[] profile : PROFILES) {
+                    rows.put(measureImages(image, megapixels, orientation, profile, repeats));
+                }
+                image.delete();
+            }
+            upright.delete();
+        }
+        for (Object[] video : VIDEOS) {
+            rows.put(measureVideo(video));
+        }
+
+        assertTrue(reportDirectory.isDirectory() || reportDirectory.mkdirs());
+        write(new File(reportDirectory, "report.json"), rows.toString(2));
+        write(new File(reportDirectory, "report.txt"), table(rows));
+    }
+
+    private JSONObject measureImages(final File image, final double megapixels, final int orientation,
+                                     final String[] profile, final int repeats) throws IOException, JSONException {
+        final OutputCache cache = new OutputCache(new File(folder.getRoot(), "cache"), Long.MAX_VALUE);
+        final ImageProcessor processor = new ImageProcessor(new Corpus.Source(true), new BitmapPool(256L * 1024 * 1024),
+            cache);
+        final ProcessingOptions options = ProcessingOptions.fromJson(new JSONObject(profile[1]));
+        final PipelineMetrics metrics = new PipelineMetrics(repeats);
+
+        final Measurement measurement = new Measurement();
+        for (int i = 0; i < repeats; i++) {
+            final StageTimings timings = new StageTimings();
+            final String key = OutputCache.keyFor(image.getPath(), options.cacheKey(), String.valueOf(i));
+            final ProcessedMedia media = processor.process(image.getPath(), JPEG, options, key, timings);
+            metrics.record(timings);
+            new File(media.outputPath).delete();
+        }
+        measurement.stop();
+
+        final JSONObject stats = metrics.getStats().jsonObj();
+        final JSONObject row = measurement.toJson(repeats, image.length() * repeats)
+            .put("config", String.format(Locale.US, "%smp-o%d-%s", formatNumber(megapixels), orientation, profile[0]))
+            .put("megapixels", megapixels)
+            .put("orientation", orientation)
+            .put("profile", profile[0])
+            .put("peakBitmapMB", round(stats.getLong("peakBitmapBytes") / MB));
+        final JSONObject stages = stats.getJSONObject("stages");
+        final JSONObject p50 = new JSONObject();
+        final Iterator<String> names = stages.keys();
+        while (names.hasNext()) {
+            final String name = names.next();
+            p50.put(name, stages.getJSONObject(name).getDouble("p50Ms"));
+        }
+        return row.put("p50Ms", p50);
+    }
+
+    private JSONObject measureVideo(final Object[] video) throws IOException, JSONException {
+        final int seconds = (Integer) video[3];
+        final int bitrate = (Integer) video[4];
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend((Integer) video[1], (Integer) video[2],
+            seconds * 1000000L).setBitrate(bitrate).setAudio(true);
+        final File output = new File(folder.getRoot(), video[0] + ".mp4");
+
+        final Measurement measurement = new Measurement();
+        final VideoTranscoder.Result result = new VideoTranscoder(backend).transcode(output,
+            VideoTranscoder.Preset.forQuality((String) video[5]), null);
+        measurement.stop();
+        output.delete();
+
+        return measurement.toJson(1, (long) bitrate / 8 * seconds)
+            .put("config", video[0] + "-" + video[5])
+            .put("profile", "video-" + video[5])
+            .put("outputMB", round(result.bytes / MB))
+            .put("width", result.width)
+            .put("height", result.height);
+    }
+
+    private static String table(final JSONArray rows) throws JSONException {
+        final StringBuilder table = new StringBuilder(String.format(Locale.US, "%-28s %10s %10s %14s %12s %14s%n",
+            "config", "items/s", "MB/s", "alloc MB/item", "peak heap MB", "peak bitmap MB"));
+        for (int i = 0; i < rows.length(); i++) {
+            final JSONObject row = rows.getJSONObject(i);
+            table.append(String.format(Locale.US, "%-28s %10.2f %10.1f %14.2f %12.1f %14s%n",
+                row.getString("config"), row.getDouble("itemsPerSecond"), row.getDouble("mbPerSecond"),
+                row.getDouble("allocatedMBPerItem"), row.getDouble("peakHeapMB"),
+                row.has("peakBitmapMB") ? String.format(Locale.US, "%.1f", row.getDouble("peakBitmapMB")) : "-"));
+        }
+        return table.toString();
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String formatNumber(final double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value);
+    }
+
+    private static double round(final double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Time, heap allocation of the measuring thread and peak heap usage over one configuration.
+     */
+    private static class Measurement {
+
+        private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final long startAllocated;
+        private final long start;
+        private long elapsedNanos;
+        private long allocated;
+        private long peakHeap;
+
+        Measurement() {
+            System.gc();
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                }
+            }
+            startAllocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            start = System.nanoTime();
+        }
+
+        void stop() {
+            elapsedNanos = System.nanoTime() - start;
+            allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocated;
+            for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    peakHeap += pool.getPeakUsage().getUsed();
+                }
+            }
+        }
+
+        JSONObject toJson(final int items, final long sourceBytes) throws JSONException {
+            final double seconds = elapsedNanos / 1e9;
+            return new JSONObject()
+                .put("items", items)
+                .put("seconds", round(seconds))
+                .put("itemsPerSecond", round(items / seconds))
+                .put("mbPerSecond", round(sourceBytes / MB / seconds))
+                .put("allocatedMBPerItem", round(allocated / MB / items))
+                .put("allocationMBPerSecond", round(allocated / MB / seconds))
+                .put("peakHeapMB", round(peakHeap / MB));
+        }
+    }
+}
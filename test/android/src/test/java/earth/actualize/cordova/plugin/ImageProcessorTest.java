@@ -0,0 +1,292 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+import earth.actualize.cordova.plugin.utils.ContentHasher;
+import earth.actualize.cordova.plugin.utils.MediaMetadata;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+import earth.actualize.cordova.plugin.utils.StageTimings;
+import earth.actualize.cordova.plugin.utils.TestMetadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class ImageProcessorTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+    private static final MediaMetadata JPEG = MediaMetadata.ofMimeType("image/jpeg");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+    private OutputCache cache;
+    private Corpus.Source source;
+    private ImageProcessor processor;
+
+    @Before
+    public void setUp() {
+        cacheDirectory = new File(folder.getRoot(), "cache");
+        cache = new OutputCache(cacheDirectory, Long.MAX_VALUE);
+        source = new Corpus.Source(true);
+        processor = new ImageProcessor(source, new BitmapPool(64 * 1024 * 1024), cache);
+    }
+
+    @Test
+    public void everyOrientationIsTurnedUpright() throws Exception {
+        // Orientations 5 to 8 are stored sideways
+        final boolean[] swapsAxes = {false, false, false, false, true, true, true, true};
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, orientation);
+            final Bitmap output = decode(process(image, "{}"));
+            assertEquals("orientation " + orientation, swapsAxes[orientation - 1] ? HEIGHT : WIDTH, output.getWidth());
+            assertEquals("orientation " + orientation, swapsAxes[orientation - 1] ? WIDTH : HEIGHT, output.getHeight());
+            assertArrayEquals("orientation " + orientation, Corpus.expectedCorners(orientation),
+                Corpus.cornerColors(output));
+        }
+    }
+
+    @Test
+    public void fitStaysInsideTheBoundsInDisplayOrientation() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), 400, 300, 6);
+        final Bitmap output = decode(process(image, "{maxWidth: 100, maxHeight: 100}"));
+        assertEquals(75, output.getWidth());
+        assertEquals(100, output.getHeight());
+        assertArrayEquals(Corpus.expectedCorners(6), Corpus.cornerColors(output));
+    }
+
+    @Test
+    public void fitBoundsApplyInDisplayOrientationForTransposedImages() throws Exception {
+        // Stored 400x300, displayed 300x400
+        for (int orientation : new int[] {5, 7}) {
+            final File image = Corpus.quadrantJpeg(folder.getRoot(), 400, 300, orientation);
+            final Bitmap output = decode(process(image, "{maxWidth: 100, maxHeight: 200}"));
+            assertEquals("orientation " + orientation, 100, output.getWidth());
+            assertEquals("orientation " + orientation, 133, output.getHeight());
+            assertArrayEquals("orientation " + orientation, Corpus.expectedCorners(orientation),
+                Corpus.cornerColors(output));
+        }
+    }
+
+    @Test
+    public void providerOrientationIsUsedWhenItReportsARotation() throws Exception {
+        // Stored upright, but the provider knows better
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 1);
+        final Bitmap output = decode(process(image, "{}", TestMetadata.withOrientation("image/jpeg", 90)));
+        assertEquals(HEIGHT, output.getWidth());
+        assertArrayEquals(Corpus.expectedCorners(6), Corpus.cornerColors(output));
+    }
+
+    @Test
+    public void exifOrientationIsReadWhenTheProviderReportsNone() throws Exception {
+        // Providers report 0 for images they have not scanned and for mirrored ones
+        for (int orientation : new int[] {6, 2}) {
+            final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, orientation);
+            final Bitmap output = decode(process(image, "{}", TestMetadata.withOrientation("image/jpeg", 0)));
+            assertArrayEquals("orientation " + orientation, Corpus.expectedCorners(orientation),
+                Corpus.cornerColors(output));
+        }
+    }
+
+    @Test
+    public void fillCoversTheBoundsAndCropsToThem() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), 400, 300, 1);
+        final Bitmap output = decode(process(image, "{maxWidth: 100, maxHeight: 100, resizeMode: 'fill'}"));
+        assertEquals(100, output.getWidth());
+        assertEquals(100, output.getHeight());
+        assertArrayEquals(new int[] {Corpus.TOP_LEFT, Corpus.TOP_RIGHT, Corpus.BOTTOM_LEFT, Corpus.BOTTOM_RIGHT},
+            Corpus.cornerColors(output));
+    }
+
+    @Test
+    public void passthroughCopiesJpegsAsIs() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 6);
+        final ProcessedMedia media = process(image, "{passthrough: true}");
+        assertArrayEquals(Files.readAllBytes(image.toPath()), Files.readAllBytes(new File(media.outputPath).toPath()));
+        assertEquals("image/jpeg", media.details.getArgsMap().get("mimeType"));
+    }
+
+    @Test
+    public void strippedPassthroughKeepsTheOrientation() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 6);
+        final File output = new File(process(image, "{passthrough: true, stripMetadata: true}").outputPath);
+        assertEquals(6, new ExifInterface(output.getPath()).getAttributeInt(ExifInterface.TAG_ORIENTATION, 0));
+        assertEquals(WIDTH, decode(output.getPath()).getWidth());
+    }
+
+    @Test
+    public void passthroughIsOffByDefault() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 6);
+        final Bitmap output = decode(process(image, "{imageQuality: 100}"));
+        // Re-encoded with the rotation applied to the pixels
+        assertEquals(HEIGHT, output.getWidth());
+        assertEquals(WIDTH, output.getHeight());
+    }
+
+    @Test
+    public void lowerQualityEncodesToFewerBytesWrittenOnce() throws Exception {
+        final File image = Corpus.noiseJpeg(folder.getRoot(), 640, 480, 1, 3);
+        Corpus.setOrientation(image, 6);
+        final long high = encodedBytes(image, 90);
+        final long low = encodedBytes(image, 50);
+        assertTrue(high + " <= " + low, low < high);
+    }
+
+    @Test
+    public void encodesTheRequestedFormat() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 1);
+        for (String format : new String[] {"webp", "png"}) {
+            final ProcessedMedia media = process(image, "{outputFormat: '" + format + "'}");
+            assertEquals(format, media.details.getArgsMap().get("format"));
+            assertEquals("image/" + format, media.details.getArgsMap().get("mimeType"));
+            assertTrue(media.outputPath.endsWith("." + format));
+            assertEquals(WIDTH, decode(media).getWidth());
+        }
+    }
+
+    @Test
+    public void sourcesAreOpenedOnce() throws Exception {
+        final File image = Corpus.noiseJpeg(folder.getRoot(), 640, 480, 1, 1);
+        for (boolean seekable : new boolean[] {true, false}) {
+            source = new Corpus.Source(seekable);
+            processor = new ImageProcessor(source, new BitmapPool(0), cache);
+            process(image, "{maxWidth: 320}");
+            assertEquals(seekable ? "seekable" : "pipe", 1, source.getOpenCount());
+        }
+    }
+
+    @Test
+    public void hashCoversTheWrittenFile() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 3);
+        final ProcessedMedia media = process(image, "{hash: true, hashChunkKB: 1}");
+        assertEquals(ContentHasher.hashFile(new File(media.outputPath), 1024).jsonObj().toString(),
+            media.details.getArgsMap().get("hash").toString());
+    }
+
+    @Test
+    public void maxFileSizeIsMet() throws Exception {
+        final File image = Corpus.noiseJpeg(folder.getRoot(), 640, 480, 1, 2);
+        final ProcessedMedia media = process(image, "{maxFileSizeKB: 40}");
+        assertTrue(new File(media.outputPath).length() <= 40 * 1024);
+        final JSONObject search = (JSONObject) media.details.getArgsMap().get("sizeSearch");
+        assertTrue(search.getBoolean("fits"));
+    }
+
+    @Test
+    public void canceledProcessingLeavesNoOutput() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 1);
+        processor = new ImageProcessor(new Corpus.Source(false), new BitmapPool(0), cache);
+        Thread.currentThread().interrupt();
+        try {
+            process(image, "{}");
+            fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException expected) {
+            // Canceled before encoding
+        } finally {
+            Thread.interrupted();
+        }
+        final String[] files = cacheDirectory.list();
+        assertTrue(files == null || files.length == 0);
+    }
+
+    @Test
+    public void largeImagesAreDecodedInTiles() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), 2400, 1800, 6);
+        final ProcessedMedia media = process(image, "{tiledDecodeThresholdMP: 1, maxWidth: 600, maxHeight: 600}");
+        final JSONObject tiled = (JSONObject) media.details.getArgsMap().get("tiled");
+        assertNotNull(tiled);
+        final int tileSource = 1024 * tiled.getInt("sampleSize");
+        assertEquals(((2400 + tileSource - 1) / tileSource) * ((1800 + tileSource - 1) / tileSource),
+            tiled.getInt("tiles"));
+        final Bitmap output = decode(media);
+        assertEquals(450, output.getWidth());
+        assertEquals(600, output.getHeight());
+    }
+
+    @Test
+    public void smallImagesAreNotTiled() throws Exception {
+        final File image = Corpus.quadrantJpeg(folder.getRoot(), WIDTH, HEIGHT, 1);
+        assertFalse(process(image, "{tiledDecodeThresholdMP: 1}").details.getArgsMap().containsKey("tiled"));
+    }
+
+    private ProcessedMedia process(final File image, final String options) throws IOException, JSONException {
+        return process(image, options, new StageTimings());
+    }
+
+    private ProcessedMedia process(final File image, final String options, final MediaMetadata metadata)
+            throws IOException, JSONException {
+        return process(image, options, metadata, new StageTimings());
+    }
+
+    private ProcessedMedia process(final File image, final String options, final StageTimings timings)
+            throws IOException, JSONException {
+        return process(image, options, JPEG, timings);
+    }
+
+    private ProcessedMedia process(final File image, final String options, final MediaMetadata metadata,
+                                   final StageTimings timings) throws IOException, JSONException {
+        final ProcessingOptions processingOptions = ProcessingOptions.fromJson(new JSONObject(options));
+        final String key = OutputCache.keyFor(image.getPath(), processingOptions.cacheKey());
+        return processor.process(image.getPath(), metadata, processingOptions, key, timings);
+    }
+
+    /**
+     * Processes an image at the given quality, checking that the rotated image was encoded once,
+     * straight into the one output file, which is deleted afterwards.
+     * @return the size of the output
+     */
+    private long encodedBytes(final File image, final int quality) throws IOException, JSONException {
+        final StageTimings timings = new StageTimings();
+        final File output = new File(process(image, "{imageQuality: " + quality + "}", timings).outputPath);
+        assertArrayEquals(new String[] {output.getName()}, cacheDirectory.list());
+        final JSONObject stages = timings.toJson().jsonObj();
+        assertEquals(output.length(), stages.getJSONObject(StageTimings.ENCODE).getLong("bytes"));
+        assertTrue(stages.has(StageTimings.ROTATE));
+        assertEquals(480, decode(output.getPath()).getWidth());
+        final long length = output.length();
+        assertTrue(output.delete());
+        return length;
+    }
+
+    private static Bitmap decode(final ProcessedMedia media) {
+        return decode(media.outputPath);
+    }
+
+    private static Bitmap decode(final String path) {
+        final Bitmap bitmap = BitmapFactory.decodeFile(path);
+        assertNotNull("Could not decode " + path, bitmap);
+        return bitmap;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.Closeable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ItemWatchdogTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ThreadPoolExecutor pool;
+
+    @Before
+    public void setUp() {
+        pool = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void itemsFinishingInTimeAreNotTimedOut() throws Exception {
+        final ItemWatchdog watchdog = new ItemWatchdog(new PickJob(pool, 1), 1, 200);
+        final Future<String> future = watchdog.submit(0, new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        });
+        assertEquals("done", future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        // Past the deadline, the alarm must have been disarmed
+        Thread.sleep(400);
+        assertFalse(watchdog.isTimedOut(0));
+    }
+
+    @Test
+    public void overrunningItemsAreAbandonedAndTheNextOneRuns() throws Exception {
+        final PickJob job = new PickJob(pool, 1);
+        final ItemWatchdog watchdog = new ItemWatchdog(job, 2, 200);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Future<?> stuck = watchdog.submit(0, new Callable<Void>() {
+            @Override
+            public Void call() {
+                awaitIgnoringInterrupts(unblock);
+                return null;
+            }
+        });
+        final Future<String> next = watchdog.submit(1, new Callable<String>() {
+            @Override
+            public String call() {
+                return "next";
+            }
+        });
+
+        try {
+            stuck.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Expected the item to be abandoned");
+        } catch (CancellationException expected) {
+            assertTrue(watchdog.isTimedOut(0));
+        }
+        // The stuck item gave up its slot
+        assertEquals("next", next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(watchdog.isTimedOut(1));
+        assertEquals("Timed out after 200 ms", watchdog.timeoutError().getMessage());
+        unblock.countDown();
+    }
+
+    @Test
+    public void timeoutStartsWhenTheItemIsHandedToThePool() throws Exception {
+        // Two items of 400 ms one after the other: the second would overrun if it was timed from submission
+        final ItemWatchdog watchdog = new ItemWatchdog(new PickJob(pool, 1), 2, 600);
+        final Future<?> first = watchdog.submit(0, sleep(400));
+        final Future<?> second = watchdog.submit(1, sleep(400));
+        first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(watchdog.isTimedOut(0));
+        assertFalse(watchdog.isTimedOut(1));
+    }
+
+    @Test
+    public void streamsOfOverrunningItemsAreClosed() throws Exception {
+        final ItemWatchdog watchdog = new ItemWatchdog(new PickJob(pool, 1), 1, 200);
+        // Like a read from a cloud provider: ignores the interrupt, but fails once its descriptor is closed
+        final CountDownLatch closed = new CountDownLatch(1);
+        final CountDownLatch returned = new CountDownLatch(1);
+        final Future<?> future = watchdog.submit(0, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                watchdog.streams(0).add(new Closeable() {
+                    @Override
+                    public void close() {
+                        closed.countDown();
+                    }
+                });
+                awaitIgnoringInterrupts(closed);
+                returned.countDown();
+                return null;
+            }
+        });
+
+        assertTrue(returned.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertTrue(future.isCancelled());
+        assertTrue(watchdog.isTimedOut(0));
+    }
+
+    private static Callable<Void> sleep(final long millis) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                Thread.sleep(millis);
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Blocks like a read from a stalled provider, which ignores interrupts.
+     */
+    private static void awaitIgnoringInterrupts(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    break;
+                }
+                throw new AssertionError("Never unblocked");
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
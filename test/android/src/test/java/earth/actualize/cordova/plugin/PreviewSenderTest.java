@@ -0,0 +1,180 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import earth.actualize.cordova.plugin.utils.JsonArgs;
+import earth.actualize.cordova.plugin.utils.OutputCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class PreviewSenderTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Recorder events = new Recorder();
+    private PickJob job;
+    private OutputCache previewCache;
+
+    @Before
+    public void setUp() {
+        job = new PickJob(new Executor() {
+            @Override
+            public void execute(final Runnable runnable) {
+                runnable.run();
+            }
+        }, 1);
+        previewCache = new OutputCache(folder.getRoot(), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void previewsReadyBeforeTheDeadlineGoOutInOneEvent() throws Exception {
+        final PreviewSender sender = new PreviewSender(job, events, previewCache, 3);
+        sender.start();
+        for (int i = 0; i < 3; i++) {
+            sender.add(preview(i), null);
+        }
+
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2)), events.indexes());
+        // The deadline finds nothing left to send
+        Thread.sleep(PreviewSender.BATCH_DEADLINE_MS * 3);
+        assertEquals(1, events.count());
+    }
+
+    @Test
+    public void previewsFinishingAfterTheDeadlineFollowOneByOne() throws Exception {
+        final PreviewSender sender = new PreviewSender(job, events, previewCache, 3);
+        sender.start();
+        sender.add(preview(1), null);
+
+        // The deadline sends the one preview ready
+        events.awaitCount(1);
+        assertEquals(Arrays.asList(Arrays.asList(1)), events.indexes());
+        sender.add(preview(0), null);
+        sender.add(preview(2), null);
+        assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(0), Arrays.asList(2)), events.indexes());
+    }
+
+    @Test
+    public void canceledPicksSendNoPreviews() throws Exception {
+        final PreviewSender sender = new PreviewSender(job, events, previewCache, 2);
+        sender.start();
+        job.cancel();
+        sender.add(preview(0), null);
+        sender.add(preview(1), null);
+        Thread.sleep(PreviewSender.BATCH_DEADLINE_MS * 3);
+        assertEquals(0, events.count());
+    }
+
+    @Test
+    public void previewCacheIsTrimmedOnceAllAreDone() throws Exception {
+        final File old = cachedPreview("old");
+        final File first = cachedPreview("first");
+        final File second = cachedPreview("second");
+        previewCache.setMaxBytes(0);
+
+        final PreviewSender sender = new PreviewSender(job, events, previewCache, 2);
+        sender.start();
+        sender.add(preview(0), "first");
+        assertNotNull(previewCache.get("old"));
+        sender.add(preview(1), "second");
+
+        // Everything but the previews of the pick
+        assertNull(previewCache.get("old"));
+        assertFalse(old.exists());
+        assertEquals(first, previewCache.get("first"));
+        assertEquals(second, previewCache.get("second"));
+    }
+
+    private File cachedPreview(final String key) throws IOException {
+        final File file = previewCache.fileFor(key, "jpg");
+        Files.write(file.toPath(), new byte[1024]);
+        previewCache.put(key, file);
+        return file;
+    }
+
+    private static JsonArgs preview(final int index) {
+        return new JsonArgs().put("index", index).put("status", "OK");
+    }
+
+    /**
+     * Keeps the events, which the batch deadline sends from the scheduler thread.
+     */
+    private static class Recorder implements PickEvents {
+
+        private final List<JSONObject> sent = new ArrayList<>();
+
+        @Override
+        public synchronized void send(final JSONObject event) {
+            sent.add(event);
+            notifyAll();
+        }
+
+        @Override
+        public void send(final JSONObject header, final byte[] bytes, final int length) {
+            throw new AssertionError("Unexpected binary event " + header);
+        }
+
+        synchronized int count() {
+            return sent.size();
+        }
+
+        synchronized void awaitCount(final int count) throws InterruptedException {
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            while (sent.size() < count) {
+                final long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remaining <= 0) {
+                    fail("Only " + sent.size() + " events were sent");
+                }
+                wait(remaining);
+            }
+        }
+
+        /**
+         * @return the item indexes of every "previews" event, in the order sent
+         */
+        synchronized List<List<Integer>> indexes() throws JSONException {
+            final List<List<Integer>> indexes = new ArrayList<>();
+            for (JSONObject event : sent) {
+                assertEquals("previews", event.getString("type"));
+                final JSONArray previews = event.getJSONArray("previews");
+                final List<Integer> batch = new ArrayList<>();
+                for (int i = 0; i < previews.length(); i++) {
+                    batch.add(previews.getJSONObject(i).getInt("index"));
+                }
+                indexes.add(batch);
+            }
+            return indexes;
+        }
+    }
+}
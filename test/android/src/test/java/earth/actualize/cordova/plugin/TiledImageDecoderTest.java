@@ -0,0 +1,157 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.GraphicsMode;
+
+import java.io.File;
+import java.io.IOException;
+
+import earth.actualize.cordova.plugin.utils.BitmapPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+public class TiledImageDecoderTest {
+
+    private static final Bitmap.Config CONFIG = Bitmap.Config.ARGB_8888;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TiledImageDecoder decoder = new TiledImageDecoder(new BitmapPool(64 * 1024 * 1024), Long.MAX_VALUE);
+
+    @Test
+    public void fullSizeTilesJoinWithoutSeams() throws IOException {
+        // Three by two tiles, the last ones partial
+        final File file = Corpus.noiseJpeg(folder.getRoot(), 2500, 1700, 1, 4);
+        final Bitmap image = BitmapFactory.decodeFile(file.getPath());
+        final Regions regions = new Regions(image);
+        final Bitmap output = decoder.decode(regions, 2500, 1700, 1, 0, 0, ProcessingOptions.RESIZE_FIT, CONFIG);
+
+        assertEquals(6, decoder.getTileCount());
+        assertEquals(1, decoder.getSampleSize());
+        assertTrue(regions.recycled);
+        // Every pixel where the image has it, so a tile drawn one pixel off shows
+        assertArrayEquals(pixels(image), pixels(output));
+    }
+
+    @Test
+    public void downscaledTilesJoinWithoutSeams() throws IOException {
+        final Bitmap image = waves(3000, 2200);
+        final Bitmap output = decoder.decode(new Regions(image), 3000, 2200, 1, 1500, 1100,
+            ProcessingOptions.RESIZE_FIT, CONFIG);
+
+        // Tiles of 2048 source pixels, decoded at half size
+        assertEquals(2, decoder.getSampleSize());
+        assertEquals(4, decoder.getTileCount());
+        assertEquals(1500, output.getWidth());
+        assertEquals(1100, output.getHeight());
+        final int[] expected = pixels(Bitmap.createScaledBitmap(image, 1500, 1100, true));
+        final int[] actual = pixels(output);
+        for (int i = 0; i < expected.length; i++) {
+            final int x = i % 1500;
+            final int y = i / 1500;
+            // The waves change by up to 25 levels per output pixel, so a misplaced tile or a gap shows
+            assertEquals("red at " + x + "," + y, expected[i] >> 16 & 0xFF, actual[i] >> 16 & 0xFF, 2);
+            assertEquals("green at " + x + "," + y, expected[i] >> 8 & 0xFF, actual[i] >> 8 & 0xFF, 2);
+            assertEquals("alpha at " + x + "," + y, 0xFF, actual[i] >>> 24);
+        }
+    }
+
+    @Test
+    public void everyOrientationIsTurnedUpright() throws IOException {
+        // Orientations 5 to 8 are stored sideways
+        final boolean[] swapsAxes = {false, false, false, false, true, true, true, true};
+        for (int orientation = 1; orientation <= 8; orientation++) {
+            final File file = Corpus.quadrantJpeg(folder.getRoot(), 1600, 1200, orientation);
+            final Bitmap output = decoder.decode(new Regions(BitmapFactory.decodeFile(file.getPath())), 1600, 1200,
+                orientation, 0, 0, ProcessingOptions.RESIZE_FIT, CONFIG);
+            assertEquals(4, decoder.getTileCount());
+            assertEquals("orientation " + orientation, swapsAxes[orientation - 1] ? 1200 : 1600, output.getWidth());
+            assertEquals("orientation " + orientation, swapsAxes[orientation - 1] ? 1600 : 1200, output.getHeight());
+            assertArrayEquals("orientation " + orientation, Corpus.expectedCorners(orientation),
+                Corpus.cornerColors(output));
+        }
+    }
+
+    /**
+     * @return an opaque image whose red channel waves along x and green channel along y
+     */
+    private static Bitmap waves(final int width, final int height) {
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, CONFIG);
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            final int green = wave(y);
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | wave(x) << 16 | green << 8;
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    private static int wave(final int position) {
+        return (int) Math.round(127.5 + 127.5 * Math.sin(2 * Math.PI * position / 64));
+    }
+
+    private static int[] pixels(final Bitmap bitmap) {
+        final int[] pixels = new int[bitmap.getWidth() * bitmap.getHeight()];
+        bitmap.getPixels(pixels, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
+        return pixels;
+    }
+
+    /**
+     * Serves the regions of a decoded image the way BitmapRegionDecoder does: subsampled, into
+     * the bitmap passed for reuse when it is large enough.
+     */
+    private static class Regions implements TiledImageDecoder.RegionDecoder {
+
+        private final Bitmap image;
+        boolean recycled = false;
+
+        Regions(final Bitmap image) {
+            this.image = image;
+        }
+
+        @Override
+        public Bitmap decodeRegion(final Rect region, final BitmapFactory.Options options) {
+            final int sampleSize = Math.max(1, options.inSampleSize);
+            final int width = (region.width() + sampleSize - 1) / sampleSize;
+            final int height = (region.height() + sampleSize - 1) / sampleSize;
+            Bitmap tile = options.inBitmap;
+            if (tile != null) {
+                // Throws IllegalArgumentException if too small, as BitmapRegionDecoder does
+                tile.reconfigure(width, height, options.inPreferredConfig);
+            } else {
+                tile = Bitmap.createBitmap(width, height, options.inPreferredConfig);
+            }
+            new Canvas(tile).drawBitmap(image, region, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+            return tile;
+        }
+
+        @Override
+        public void recycle() {
+            recycled = true;
+        }
+    }
+}
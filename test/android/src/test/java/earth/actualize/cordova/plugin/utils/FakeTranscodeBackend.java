@@ -0,0 +1,573 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.view.Surface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link TranscodeBackend} that runs on the JVM. The extractor serves a video track, and
+ * optionally an audio track, of the given size and duration without holding their samples;
+ * the codecs pass frames through as buffers sized by the bitrate; the muxer writes the samples
+ * it receives to the output file, so the output has the size a real transcode would have.
+ * Every component counts its releases, so tests can check that nothing leaks.
+ */
+public class FakeTranscodeBackend implements TranscodeBackend {
+
+    private static final int FRAME_RATE = 30;
+    // AAC frames of 1024 samples at 48 kHz, 128 kbit/s
+    private static final int AUDIO_SAMPLE_RATE = 48000;
+    private static final int AUDIO_FRAME_SAMPLES = 1024;
+    private static final int AUDIO_SAMPLE_BYTES = 683;
+
+    private final int width;
+    private final int height;
+    private final long durationUs;
+    private int bitrate = 0;
+    private long sourceSize = -1;
+    private int rotation = 0;
+    private boolean video = true;
+    private boolean audio = false;
+    private int failAfterFrames = -1;
+
+    private FakeEncoder encoder;
+    private FakeMuxer muxer;
+    private int opened = 0;
+    private int released = 0;
+    private int framesDrawn = 0;
+
+    public FakeTranscodeBackend(final int width, final int height, final long durationUs) {
+        this.width = width;
+        this.height = height;
+        this.durationUs = durationUs;
+    }
+
+    /**
+     * @param bitrate the bitrate the video track reports, 0 for none
+     */
+    public FakeTranscodeBackend setBitrate(final int bitrate) {
+        this.bitrate = bitrate;
+        return this;
+    }
+
+    public FakeTranscodeBackend setSourceSize(final long sourceSize) {
+        this.sourceSize = sourceSize;
+        return this;
+    }
+
+    public FakeTranscodeBackend setRotation(final int rotation) {
+        this.rotation = rotation;
+        return this;
+    }
+
+    public FakeTranscodeBackend setVideo(final boolean video) {
+        this.video = video;
+        return this;
+    }
+
+    public FakeTranscodeBackend setAudio(final boolean audio) {
+        this.audio = audio;
+        return this;
+    }
+
+    /**
+     * Makes the frame bridge fail once the given number of frames has been drawn.
+     */
+    public FakeTranscodeBackend setFailAfterFrames(final int frames) {
+        this.failAfterFrames = frames;
+        return this;
+    }
+
+    /**
+     * @return the number of components created that have not been released
+     */
+    public synchronized int getUnreleased() {
+        return opened - released;
+    }
+
+    public int getFramesDrawn() {
+        return framesDrawn;
+    }
+
+    /**
+     * @return the muxer of the last transcode, or null if none was created
+     */
+    public FakeMuxer getMuxer() {
+        return muxer;
+    }
+
+    /**
+     * @return the size of the encoded video frames the source is read as, from its bitrate or size
+     */
+    private int sourceSampleBytes() {
+        final long bytesPerSecond = bitrate > 0 ? bitrate / 8
+            : sourceSize > 0 ? sourceSize * 1000000L / Math.max(1, durationUs) : 1000000;
+        return (int) Math.max(1, bytesPerSecond / FRAME_RATE);
+    }
+
+    private synchronized void onOpened() {
+        opened++;
+    }
+
+    private synchronized void onReleased() {
+        released++;
+    }
+
+    @Override
+    public Extractor openExtractor() {
+        onOpened();
+        return new FakeExtractor();
+    }
+
+    @Override
+    public long getSourceSize() {
+        return sourceSize;
+    }
+
+    @Override
+    public Codec createDecoder(final String mimeType) {
+        onOpened();
+        return new FakeDecoder();
+    }
+
+    @Override
+    public Codec createEncoder(final String mimeType) {
+        onOpened();
+        encoder = new FakeEncoder();
+        return encoder;
+    }
+
+    @Override
+    public FrameBridge createFrameBridge(final Surface encoderSurface, final int width, final int height) {
+        onOpened();
+        return new FakeFrameBridge();
+    }
+
+    @Override
+    public Muxer createMuxer(final File outputFile) throws IOException {
+        onOpened();
+        muxer = new FakeMuxer(outputFile);
+        return muxer;
+    }
+
+    private class FakeExtractor implements Extractor {
+
+        private final List<MediaFormat> tracks = new ArrayList<>();
+        // Each track's samples per second, as a fraction
+        private final List<int[]> sampleRates = new ArrayList<>();
+        private final List<Integer> sampleBytes = new ArrayList<>();
+        private int selected = -1;
+        private long sample = 0;
+
+        FakeExtractor() {
+            if (video) {
+                final MediaFormat format = MediaFormat.createVideoFormat("video/hevc", width, height);
+                format.setLong(MediaFormat.KEY_DURATION, durationUs);
+                // Extractors report the frame rate of some containers as a float
+                format.setFloat(MediaFormat.KEY_FRAME_RATE, FRAME_RATE);
+                format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, sourceSampleBytes());
+                if (bitrate > 0) {
+                    format.setInteger(MediaFormat.KEY_BIT_RATE, bitrate);
+                }
+                if (rotation != 0) {
+                    format.setInteger(MediaFormat.KEY_ROTATION, rotation);
+                }
+                addTrack(format, new int[] {FRAME_RATE, 1}, sourceSampleBytes());
+            }
+            if (audio) {
+                final MediaFormat format = MediaFormat.createAudioFormat("audio/mp4a-latm", 48000, 2);
+                format.setLong(MediaFormat.KEY_DURATION, durationUs);
+                format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, AUDIO_SAMPLE_BYTES);
+                addTrack(format, new int[] {AUDIO_SAMPLE_RATE, AUDIO_FRAME_SAMPLES}, AUDIO_SAMPLE_BYTES);
+            }
+        }
+
+        private void addTrack(final MediaFormat format, final int[] sampleRate, final int bytes) {
+            tracks.add(format);
+            sampleRates.add(sampleRate);
+            sampleBytes.add(bytes);
+        }
+
+        @Override
+        public int getTrackCount() {
+            return tracks.size();
+        }
+
+        @Override
+        public MediaFormat getTrackFormat(final int track) {
+            return tracks.get(track);
+        }
+
+        @Override
+        public void selectTrack(final int track) {
+            selected = track;
+            sample = 0;
+        }
+
+        @Override
+        public int readSampleData(final ByteBuffer buffer, final int offset) {
+            if (getSampleTime() < 0) {
+                return -1;
+            }
+            // The content of the samples is never looked at, so only their size is served
+            final int size = sampleBytes.get(selected);
+            buffer.position(offset);
+            buffer.limit(offset + size);
+            return size;
+        }
+
+        @Override
+        public long getSampleTime() {
+            if (selected < 0) {
+                return -1;
+            }
+            final int[] rate = sampleRates.get(selected);
+            final long time = sample * rate[1] * 1000000L / rate[0];
+            return time < durationUs ? time : -1;
+        }
+
+        @Override
+        public int getSampleFlags() {
+            return sample % FRAME_RATE == 0 ? MediaExtractor.SAMPLE_FLAG_SYNC : 0;
+        }
+
+        @Override
+        public boolean advance() {
+            sample++;
+            return getSampleTime() >= 0;
+        }
+
+        @Override
+        public void release() {
+            onReleased();
+        }
+    }
+
+    /**
+     * Passes each queued sample to its output, where releasing it with render draws it on the surface.
+     */
+    private class FakeDecoder implements Codec {
+
+        private final ByteBuffer input = ByteBuffer.allocate(sourceSampleBytes());
+        private boolean queued = false;
+        private long queuedTimeUs;
+        private int queuedSize;
+        private int queuedFlags;
+
+        @Override
+        public void configure(final MediaFormat format, final Surface surface, final boolean encoder) {
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            throw new IllegalStateException("Decoders have no input surface");
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int dequeueInputBuffer(final long timeoutUs) {
+            return queued ? MediaCodec.INFO_TRY_AGAIN_LATER : 0;
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(final int index) {
+            input.clear();
+            return input;
+        }
+
+        @Override
+        public void queueInputBuffer(final int index, final int size, final long presentationTimeUs, final int flags) {
+            queued = true;
+            queuedSize = size;
+            queuedTimeUs = presentationTimeUs;
+            queuedFlags = flags;
+        }
+
+        @Override
+        public int dequeueOutputBuffer(final MediaCodec.BufferInfo info, final long timeoutUs) {
+            if (!queued) {
+                return MediaCodec.INFO_TRY_AGAIN_LATER;
+            }
+            queued = false;
+            info.set(0, queuedSize, queuedTimeUs, queuedFlags);
+            return 0;
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(final int index) {
+            return null;
+        }
+
+        @Override
+        public void releaseOutputBuffer(final int index, final boolean render) {
+            if (render) {
+                encoder.pendingFrames++;
+            }
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            return new MediaFormat();
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            throw new IllegalStateException("Decoders have no input surface");
+        }
+
+        @Override
+        public void release() {
+            onReleased();
+        }
+    }
+
+    private class FakeFrameBridge implements FrameBridge {
+
+        @Override
+        public Surface getDecoderSurface() {
+            return null;
+        }
+
+        @Override
+        public void awaitFrame() throws IOException {
+            if (encoder.pendingFrames == 0) {
+                throw new IOException("No frame was rendered");
+            }
+            if (failAfterFrames >= 0 && framesDrawn >= failAfterFrames) {
+                throw new IOException("Frame wait timed out");
+            }
+        }
+
+        @Override
+        public void drawFrame(final long presentationTimeNs) {
+            encoder.pendingFrames--;
+            encoder.frameTimes.add(presentationTimeNs / 1000L);
+            framesDrawn++;
+        }
+
+        @Override
+        public void release() {
+            onReleased();
+        }
+    }
+
+    /**
+     * Turns each drawn frame into an output buffer of the configured bitrate's frame size,
+     * preceded by its output format and a codec config buffer as a hardware encoder sends them.
+     */
+    private class FakeEncoder implements Codec {
+
+        private final ArrayDeque<Long> frameTimes = new ArrayDeque<>();
+        private int pendingFrames = 0;
+        private int frames = 0;
+        private MediaFormat format;
+        private ByteBuffer output;
+        private boolean formatSent = false;
+        private boolean configSent = false;
+        private boolean endOfStream = false;
+
+        @Override
+        public void configure(final MediaFormat format, final Surface surface, final boolean encoder) {
+            this.format = format;
+            final int frameRate = format.getInteger(MediaFormat.KEY_FRAME_RATE);
+            output = ByteBuffer.allocateDirect(Math.max(1, format.getInteger(MediaFormat.KEY_BIT_RATE) / 8 / frameRate));
+        }
+
+        @Override
+        public Surface createInputSurface() {
+            // The fake bridge draws without a surface
+            return null;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public int dequeueInputBuffer(final long timeoutUs) {
+            throw new IllegalStateException("Surface input");
+        }
+
+        @Override
+        public ByteBuffer getInputBuffer(final int index) {
+            throw new IllegalStateException("Surface input");
+        }
+
+        @Override
+        public void queueInputBuffer(final int index, final int size, final long presentationTimeUs, final int flags) {
+            throw new IllegalStateException("Surface input");
+        }
+
+        @Override
+        public int dequeueOutputBuffer(final MediaCodec.BufferInfo info, final long timeoutUs) {
+            if (!formatSent) {
+                formatSent = true;
+                return MediaCodec.INFO_OUTPUT_FORMAT_CHANGED;
+            }
+            if (!configSent) {
+                configSent = true;
+                info.set(0, 32, 0, MediaCodec.BUFFER_FLAG_CODEC_CONFIG);
+                return 0;
+            }
+            if (!frameTimes.isEmpty()) {
+                final long timeUs = frameTimes.poll();
+                final boolean keyFrame = frames++ % (2 * FRAME_RATE) == 0;
+                info.set(0, output.capacity(), timeUs, keyFrame ? MediaCodec.BUFFER_FLAG_KEY_FRAME : 0);
+                return 0;
+            }
+            if (endOfStream) {
+                info.set(0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                return 0;
+            }
+            return MediaCodec.INFO_TRY_AGAIN_LATER;
+        }
+
+        @Override
+        public ByteBuffer getOutputBuffer(final int index) {
+            output.clear();
+            return output;
+        }
+
+        @Override
+        public void releaseOutputBuffer(final int index, final boolean render) {
+        }
+
+        @Override
+        public MediaFormat getOutputFormat() {
+            final MediaFormat outputFormat = MediaFormat.createVideoFormat("video/avc",
+                format.getInteger(MediaFormat.KEY_WIDTH), format.getInteger(MediaFormat.KEY_HEIGHT));
+            outputFormat.setInteger(MediaFormat.KEY_BIT_RATE, format.getInteger(MediaFormat.KEY_BIT_RATE));
+            return outputFormat;
+        }
+
+        @Override
+        public void signalEndOfInputStream() {
+            endOfStream = true;
+        }
+
+        @Override
+        public void release() {
+            onReleased();
+        }
+    }
+
+    /**
+     * Writes the samples of every track to the output file one after another.
+     */
+    public class FakeMuxer implements Muxer {
+
+        private final FileOutputStream out;
+        private final FileChannel channel;
+        private final List<MediaFormat> formats = new ArrayList<>();
+        private final List<long[]> written = new ArrayList<>();
+        private int orientationHint = 0;
+        private boolean started = false;
+        private boolean stopped = false;
+
+        FakeMuxer(final File outputFile) throws IOException {
+            out = new FileOutputStream(outputFile);
+            channel = out.getChannel();
+        }
+
+        @Override
+        public int addTrack(final MediaFormat format) {
+            if (started) {
+                throw new IllegalStateException("Muxer already started");
+            }
+            formats.add(format);
+            written.add(new long[2]);
+            return formats.size() - 1;
+        }
+
+        @Override
+        public void setOrientationHint(final int degrees) {
+            orientationHint = degrees;
+        }
+
+        @Override
+        public void start() {
+            started = true;
+        }
+
+        @Override
+        public void writeSampleData(final int track, final ByteBuffer buffer, final MediaCodec.BufferInfo info) {
+            if (!started || stopped) {
+                throw new IllegalStateException("Muxer not started");
+            }
+            final ByteBuffer sample = buffer.duplicate();
+            sample.limit(info.offset + info.size);
+            sample.position(info.offset);
+            try {
+                while (sample.hasRemaining()) {
+                    channel.write(sample);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            written.get(track)[0]++;
+            written.get(track)[1] += info.size;
+        }
+
+        @Override
+        public void stop() {
+            if (!started) {
+                throw new IllegalStateException("Muxer not started");
+            }
+            stopped = true;
+        }
+
+        @Override
+        public void release() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // Nothing left to write
+            }
+            onReleased();
+        }
+
+        public List<MediaFormat> getFormats() {
+            return formats;
+        }
+
+        public int getOrientationHint() {
+            return orientationHint;
+        }
+
+        public boolean isStopped() {
+            return stopped;
+        }
+
+        /**
+         * @return the number of samples written to the track
+         */
+        public long getSamples(final int track) {
+            return written.get(track)[0];
+        }
+
+        /**
+         * @return the number of bytes written to the track
+         */
+        public long getBytes(final int track) {
+            return written.get(track)[1];
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class JobJournalTest {
+
+    private static final String[] URIS = {"content://media/1", "content://media/2", "content://media/3"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void picksSurviveARestart() throws Exception {
+        final File directory = folder.newFolder();
+        final JobJournal journal = new JobJournal(directory);
+        journal.create("pick-1", "request-1", new JSONObject().put("maxWidth", 800), URIS);
+        journal.recordItem("pick-1", 0, "key-0", "/cache/0.jpg", new JSONObject().put("size", 10));
+        journal.recordItem("pick-1", 2, "key-2", "/cache/2.jpg", new JSONObject().put("size", 30));
+
+        final JobJournal.Entry entry = single(new JobJournal(directory).getRecoveredEntries());
+        assertEquals("pick-1", entry.id);
+        assertEquals("request-1", entry.requestId);
+        assertEquals(800, entry.args.getInt("maxWidth"));
+        assertArrayEquals(URIS, entry.uris);
+        assertEquals(2, entry.items.size());
+        assertFalse(entry.items.containsKey(1));
+        assertEquals("key-2", entry.items.get(2).getString("cacheKey"));
+        assertEquals("/cache/2.jpg", entry.items.get(2).getString("outputPath"));
+        assertEquals(30, entry.items.get(2).getJSONObject("result").getInt("size"));
+        assertNull(entry.result);
+    }
+
+    @Test
+    public void completedPicksKeepTheirResult() throws Exception {
+        final File directory = folder.newFolder();
+        final JobJournal journal = new JobJournal(directory);
+        journal.create("pick-1", "request-1", new JSONObject(), URIS);
+        journal.complete("pick-1", new JSONObject().put("status", "OK"));
+
+        final JobJournal.Entry entry = single(new JobJournal(directory).getRecoveredEntries());
+        assertEquals("OK", entry.result.getString("status"));
+    }
+
+    @Test
+    public void picksOfThisProcessAreNotRecovered() throws Exception {
+        final JobJournal journal = new JobJournal(folder.newFolder());
+        journal.create("pick-1", "request-1", new JSONObject(), URIS);
+
+        assertTrue(journal.getRecoveredEntries().isEmpty());
+        assertEquals("pick-1", single(journal.getEntries()).id);
+    }
+
+    @Test
+    public void removedPicksAreForgotten() throws Exception {
+        final File directory = folder.newFolder();
+        final JobJournal journal = new JobJournal(directory);
+        journal.create("pick-1", "request-1", new JSONObject(), URIS);
+        journal.create("pick-2", "request-2", new JSONObject(), URIS);
+        journal.remove("pick-1");
+
+        assertEquals("pick-2", single(journal.getEntries()).id);
+        assertEquals("pick-2", single(new JobJournal(directory).getRecoveredEntries()).id);
+    }
+
+    @Test
+    public void anIdIsNeverJournaledTwice() throws Exception {
+        final File directory = folder.newFolder();
+        new JobJournal(directory).create("pick-1", "request-1", new JSONObject(), URIS);
+        try {
+            // Not even by a later process that has not looked at the entry yet
+            new JobJournal(directory).create("pick-1", "request-2", new JSONObject(), URIS);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertEquals("A pick is already journaled as pick-1", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void leftoverAndUnreadableFilesAreDropped() throws Exception {
+        final File directory = folder.newFolder();
+        new JobJournal(directory).create("pick-1", "request-1", new JSONObject(), URIS);
+        // As left by a write that was cut short
+        final File temp = writeFile(directory, "abc.json.part", "{\"id\":");
+        final File garbage = writeFile(directory, "def.json", "not json");
+
+        final JobJournal.Entry entry = single(new JobJournal(directory).getRecoveredEntries());
+        assertEquals("pick-1", entry.id);
+        assertFalse(temp.exists());
+        assertFalse(garbage.exists());
+    }
+
+    private static JobJournal.Entry single(final List<JobJournal.Entry> entries) throws JSONException {
+        assertEquals(1, entries.size());
+        return entries.get(0);
+    }
+
+    private static File writeFile(final File directory, final String name, final String content) throws IOException {
+        final File file = new File(directory, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
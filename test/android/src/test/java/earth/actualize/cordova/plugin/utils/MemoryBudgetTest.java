@@ -0,0 +1,138 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class MemoryBudgetTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+    // Long enough for a waiting acquire to have been admitted if it was going to be
+    private static final long SETTLE_MILLIS = 200;
+
+    @Test
+    public void imagesAreAdmittedWhileTheirFootprintsFit() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(100, 4);
+        budget.acquire(40);
+        budget.acquire(40);
+        final Acquirer third = new Acquirer(budget, 40);
+        assertFalse(third.admitted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+        assertEquals(1, stats(budget).getInt("queued"));
+
+        budget.release(40);
+        assertTrue(third.admitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        final JSONObject stats = stats(budget);
+        assertEquals(80, stats.getLong("inUseBytes"));
+        assertEquals(3, stats.getLong("admitted"));
+        assertEquals(1, stats.getLong("throttled"));
+        assertEquals(0, stats.getInt("queued"));
+    }
+
+    @Test
+    public void imagesLargerThanTheBudgetAreAdmittedAlone() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(100, 4);
+        budget.acquire(500);
+        final Acquirer next = new Acquirer(budget, 1);
+        assertFalse(next.admitted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+
+        budget.release(500);
+        assertTrue(next.admitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void concurrencyIsCappedWhateverTheFootprint() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(1000, 2);
+        budget.acquire(1);
+        budget.acquire(1);
+        final Acquirer third = new Acquirer(budget, 1);
+        assertFalse(third.admitted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+
+        budget.release(1);
+        assertTrue(third.admitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void pressureLowersTheBudgetAndConcurrency() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(100, 4);
+        budget.onPressure(MemoryBudget.PRESSURE_MODERATE);
+        assertEquals(50, budget.getBudgetBytes());
+        assertEquals(2, budget.getConcurrency());
+
+        budget.onPressure(MemoryBudget.PRESSURE_CRITICAL);
+        assertEquals(25, budget.getBudgetBytes());
+        assertEquals(1, budget.getConcurrency());
+
+        // A lower level does not lift a higher one
+        budget.onPressure(MemoryBudget.PRESSURE_MODERATE);
+        assertEquals(1, budget.getConcurrency());
+
+        // What fitted before now waits
+        budget.acquire(10);
+        final Acquirer second = new Acquirer(budget, 10);
+        assertFalse(second.admitted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+        budget.release(10);
+        assertTrue(second.admitted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, stats(budget).getLong("pressureEvents"));
+    }
+
+    @Test
+    public void interruptedWaitsLeaveTheQueue() throws Exception {
+        final MemoryBudget budget = new MemoryBudget(100, 4);
+        budget.acquire(100);
+        final Acquirer waiting = new Acquirer(budget, 50);
+        assertFalse(waiting.admitted.await(SETTLE_MILLIS, TimeUnit.MILLISECONDS));
+
+        waiting.thread.interrupt();
+        waiting.thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        assertTrue(waiting.interrupted);
+        final JSONObject stats = stats(budget);
+        assertEquals(0, stats.getInt("queued"));
+        assertEquals(0, stats.getLong("queuedBytes"));
+        assertEquals(100, stats.getLong("inUseBytes"));
+    }
+
+    private static JSONObject stats(final MemoryBudget budget) throws JSONException {
+        return new JSONObject(budget.getStats().jsonObj().toString());
+    }
+
+    /**
+     * Acquires a footprint on a thread of its own, as a worker would.
+     */
+    private static class Acquirer {
+
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread thread;
+        volatile boolean interrupted = false;
+
+        Acquirer(final MemoryBudget budget, final long bytes) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        budget.acquire(bytes);
+                        admitted.countDown();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            });
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+/**
+ * Builds the metadata a content provider would report, for tests outside this package.
+ */
+public final class TestMetadata {
+
+    private TestMetadata() {
+    }
+
+    /**
+     * @param orientation the clockwise rotation the provider reports, in degrees
+     */
+    public static MediaMetadata withOrientation(final String mimeType, final int orientation) {
+        return new MediaMetadata(mimeType, null, -1, -1, -1, orientation, -1, -1, -1, -1);
+    }
+}
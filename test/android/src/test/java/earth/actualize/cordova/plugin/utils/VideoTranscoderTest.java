@@ -0,0 +1,188 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import android.media.MediaFormat;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class VideoTranscoderTest {
+
+    private static final long SECOND_US = 1000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File output;
+
+    @Before
+    public void setUp() {
+        output = new File(folder.getRoot(), "video.mp4");
+    }
+
+    @Test
+    public void scalesDownToThePresetResolutionAndBitrate() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(1920, 1080, 2 * SECOND_US)
+            .setBitrate(20000000);
+        final VideoTranscoder.Result result = transcode(backend, "medium");
+
+        assertEquals("medium", result.preset);
+        assertEquals(960, result.width);
+        assertEquals(540, result.height);
+        assertEquals(2500000, result.bitrate);
+        assertEquals(output.length(), result.bytes);
+        assertEquals(60, backend.getFramesDrawn());
+        // Every frame of 2.5 Mbit/s at 30 fps, and no codec config buffer
+        assertEquals(60 * (2500000 / 8 / 30), backend.getMuxer().getBytes(0));
+        final MediaFormat format = backend.getMuxer().getFormats().get(0);
+        assertEquals("video/avc", format.getString(MediaFormat.KEY_MIME));
+        assertEquals(0, backend.getUnreleased());
+        assertFalse(new File(output.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void sourcesThatFitThePresetAreNotTranscoded() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(640, 360, 2 * SECOND_US)
+            .setBitrate(1000000);
+        assertNull(transcode(backend, "medium"));
+        assertFalse(output.exists());
+        assertEquals(0, backend.getUnreleased());
+    }
+
+    @Test
+    public void bitrateIsNeverRaised() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(3840, 2160, SECOND_US)
+            .setBitrate(3000000);
+        final VideoTranscoder.Result result = transcode(backend, "high");
+        assertEquals(1280, result.width);
+        assertEquals(720, result.height);
+        assertEquals(3000000, result.bitrate);
+    }
+
+    @Test
+    public void bitrateIsEstimatedFromTheSourceSize() throws IOException {
+        // 2 MB over 4 seconds is 4 Mbit/s, more than the preset allows
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(640, 480, 4 * SECOND_US)
+            .setSourceSize(2000000);
+        final VideoTranscoder.Result result = transcode(backend, "low");
+        assertEquals(640, result.width);
+        assertEquals(1000000, result.bitrate);
+    }
+
+    @Test
+    public void dimensionsAreEven() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(1366, 769, SECOND_US)
+            .setBitrate(10000000);
+        final VideoTranscoder.Result result = transcode(backend, "low");
+        assertEquals(640, result.width);
+        assertEquals(360, result.height);
+    }
+
+    @Test
+    public void audioIsCopiedAlongsideAndRotationKept() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(1920, 1080, 3 * SECOND_US)
+            .setBitrate(20000000)
+            .setRotation(90)
+            .setAudio(true);
+        final List<Double> progress = new ArrayList<>();
+        new VideoTranscoder(backend).transcode(output, VideoTranscoder.Preset.forQuality("low"),
+            new VideoTranscoder.ProgressListener() {
+                @Override
+                public void onProgress(double fraction) {
+                    progress.add(fraction);
+                }
+            });
+
+        final FakeTranscodeBackend.FakeMuxer muxer = backend.getMuxer();
+        assertTrue(muxer.isStopped());
+        assertEquals(90, muxer.getOrientationHint());
+        assertEquals(2, muxer.getFormats().size());
+        // Every AAC frame of 1024 samples at 48 kHz in 3 seconds
+        assertEquals((3 * SECOND_US * 48000 + 1024L * SECOND_US - 1) / (1024L * SECOND_US), muxer.getSamples(1));
+        for (int i = 1; i < progress.size(); i++) {
+            assertTrue(progress.get(i) > progress.get(i - 1));
+        }
+        assertEquals(1.0, progress.get(progress.size() - 1), 0);
+    }
+
+    @Test
+    public void failuresDeleteThePartialOutput() {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(1920, 1080, 2 * SECOND_US)
+            .setBitrate(20000000)
+            .setFailAfterFrames(10);
+        try {
+            transcode(backend, "medium");
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // The frame bridge timed out
+        }
+        assertEquals(0, folder.getRoot().list().length);
+        assertEquals(0, backend.getUnreleased());
+    }
+
+    @Test
+    public void cancelingStopsBetweenFrames() throws IOException {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(1920, 1080, 10 * SECOND_US)
+            .setBitrate(20000000);
+        try {
+            new VideoTranscoder(backend).transcode(output, VideoTranscoder.Preset.forQuality("medium"),
+                new VideoTranscoder.ProgressListener() {
+                    @Override
+                    public void onProgress(double fraction) {
+                        if (fraction >= 0.5) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException expected) {
+            // Canceled halfway
+        } finally {
+            Thread.interrupted();
+        }
+        assertTrue(backend.getFramesDrawn() < 300);
+        assertEquals(0, folder.getRoot().list().length);
+        assertEquals(0, backend.getUnreleased());
+    }
+
+    @Test
+    public void sourcesWithoutVideoAreRejected() {
+        final FakeTranscodeBackend backend = new FakeTranscodeBackend(0, 0, SECOND_US)
+            .setVideo(false)
+            .setAudio(true);
+        try {
+            transcode(backend, "medium");
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // No video track
+        }
+        assertEquals(0, backend.getUnreleased());
+    }
+
+    private VideoTranscoder.Result transcode(final FakeTranscodeBackend backend, final String quality)
+            throws IOException {
+        return new VideoTranscoder(backend).transcode(output, VideoTranscoder.Preset.forQuality(quality), null);
+    }
+}
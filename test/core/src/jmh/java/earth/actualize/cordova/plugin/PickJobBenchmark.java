@@ -0,0 +1,79 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scheduling overhead of a pick: its tasks are trivial, so what is measured is the
+ * job's dispatch through the shared pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PickJobBenchmark {
+
+    private static final int WORKER_COUNT = 4;
+
+    @Param({"1", "3"})
+    public int maxInFlight;
+
+    @Param({"1", "100"})
+    public int items;
+
+    private ThreadPoolExecutor pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        pool.prestartAllCoreThreads();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public int pick() throws InterruptedException, ExecutionException {
+        final PickJob job = new PickJob(pool, maxInFlight);
+        final List<Future<Integer>> futures = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            final int index = i;
+            futures.add(job.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return index;
+                }
+            }));
+        }
+        int sum = 0;
+        for (Future<Integer> future : futures) {
+            sum += future.get();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,51 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashing an output the size of a 12 MP JPEG as it is written, with and without a chunk manifest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ContentHasherBenchmark {
+
+    // The size of the writes of the output buffer
+    private static final int WRITE_SIZE = 64 * 1024;
+
+    @Param({"0", "64", "1024"})
+    public int chunkKB;
+
+    private byte[] data;
+
+    @Setup
+    public void setUp() {
+        data = new byte[JpegFixtures.scanBytesFor(12)];
+        new Random(1).nextBytes(data);
+    }
+
+    @Benchmark
+    public JsonArgs hash() {
+        final ContentHasher hasher = new ContentHasher(chunkKB * 1024);
+        for (int offset = 0; offset < data.length; offset += WRITE_SIZE) {
+            hasher.update(data, offset, Math.min(WRITE_SIZE, data.length - offset));
+        }
+        return hasher.toJson();
+    }
+}
@@ -0,0 +1,59 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The JPEG passthrough with stripMetadata, over camera-sized files of every EXIF orientation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JpegSegmentRewriterBenchmark {
+
+    @Param({"1", "12", "48", "100"})
+    public int megapixels;
+
+    @Param({"1", "2", "3", "4", "5", "6", "7", "8"})
+    public int orientation;
+
+    private byte[] jpeg;
+
+    @Setup
+    public void setUp() {
+        jpeg = JpegFixtures.cameraJpeg(orientation, false, JpegFixtures.scanBytesFor(megapixels));
+    }
+
+    @Benchmark
+    public long strip() throws IOException {
+        return JpegSegmentRewriter.copy(new ByteArrayInputStream(jpeg), new DiscardingOutputStream(), true);
+    }
+
+    /**
+     * Stands in for the output file, so that only the rewriter is measured.
+     */
+    static class DiscardingOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {}
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {}
+    }
+}
@@ -0,0 +1,94 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Key derivation, lookups and the index rebuild of a cache holding many small entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class OutputCacheBenchmark {
+
+    @Param({"100", "10000"})
+    public int entries;
+
+    private File directory;
+    private OutputCache cache;
+    private String[] keys;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("output-cache").toFile();
+        cache = new OutputCache(directory, Long.MAX_VALUE);
+        keys = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            keys[i] = OutputCache.keyFor("content://media/external/images/media/" + i, "1024:" + i, "jpeg", "90");
+            final File file = cache.fileFor(keys[i], "jpg");
+            final FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(new byte[1024]);
+            } finally {
+                out.close();
+            }
+            cache.put(keys[i], file);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+        directory.delete();
+    }
+
+    @Benchmark
+    public String keyFor() {
+        return OutputCache.keyFor("content://media/external/images/media/" + (next++), "1024:1700000000000",
+            "jpeg", "90", "0", "0", "fit", "ARGB_8888");
+    }
+
+    @Benchmark
+    public File hit() {
+        next = (next + 1) % entries;
+        return cache.get(keys[next]);
+    }
+
+    @Benchmark
+    public void trimWithNothingToEvict() {
+        cache.trimToSize(Collections.<String>emptyList());
+    }
+
+    /**
+     * The first use of the cache in a process, which scans the directory.
+     */
+    @Benchmark
+    public Object loadIndex() {
+        final OutputCache fresh = new OutputCache(directory, Long.MAX_VALUE);
+        fresh.recordMiss();
+        return fresh;
+    }
+}
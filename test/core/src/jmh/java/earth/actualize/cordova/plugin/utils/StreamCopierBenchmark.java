@@ -0,0 +1,83 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copying large videos to the output directory through the stream path, which providers
+ * without a file descriptor take, and hashing a copied file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class StreamCopierBenchmark {
+
+    @Param({"64", "256", "1024"})
+    public int sizeMB;
+
+    private File directory;
+    private File source;
+    private File destination;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("stream-copier").toFile();
+        source = new File(directory, "source.mp4");
+        destination = new File(directory, "copy.mp4");
+        final byte[] block = new byte[1024 * 1024];
+        new Random(1).nextBytes(block);
+        final FileOutputStream out = new FileOutputStream(source);
+        try {
+            for (int i = 0; i < sizeMB; i++) {
+                out.write(block);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        source.delete();
+        destination.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        final InputStream in = new FileInputStream(source);
+        try {
+            return StreamCopier.copy(in, destination).bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Benchmark
+    public JsonArgs hash() throws IOException {
+        return ContentHasher.hashFile(source, 0);
+    }
+}
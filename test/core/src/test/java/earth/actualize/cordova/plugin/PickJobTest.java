@@ -0,0 +1,345 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PickJobTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private ThreadPoolExecutor pool;
+    private ThreadPoolExecutor spare;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        if (spare != null) {
+            spare.shutdownNow();
+        }
+    }
+
+    @Test
+    public void runsAtMostMaxInFlightTasksAtOnce() throws Exception {
+        pool = newPool(4);
+        final PickJob job = new PickJob(pool, 2);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int index = i;
+            futures.add(job.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    final int now = running.incrementAndGet();
+                    int max = maxRunning.get();
+                    while (now > max && !maxRunning.compareAndSet(max, now)) {
+                        max = maxRunning.get();
+                    }
+                    Thread.sleep(20);
+                    running.decrementAndGet();
+                    return index;
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(i, (int) futures.get(i).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        }
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void tasksOfConcurrentJobsInterleave() throws Exception {
+        pool = newPool(1);
+        final PickJob first = new PickJob(pool, 1);
+        final PickJob second = new PickJob(pool, 1);
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch submitted = new CountDownLatch(1);
+
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            futures.add(first.submit(record(order, "a" + i, i == 1 ? submitted : null)));
+        }
+        for (int i = 1; i <= 3; i++) {
+            futures.add(second.submit(record(order, "b" + i, null)));
+        }
+        submitted.countDown();
+        for (Future<?> future : futures) {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Arrays.asList("a1", "b1", "a2", "b2", "a3", "b3"), order);
+    }
+
+    @Test
+    public void dispatchCallbackRunsWhenTheTaskIsHandedToThePool() throws Exception {
+        pool = newPool(1);
+        final PickJob job = new PickJob(pool, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger dispatched = new AtomicInteger();
+        final Runnable onDispatch = new Runnable() {
+            @Override
+            public void run() {
+                dispatched.incrementAndGet();
+            }
+        };
+
+        final Future<?> blocking = job.submit(record(new ArrayList<String>(), "first", release), onDispatch);
+        final Future<?> queued = job.submit(record(new ArrayList<String>(), "second", null), onDispatch);
+        assertEquals(1, dispatched.get());
+
+        release.countDown();
+        blocking.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        queued.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, dispatched.get());
+    }
+
+    @Test
+    public void cancelDropsWaitingTasksAndRejectsNewOnes() throws Exception {
+        pool = newPool(1);
+        final PickJob job = new PickJob(pool, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger ran = new AtomicInteger();
+        final Future<?> running = job.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                started.countDown();
+                Thread.sleep(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+                return null;
+            }
+        });
+        final Future<?> waiting = job.submit(count(ran));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        job.cancel();
+        assertTrue(job.isCanceled());
+        assertTrue(running.isCancelled());
+        assertTrue(waiting.isCancelled());
+        assertTrue(job.submit(count(ran)).isCancelled());
+
+        // The pool is free again once the interrupted task has returned
+        final PickJob next = new PickJob(pool, 1);
+        next.submit(count(ran)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void tasksAfterAnAbandonedOneRunOnASpareThreadUntilItReturns() throws Exception {
+        pool = newPool(1);
+        spare = newSparePool(1);
+        final PickJob job = new PickJob(pool, spare, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Future<?> stuck = job.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                started.countDown();
+                awaitIgnoringInterrupts(unblock);
+                return null;
+            }
+        });
+        final AtomicInteger ran = new AtomicInteger();
+        final Future<?> next = job.submit(count(ran));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(job.abandon(stuck));
+        assertTrue(stuck.isCancelled());
+        // The next task runs on the spare thread while the stuck one still holds the only worker
+        next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, ran.get());
+        assertEquals(1, spare.getTaskCount());
+        // The shared pool keeps its size
+        assertEquals(1, pool.getCorePoolSize());
+        assertEquals(1, pool.getMaximumPoolSize());
+
+        unblock.countDown();
+        waitForIdlePool();
+        job.submit(count(ran)).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(2, ran.get());
+        assertEquals(1, spare.getTaskCount());
+    }
+
+    @Test
+    public void tasksGoToThePoolWhenEverySpareThreadIsTaken() throws Exception {
+        pool = newPool(2);
+        spare = newSparePool(1);
+        final CountDownLatch spareTaken = new CountDownLatch(1);
+        final CountDownLatch releaseSpare = new CountDownLatch(1);
+        spare.execute(new Runnable() {
+            @Override
+            public void run() {
+                spareTaken.countDown();
+                awaitIgnoringInterrupts(releaseSpare);
+            }
+        });
+        assertTrue(spareTaken.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final PickJob job = new PickJob(pool, spare, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final Future<?> stuck = job.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                started.countDown();
+                awaitIgnoringInterrupts(unblock);
+                return null;
+            }
+        });
+        final AtomicInteger ran = new AtomicInteger();
+        final Future<?> next = job.submit(count(ran));
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        assertTrue(job.abandon(stuck));
+        next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, ran.get());
+        assertEquals(1, spare.getTaskCount());
+        unblock.countDown();
+        releaseSpare.countDown();
+    }
+
+    @Test
+    public void abandoningAQueuedTaskFreesItsSlotWithoutASpareThread() throws Exception {
+        pool = newPool(1);
+        final PickJob blocker = new PickJob(pool, 1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Future<?> blocking = blocker.submit(record(new ArrayList<String>(), "blocking", release));
+
+        spare = newSparePool(1);
+        final PickJob job = new PickJob(pool, spare, 1);
+        final AtomicInteger ran = new AtomicInteger();
+        final Future<?> queued = job.submit(count(ran));
+        final Future<?> next = job.submit(count(ran));
+        assertTrue(job.abandon(queued));
+
+        release.countDown();
+        blocking.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertEquals(1, ran.get());
+        // Nothing was stuck, so nothing needed a spare thread
+        assertEquals(0, spare.getTaskCount());
+    }
+
+    @Test
+    public void completedTasksCannotBeAbandoned() throws Exception {
+        pool = newPool(1);
+        final PickJob job = new PickJob(pool, 1);
+        final Future<?> done = job.submit(count(new AtomicInteger()));
+        done.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertFalse(job.abandon(done));
+    }
+
+    @Test
+    public void taskFailuresReachTheirFuture() throws Exception {
+        pool = newPool(1);
+        final PickJob job = new PickJob(pool, 1);
+        final Future<?> failing = job.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("Broken item");
+            }
+        });
+        try {
+            failing.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            fail("Expected an ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        // The failed task gave its slot back
+        job.submit(count(new AtomicInteger())).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static ThreadPoolExecutor newPool(final int threads) {
+        return new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Like the plugin's spare pool: hands tasks over directly and rejects them when every thread is busy.
+     */
+    private static ThreadPoolExecutor newSparePool(final int threads) {
+        return new ThreadPoolExecutor(0, threads, 30, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+    }
+
+    private static Callable<Void> record(final List<String> order, final String name, final CountDownLatch gate) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                if (gate != null && !gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    throw new TimeoutException(name);
+                }
+                order.add(name);
+                return null;
+            }
+        };
+    }
+
+    private static Callable<Void> count(final AtomicInteger counter) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() {
+                counter.incrementAndGet();
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Blocks like a read from a stalled provider, which ignores interrupts.
+     */
+    private static void awaitIgnoringInterrupts(final CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    break;
+                }
+                throw new AssertionError("Never unblocked");
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the stuck task to return its worker.
+     */
+    private void waitForIdlePool() throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (pool.getActiveCount() > 0) {
+            if (System.nanoTime() > deadline) {
+                fail("The stuck task never returned");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ContentHasherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hashesKnownInput() throws JSONException {
+        final ContentHasher hasher = new ContentHasher(0);
+        final byte[] abc = {'a', 'b', 'c'};
+        hasher.update(abc, 0, abc.length);
+        final JSONObject json = hasher.toJson().jsonObj();
+        assertEquals(ContentHasher.ALGORITHM, json.getString("algorithm"));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", json.getString("sha256"));
+        assertEquals(3, json.getLong("size"));
+        assertFalse(json.has("chunks"));
+    }
+
+    @Test
+    public void wrappedStreamHashesWhatItWrites() throws IOException, JSONException {
+        final byte[] data = randomBytes(300000);
+        final ContentHasher hasher = new ContentHasher(0);
+        final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        final OutputStream out = hasher.wrap(written);
+        out.write(data[0]);
+        out.write(data, 1, 1000);
+        out.write(data, 1001, data.length - 1001);
+        out.close();
+
+        assertArrayEquals(data, written.toByteArray());
+        assertEquals(sha256(data), hasher.toJson().jsonObj().getString("sha256"));
+    }
+
+    @Test
+    public void chunksAreIndependentOfWriteSizes() throws JSONException {
+        final byte[] data = randomBytes(10 * 1024 + 17);
+        final int chunkSize = 1024;
+        final ContentHasher oneShot = new ContentHasher(chunkSize);
+        oneShot.update(data, 0, data.length);
+
+        final ContentHasher ragged = new ContentHasher(chunkSize);
+        final Random random = new Random(1);
+        for (int offset = 0; offset < data.length; ) {
+            final int length = Math.min(data.length - offset, 1 + random.nextInt(3 * chunkSize));
+            ragged.update(data, offset, length);
+            offset += length;
+        }
+
+        assertEquals(oneShot.toJson().jsonObj().toString(), ragged.toJson().jsonObj().toString());
+    }
+
+    @Test
+    public void chunksCoverTheContentInOrder() throws JSONException {
+        final byte[] data = randomBytes(10);
+        final ContentHasher hasher = new ContentHasher(4);
+        hasher.update(data, 0, data.length);
+
+        final JSONObject json = hasher.toJson().jsonObj();
+        assertEquals(4, json.getInt("chunkSize"));
+        final JSONArray chunks = json.getJSONArray("chunks");
+        assertEquals(3, chunks.length());
+        final int[][] ranges = {{0, 4}, {4, 4}, {8, 2}};
+        for (int i = 0; i < ranges.length; i++) {
+            final JSONObject chunk = chunks.getJSONObject(i);
+            final int offset = ranges[i][0];
+            final int size = ranges[i][1];
+            assertEquals(offset, chunk.getLong("offset"));
+            assertEquals(size, chunk.getInt("size"));
+            assertEquals(sha256(Arrays.copyOfRange(data, offset, offset + size)), chunk.getString("sha256"));
+        }
+    }
+
+    @Test
+    public void exactMultipleOfTheChunkSizeHasNoEmptyChunk() throws JSONException {
+        final byte[] data = randomBytes(8);
+        final ContentHasher hasher = new ContentHasher(4);
+        hasher.update(data, 0, data.length);
+        assertEquals(2, hasher.toJson().jsonObj().getJSONArray("chunks").length());
+    }
+
+    @Test
+    public void hashIsComputedOnce() {
+        final ContentHasher hasher = new ContentHasher(0);
+        final byte[] data = randomBytes(16);
+        hasher.update(data, 0, data.length);
+        assertSame(hasher.toJson(), hasher.toJson());
+        try {
+            hasher.update(data, 0, data.length);
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException expected) {
+            // Already computed
+        }
+    }
+
+    @Test
+    public void hashFileMatchesStreamingHash() throws IOException {
+        final byte[] data = randomBytes(200000);
+        final File file = folder.newFile("data.bin");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+
+        final ContentHasher hasher = new ContentHasher(64 * 1024);
+        hasher.update(data, 0, data.length);
+        assertEquals(hasher.toJson().jsonObj().toString(), ContentHasher.hashFile(file, 64 * 1024).jsonObj().toString());
+    }
+
+    private static byte[] randomBytes(final int length) {
+        final byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static String sha256(final byte[] data) {
+        try {
+            return OutputCache.toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageGeometryTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void scaleIsOneWithoutBounds() {
+        assertEquals(1.0, ImageGeometry.computeScale(4000, 3000, 0, 0, false), DELTA);
+        assertEquals(1.0, ImageGeometry.computeScale(4000, 3000, 0, 0, true), DELTA);
+    }
+
+    @Test
+    public void scaleFitsInsideBothBounds() {
+        assertEquals(0.25, ImageGeometry.computeScale(4000, 3000, 1000, 1000, false), DELTA);
+        assertEquals(0.5, ImageGeometry.computeScale(4000, 3000, 0, 1500, false), DELTA);
+        assertEquals(0.5, ImageGeometry.computeScale(4000, 3000, 2000, 0, false), DELTA);
+    }
+
+    @Test
+    public void scaleFillsBothBounds() {
+        assertEquals(1000.0 / 3000, ImageGeometry.computeScale(4000, 3000, 1000, 1000, true), DELTA);
+    }
+
+    @Test
+    public void scaleNeverEnlarges() {
+        assertEquals(1.0, ImageGeometry.computeScale(800, 600, 1600, 1200, false), DELTA);
+        assertEquals(1.0, ImageGeometry.computeScale(800, 600, 1600, 100, true), DELTA);
+    }
+
+    @Test
+    public void sampleSizeIsLargestPowerOfTwoKeepingTheTargetSize() {
+        assertEquals(1, ImageGeometry.computeSampleSize(4000, 3000, 1.0));
+        assertEquals(1, ImageGeometry.computeSampleSize(4000, 3000, 0.6));
+        assertEquals(2, ImageGeometry.computeSampleSize(4000, 3000, 0.5));
+        assertEquals(2, ImageGeometry.computeSampleSize(4000, 3000, 0.3));
+        assertEquals(4, ImageGeometry.computeSampleSize(4000, 3000, 0.25));
+        assertEquals(16, ImageGeometry.computeSampleSize(12000, 8000, 0.05));
+    }
+
+    @Test
+    public void sampledSizeIsNeverBelowTheTarget() {
+        final int[][] sizes = {{4000, 3000}, {3000, 4000}, {12000, 8000}, {641, 479}, {10000, 10000}};
+        final double[] scales = {1.0, 0.9, 0.5, 0.33, 0.25, 0.1, 0.01, 0.001};
+        for (int[] size : sizes) {
+            for (double scale : scales) {
+                final int sampleSize = ImageGeometry.computeSampleSize(size[0], size[1], scale);
+                assertTrue(Integer.bitCount(sampleSize) == 1);
+                assertTrue(size[0] / sampleSize >= Math.max(1, Math.round(size[0] * scale)));
+                assertTrue(size[1] / sampleSize >= Math.max(1, Math.round(size[1] * scale)));
+            }
+        }
+    }
+
+    @Test
+    public void rotationsOfTheEightOrientations() {
+        // Mirrored orientations rotate after the flip: 4 is a half turn, 5 three quarters, 7 one quarter
+        final int[] degrees = {0, 0, 0, 180, 180, 270, 90, 90, 270};
+        final boolean[] mirrored = {false, false, true, false, true, true, false, true, false};
+        for (int orientation = 0; orientation <= 8; orientation++) {
+            assertEquals("orientation " + orientation, degrees[orientation], ImageGeometry.rotationDegrees(orientation));
+            assertEquals("orientation " + orientation, mirrored[orientation], ImageGeometry.isMirrored(orientation));
+        }
+    }
+
+    @Test
+    public void orientationOfDegreesRoundTrips() {
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            assertEquals(degrees, ImageGeometry.rotationDegrees(ImageGeometry.orientationForDegrees(degrees)));
+        }
+        assertEquals(ImageGeometry.ORIENTATION_UNDEFINED, ImageGeometry.orientationForDegrees(-1));
+        assertEquals(ImageGeometry.ORIENTATION_UNDEFINED, ImageGeometry.orientationForDegrees(45));
+    }
+
+    @Test
+    public void quarterTurnsSwapAxes() {
+        assertTrue(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_ROTATE_90));
+        assertTrue(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_ROTATE_270));
+        assertTrue(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_TRANSPOSE));
+        assertTrue(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_TRANSVERSE));
+        assertFalse(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_NORMAL));
+        assertFalse(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_FLIP_HORIZONTAL));
+        assertFalse(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_ROTATE_180));
+        assertFalse(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_FLIP_VERTICAL));
+        assertFalse(ImageGeometry.swapsAxes(ImageGeometry.ORIENTATION_UNDEFINED));
+    }
+}
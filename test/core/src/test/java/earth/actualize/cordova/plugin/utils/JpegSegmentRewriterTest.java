@@ -0,0 +1,133 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JpegSegmentRewriterTest {
+
+    private static final int SCAN_BYTES = 64 * 1024;
+
+    @Test
+    public void detectsJpegsWithoutConsumingTheStream() throws IOException {
+        final InputStream jpeg = new BufferedInputStream(new ByteArrayInputStream(JpegFixtures.cameraJpeg(1, false, 16)));
+        assertTrue(JpegSegmentRewriter.isJpeg(jpeg));
+        assertEquals(0xFF, jpeg.read());
+        assertEquals(0xD8, jpeg.read());
+
+        final InputStream png = new BufferedInputStream(new ByteArrayInputStream(new byte[] {(byte) 0x89, 'P', 'N', 'G'}));
+        assertFalse(JpegSegmentRewriter.isJpeg(png));
+        assertEquals(0x89, png.read());
+    }
+
+    @Test
+    public void copiesAsIsWithoutStripping() throws IOException {
+        final byte[] jpeg = JpegFixtures.cameraJpeg(6, false, SCAN_BYTES);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(jpeg.length, JpegSegmentRewriter.copy(new ByteArrayInputStream(jpeg), out, false));
+        assertArrayEquals(jpeg, out.toByteArray());
+    }
+
+    @Test
+    public void strippingKeepsTheOrientationOfAllEightOrientations() throws IOException {
+        for (boolean littleEndian : new boolean[] {false, true}) {
+            for (int orientation = 1; orientation <= 8; orientation++) {
+                final byte[] stripped = strip(JpegFixtures.cameraJpeg(orientation, littleEndian, SCAN_BYTES));
+                // Orientation 1 is the default, so no EXIF block is needed for it
+                assertEquals("orientation " + orientation + (littleEndian ? " II" : " MM"),
+                    orientation == 1 ? 0 : orientation, JpegFixtures.exifOrientation(stripped));
+            }
+        }
+    }
+
+    @Test
+    public void strippingDropsMetadataAndKeepsDecodingSegments() throws IOException {
+        final byte[] stripped = strip(JpegFixtures.cameraJpeg(8, true, SCAN_BYTES));
+        final List<Integer> expected = Arrays.asList(JpegFixtures.MARKER_APP0, JpegFixtures.MARKER_APP1,
+            JpegFixtures.MARKER_APP2, JpegFixtures.MARKER_APP14, JpegFixtures.MARKER_DQT, JpegFixtures.MARKER_SOF0,
+            JpegFixtures.MARKER_DHT, JpegFixtures.MARKER_SOS);
+        assertEquals(expected, JpegFixtures.segmentMarkers(stripped));
+    }
+
+    @Test
+    public void strippingCopiesTheEntropyCodedDataVerbatim() throws IOException {
+        final byte[] jpeg = JpegFixtures.cameraJpeg(3, false, SCAN_BYTES);
+        final byte[] stripped = strip(jpeg);
+        assertTrue(stripped.length < jpeg.length);
+        assertArrayEquals(Arrays.copyOfRange(jpeg, jpeg.length - SCAN_BYTES - 2, jpeg.length),
+            Arrays.copyOfRange(stripped, stripped.length - SCAN_BYTES - 2, stripped.length));
+    }
+
+    @Test
+    public void strippedJpegDecodesToTheSamePixels() throws IOException {
+        final byte[] jpeg = JpegFixtures.realJpeg(320, 240, 6);
+        final byte[] stripped = strip(jpeg);
+        assertEquals(6, JpegFixtures.exifOrientation(stripped));
+
+        final BufferedImage original = ImageIO.read(new ByteArrayInputStream(jpeg));
+        final BufferedImage copy = ImageIO.read(new ByteArrayInputStream(stripped));
+        assertEquals(original.getWidth(), copy.getWidth());
+        assertEquals(original.getHeight(), copy.getHeight());
+        for (int y = 0; y < original.getHeight(); y += 7) {
+            for (int x = 0; x < original.getWidth(); x += 7) {
+                assertEquals(original.getRGB(x, y), copy.getRGB(x, y));
+            }
+        }
+    }
+
+    @Test
+    public void returnsTheBytesWritten() throws IOException {
+        final byte[] jpeg = JpegFixtures.cameraJpeg(5, false, SCAN_BYTES);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long written = JpegSegmentRewriter.copy(new ByteArrayInputStream(jpeg), out, true);
+        assertEquals(out.size(), written);
+    }
+
+    @Test
+    public void rejectsNonJpegsWhenStripping() {
+        try {
+            strip(new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0});
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // Not a JPEG
+        }
+    }
+
+    @Test
+    public void rejectsTruncatedHeaders() {
+        final byte[] jpeg = JpegFixtures.cameraJpeg(6, false, SCAN_BYTES);
+        try {
+            strip(Arrays.copyOf(jpeg, 200));
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // Ends inside the EXIF block
+        }
+    }
+
+    private static byte[] strip(final byte[] jpeg) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length);
+        JpegSegmentRewriter.copy(new ByteArrayInputStream(jpeg), out, true);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,40 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+public class MediaMetadataTest {
+
+    @Test
+    public void versionChangesWithTheModificationTime() {
+        assertEquals("1000:5000", metadata(1000, 5000, -1).version());
+        assertNotEquals(metadata(1000, 5000, -1).version(), metadata(1000, 6000, -1).version());
+    }
+
+    @Test
+    public void versionChangesWithTheGeneration() {
+        // Two edits within the same second keep the modification time
+        assertNotEquals(metadata(1000, 5000, 7).version(), metadata(1000, 5000, 8).version());
+        assertNotEquals(metadata(1000, -1, 7).version(), metadata(1000, -1, 8).version());
+    }
+
+    @Test
+    public void itemsWithoutModificationInfoHaveNoVersion() {
+        assertNull(metadata(1000, -1, -1).version());
+        assertNull(metadata(-1, 5000, 7).version());
+        assertNull(MediaMetadata.ofMimeType("image/jpeg").version());
+    }
+
+    private static MediaMetadata metadata(final long size, final long dateModifiedMs, final long generationModified) {
+        return new MediaMetadata("image/jpeg", null, size, -1, -1, -1, -1, -1, dateModifiedMs, generationModified);
+    }
+}
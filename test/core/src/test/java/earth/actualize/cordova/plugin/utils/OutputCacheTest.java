@@ -0,0 +1,203 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OutputCacheTest {
+
+    private static final int ENTRY_BYTES = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File directory;
+
+    @Before
+    public void setUp() {
+        directory = new File(folder.getRoot(), "cache");
+    }
+
+    @Test
+    public void keysAreHexDigestsOfTheSeparatedParts() {
+        final String key = OutputCache.keyFor("content://media/1", "1024:1700000000000", "jpeg", "90");
+        assertEquals(64, key.length());
+        assertTrue(key.matches("[0-9a-f]+"));
+        assertEquals(key, OutputCache.keyFor("content://media/1", "1024:1700000000000", "jpeg", "90"));
+        assertNotEquals(OutputCache.keyFor("ab", "c"), OutputCache.keyFor("a", "bc"));
+        assertNotEquals(OutputCache.keyFor("a", null), OutputCache.keyFor("a"));
+    }
+
+    @Test
+    public void missesUntilPutThenHits() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 1000);
+        final String key = OutputCache.keyFor("a");
+        assertNull(cache.get(key));
+
+        cache.put(key, write(cache, key));
+        assertEquals(cache.fileFor(key, "jpg"), cache.get(key));
+
+        final Map<String, Object> stats = cache.getStats().getArgsMap();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(0.5, (Double) stats.get("hitRate"), 1e-9);
+        assertEquals(1, stats.get("entries"));
+        assertEquals((long) ENTRY_BYTES, stats.get("bytes"));
+    }
+
+    @Test
+    public void deletedFilesAreMisses() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 1000);
+        final String key = OutputCache.keyFor("a");
+        cache.put(key, write(cache, key));
+        assertTrue(cache.fileFor(key, "jpg").delete());
+
+        assertNull(cache.get(key));
+        assertEquals(0, cache.getStats().getArgsMap().get("entries"));
+        assertEquals(0L, cache.getStats().getArgsMap().get("bytes"));
+    }
+
+    @Test
+    public void trimEvictsLeastRecentlyUsedFirst() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 2 * ENTRY_BYTES);
+        final String a = put(cache, "a");
+        final String b = put(cache, "b");
+        final String c = put(cache, "c");
+        cache.get(a);
+
+        cache.trimToSize(Collections.<String>emptyList());
+        assertNull(cache.get(b));
+        assertEquals(cache.fileFor(a, "jpg"), cache.get(a));
+        assertEquals(cache.fileFor(c, "jpg"), cache.get(c));
+        assertFalse(cache.fileFor(b, "jpg").exists());
+        assertEquals(1L, cache.getStats().getArgsMap().get("evictions"));
+    }
+
+    @Test
+    public void trimKeepsRequestedKeys() throws IOException {
+        final OutputCache cache = new OutputCache(directory, ENTRY_BYTES);
+        final String a = put(cache, "a");
+        final String b = put(cache, "b");
+
+        cache.trimToSize(Collections.singletonList(a));
+        assertTrue(cache.fileFor(a, "jpg").exists());
+        assertFalse(cache.fileFor(b, "jpg").exists());
+    }
+
+    @Test
+    public void pinnedKeysSurviveEveryTrimUntilUnpinned() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 0);
+        final String a = OutputCache.keyFor("a");
+        // Pinned before the entry is written, as a pick does before processing an item
+        cache.pin(a);
+        cache.pin(a);
+        cache.put(a, write(cache, a));
+        assertEquals(1, cache.getStats().getArgsMap().get("pinned"));
+
+        cache.trimToSize(Collections.<String>emptyList());
+        assertTrue(cache.fileFor(a, "jpg").exists());
+
+        cache.unpin(Collections.singletonList(a));
+        cache.trimToSize(Collections.<String>emptyList());
+        assertTrue(cache.fileFor(a, "jpg").exists());
+
+        cache.unpin(Collections.singletonList(a));
+        assertEquals(0, cache.getStats().getArgsMap().get("pinned"));
+        cache.trimToSize(Collections.<String>emptyList());
+        assertFalse(cache.fileFor(a, "jpg").exists());
+    }
+
+    @Test
+    public void putReplacesThePreviousFileOfAKey() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 1000);
+        final String key = OutputCache.keyFor("a");
+        final File jpeg = write(cache, key);
+        cache.put(key, jpeg);
+
+        final File webp = cache.fileFor(key, "webp");
+        writeBytes(webp, 2 * ENTRY_BYTES);
+        cache.put(key, webp);
+        assertFalse(jpeg.exists());
+        assertEquals(webp, cache.get(key));
+        assertEquals(2L * ENTRY_BYTES, cache.getStats().getArgsMap().get("bytes"));
+    }
+
+    @Test
+    public void indexIsRebuiltFromTheDirectoryInRecencyOrder() throws IOException {
+        final OutputCache first = new OutputCache(directory, 1000);
+        final String a = put(first, "a");
+        final String b = put(first, "b");
+        // b was used before a
+        assertTrue(first.fileFor(b, "jpg").setLastModified(1000000000000L));
+        assertTrue(first.fileFor(a, "jpg").setLastModified(1000000001000L));
+        final File leftover = new File(directory, OutputCache.keyFor("c") + ".jpg.part");
+        writeBytes(leftover, ENTRY_BYTES);
+        final File unrelated = new File(directory, "notes.txt");
+        writeBytes(unrelated, ENTRY_BYTES);
+
+        final OutputCache second = new OutputCache(directory, ENTRY_BYTES);
+        second.trimToSize(Collections.<String>emptyList());
+        assertFalse(leftover.exists());
+        assertTrue(unrelated.exists());
+        assertFalse(second.fileFor(b, "jpg").exists());
+        assertEquals(second.fileFor(a, "jpg"), second.get(a));
+        assertEquals(1, second.getStats().getArgsMap().get("entries"));
+    }
+
+    @Test
+    public void clearDeletesEveryEntry() throws IOException {
+        final OutputCache cache = new OutputCache(directory, 1000);
+        for (String key : Arrays.asList(put(cache, "a"), put(cache, "b"))) {
+            assertTrue(cache.fileFor(key, "jpg").exists());
+        }
+        cache.clear();
+        assertEquals(0, cache.getStats().getArgsMap().get("entries"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void toHexKeepsLeadingZeros() {
+        assertEquals("000fff10", OutputCache.toHex(new byte[] {0, 15, (byte) 0xFF, 16}));
+    }
+
+    private static String put(final OutputCache cache, final String source) throws IOException {
+        final String key = OutputCache.keyFor(source);
+        cache.put(key, write(cache, key));
+        return key;
+    }
+
+    private static File write(final OutputCache cache, final String key) throws IOException {
+        final File file = cache.fileFor(key, "jpg");
+        writeBytes(file, ENTRY_BYTES);
+        return file;
+    }
+
+    private static void writeBytes(final File file, final int length) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[length]);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PipelineMetricsTest {
+
+    private static final long MS = 1000000L;
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void percentilesAreNearestRank() throws JSONException {
+        final PipelineMetrics metrics = new PipelineMetrics(100);
+        // Recorded out of order
+        for (int i = 100; i >= 1; i--) {
+            metrics.record(StageTimings.DECODE, i * MS, 1000);
+        }
+
+        final JSONObject decode = stage(metrics, StageTimings.DECODE);
+        assertEquals(100, decode.getLong("count"));
+        assertEquals(50.0, decode.getDouble("p50Ms"), DELTA);
+        assertEquals(95.0, decode.getDouble("p95Ms"), DELTA);
+        assertEquals(100.0, decode.getDouble("maxMs"), DELTA);
+        assertEquals(100000, decode.getLong("totalBytes"));
+    }
+
+    @Test
+    public void percentilesCoverTheMostRecentWindow() throws JSONException {
+        final PipelineMetrics metrics = new PipelineMetrics(10);
+        for (int i = 1; i <= 30; i++) {
+            metrics.record(StageTimings.ENCODE, (i <= 20 ? 1000 : i) * MS, -1);
+        }
+
+        final JSONObject encode = stage(metrics, StageTimings.ENCODE);
+        // Count and maximum are over every sample, the percentiles over the last ten: 21..30
+        assertEquals(30, encode.getLong("count"));
+        assertEquals(1000.0, encode.getDouble("maxMs"), DELTA);
+        assertEquals(25.0, encode.getDouble("p50Ms"), DELTA);
+        assertEquals(30.0, encode.getDouble("p95Ms"), DELTA);
+        assertEquals(0, encode.getLong("totalBytes"));
+    }
+
+    @Test
+    public void itemsAddTheirStagesAndPeakBitmapMemory() throws JSONException {
+        final PipelineMetrics metrics = new PipelineMetrics(8);
+        final StageTimings first = new StageTimings();
+        first.end(StageTimings.DECODE, first.begin(), 4000);
+        first.end(StageTimings.ENCODE, first.begin(), 1000);
+        first.recordBitmapBytes(48000000);
+        metrics.record(first);
+
+        final StageTimings second = new StageTimings();
+        second.end(StageTimings.PASSTHROUGH, second.begin(), 2000);
+        second.recordBitmapBytes(1000);
+        metrics.record(second);
+
+        final JSONObject stats = metrics.getStats().jsonObj();
+        assertEquals(2, stats.getLong("items"));
+        assertEquals(48000000, stats.getLong("peakBitmapBytes"));
+        assertEquals(8, stats.getInt("windowSize"));
+        assertEquals(1, stage(metrics, StageTimings.DECODE).getLong("count"));
+        assertEquals(4000, stage(metrics, StageTimings.DECODE).getLong("totalBytes"));
+        assertEquals(2000, stage(metrics, StageTimings.PASSTHROUGH).getLong("totalBytes"));
+    }
+
+    @Test
+    public void resetForgetsEverything() throws JSONException {
+        final PipelineMetrics metrics = new PipelineMetrics(8);
+        final StageTimings timings = new StageTimings();
+        timings.end(StageTimings.TOTAL, timings.begin());
+        timings.recordBitmapBytes(1000);
+        metrics.record(timings);
+        metrics.reset();
+
+        final JSONObject stats = metrics.getStats().jsonObj();
+        assertEquals(0, stats.getLong("items"));
+        assertEquals(0, stats.getLong("peakBitmapBytes"));
+        assertEquals(0, stats.getJSONObject("stages").length());
+    }
+
+    @Test
+    public void stageTimingsAccumulateRepeatedStages() throws JSONException {
+        final StageTimings timings = new StageTimings();
+        timings.end(StageTimings.DECODE, timings.begin());
+        timings.addBytes(StageTimings.DECODE, 100);
+        timings.addBytes(StageTimings.DECODE, 50);
+        timings.addBytes(StageTimings.DECODE, -1);
+        timings.end(StageTimings.ROTATE, timings.begin());
+        timings.recordBitmapBytes(300);
+        timings.recordBitmapBytes(200);
+
+        final JSONObject json = timings.toJson().jsonObj();
+        assertEquals(150, json.getJSONObject(StageTimings.DECODE).getLong("bytes"));
+        assertTrue(json.getJSONObject(StageTimings.DECODE).has("ms"));
+        assertFalse(json.getJSONObject(StageTimings.ROTATE).has("bytes"));
+        assertEquals(300, json.getLong("peakBitmapBytes"));
+    }
+
+    @Test
+    public void millisecondsAreRoundedToOneDecimal() {
+        assertEquals(1.2, PipelineMetrics.toMillis(1234567), DELTA);
+        assertEquals(0.0, PipelineMetrics.toMillis(0), DELTA);
+    }
+
+    private static JSONObject stage(final PipelineMetrics metrics, final String name) throws JSONException {
+        return metrics.getStats().jsonObj().getJSONObject("stages").getJSONObject(name);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StreamCopierTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void transferCopiesTheWholeSource() throws IOException {
+        final byte[] data = randomBytes(300000);
+        final File source = write(data);
+        final File target = folder.newFile();
+        final long[] progress = {0};
+        final long bytes = transfer(source, target, data.length, new ProgressInputStream.Listener() {
+            @Override
+            public void onBytesRead(final long bytesRead) {
+                progress[0] = bytesRead;
+            }
+        });
+
+        assertEquals(data.length, bytes);
+        assertEquals(data.length, progress[0]);
+        assertArrayEquals(data, Files.readAllBytes(target.toPath()));
+    }
+
+    @Test
+    public void sourceShorterThanItsStatSizeFailsTheCopy() throws IOException {
+        // As when the file is truncated between the stat and the copy
+        final File source = write(randomBytes(100000));
+        try {
+            transfer(source, folder.newFile(), 200000, null);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().startsWith("Source changed while copying"));
+        }
+    }
+
+    @Test
+    public void cancelDuringAChannelCopyIsReportedAsCanceled() throws IOException {
+        // Larger than one transfer step, so the copy is interrupted between steps
+        final File source = write(randomBytes(20 * 1024 * 1024));
+        final File target = folder.newFile();
+        try {
+            transfer(source, target, source.length(), new ProgressInputStream.Listener() {
+                @Override
+                public void onBytesRead(final long bytesRead) {
+                    // What a cancel does to the worker running the copy
+                    Thread.currentThread().interrupt();
+                }
+            });
+            fail("Expected an InterruptedIOException");
+        } catch (InterruptedIOException expected) {
+            assertEquals("Copy was canceled", expected.getMessage());
+        } finally {
+            assertTrue(Thread.interrupted());
+        }
+        assertTrue(target.length() < source.length());
+    }
+
+    private static long transfer(final File source, final File target, final long size,
+                                 final ProgressInputStream.Listener listener) throws IOException {
+        final FileInputStream in = new FileInputStream(source);
+        try {
+            final FileOutputStream out = new FileOutputStream(target);
+            try {
+                return StreamCopier.transfer(in.getChannel(), out.getChannel(), size, listener);
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private File write(final byte[] data) throws IOException {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private static byte[] randomBytes(final int size) {
+        final byte[] bytes = new byte[size];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+}
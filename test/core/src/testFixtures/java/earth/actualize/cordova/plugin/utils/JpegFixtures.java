@@ -0,0 +1,238 @@
+/*
+    Scanbot Image Picker Cordova Plugin
+    Copyright (c) 2021 doo GmbH
+
+    This code is licensed under MIT license (see LICENSE for details)
+*/
+package earth.actualize.cordova.plugin.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Builds JPEG files for the tests and benchmarks. Synthetic files have the segment layout of a
+ * camera JPEG with random entropy-coded data, which is all the segment rewriter looks at, so they
+ * can be made at any size without encoding pixels. Real files are encoded with ImageIO.
+ */
+public class JpegFixtures {
+
+    public static final int MARKER_APP0 = 0xE0;
+    public static final int MARKER_APP1 = 0xE1;
+    public static final int MARKER_APP2 = 0xE2;
+    public static final int MARKER_APP13 = 0xED;
+    public static final int MARKER_APP14 = 0xEE;
+    public static final int MARKER_COM = 0xFE;
+    public static final int MARKER_DQT = 0xDB;
+    public static final int MARKER_SOF0 = 0xC0;
+    public static final int MARKER_DHT = 0xC4;
+    public static final int MARKER_SOS = 0xDA;
+
+    // Roughly what a camera writes per pixel at its default quality
+    private static final double SCAN_BYTES_PER_PIXEL = 0.3;
+    // Camera EXIF blocks carry a thumbnail and maker notes
+    private static final int CAMERA_EXIF_PADDING = 48 * 1024;
+
+    /**
+     * @return the size of the entropy-coded data of a camera JPEG with the given number of megapixels
+     */
+    public static int scanBytesFor(final double megapixels) {
+        return (int) (megapixels * 1000000 * SCAN_BYTES_PER_PIXEL);
+    }
+
+    /**
+     * Builds a JPEG laid out like a camera's: JFIF, EXIF with the given orientation, XMP, ICC
+     * profile, IPTC, Adobe and comment segments, then tables and the entropy-coded data.
+     * @param orientation the EXIF orientation, 1 to 8
+     * @param littleEndian whether the EXIF block is little-endian ("II") rather than big-endian ("MM")
+     * @param scanBytes the size of the entropy-coded data
+     */
+    public static byte[] cameraJpeg(final int orientation, final boolean littleEndian, final int scanBytes) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(scanBytes + CAMERA_EXIF_PADDING + 4096);
+        out.write(0xFF);
+        out.write(0xD8);
+        writeSegment(out, MARKER_APP0, new byte[] {'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+        writeSegment(out, MARKER_APP1, exif(orientation, littleEndian, CAMERA_EXIF_PADDING));
+        writeSegment(out, MARKER_APP1, withPrefix("http://ns.adobe.com/xap/1.0/\0", 2048));
+        writeSegment(out, MARKER_APP2, withPrefix("ICC_PROFILE\0", 560));
+        writeSegment(out, MARKER_APP13, withPrefix("Photoshop 3.0\0", 256));
+        writeSegment(out, MARKER_APP14, withPrefix("Adobe", 7));
+        writeSegment(out, MARKER_COM, withPrefix("Written by a camera", 0));
+        writeSegment(out, MARKER_DQT, new byte[65]);
+        writeSegment(out, MARKER_SOF0, new byte[] {8, 0x0F, (byte) 0xA0, 0x0B, (byte) 0xB8, 1, 1, 0x11, 0});
+        writeSegment(out, MARKER_DHT, new byte[29]);
+        writeSegment(out, MARKER_SOS, new byte[] {1, 1, 0, 0, 0x3F, 0});
+        final byte[] scan = new byte[scanBytes];
+        new Random(scanBytes).nextBytes(scan);
+        out.write(scan, 0, scan.length);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encodes a gradient image with ImageIO and adds an EXIF block with the given orientation.
+     */
+    public static byte[] realJpeg(final int width, final int height, final int orientation) throws IOException {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, (x * 255 / width) << 16 | (y * 255 / height) << 8 | 0x80);
+            }
+        }
+        final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpeg", encoded);
+        final byte[] jpeg = encoded.toByteArray();
+
+        // After the JFIF segment, which must come first
+        final int insertAt = (jpeg[3] & 0xFF) == MARKER_APP0 ? 4 + ((jpeg[4] & 0xFF) << 8 | (jpeg[5] & 0xFF)) : 2;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length + 64);
+        out.write(jpeg, 0, insertAt);
+        writeSegment(out, MARKER_APP1, exif(orientation, false, 0));
+        out.write(jpeg, insertAt, jpeg.length - insertAt);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the markers of the segments before the entropy-coded data, in order, ending with SOS
+     */
+    public static List<Integer> segmentMarkers(final byte[] jpeg) {
+        final List<Integer> markers = new ArrayList<>();
+        int offset = 2;
+        while (offset + 4 <= jpeg.length) {
+            final int marker = jpeg[offset + 1] & 0xFF;
+            markers.add(marker);
+            if (marker == MARKER_SOS) {
+                break;
+            }
+            offset += 2 + ((jpeg[offset + 2] & 0xFF) << 8 | (jpeg[offset + 3] & 0xFF));
+        }
+        return markers;
+    }
+
+    /**
+     * @return the EXIF orientation of a JPEG, or 0 if it has none
+     */
+    public static int exifOrientation(final byte[] jpeg) {
+        int offset = 2;
+        while (offset + 4 <= jpeg.length) {
+            final int marker = jpeg[offset + 1] & 0xFF;
+            final int length = (jpeg[offset + 2] & 0xFF) << 8 | (jpeg[offset + 3] & 0xFF);
+            if (marker == MARKER_SOS) {
+                return 0;
+            }
+            if (marker == MARKER_APP1 && jpeg[offset + 4] == 'E' && jpeg[offset + 5] == 'x') {
+                final int tiff = offset + 10;
+                final boolean littleEndian = jpeg[tiff] == 'I';
+                final int ifd = tiff + readInt(jpeg, tiff + 4, littleEndian);
+                final int entries = readShort(jpeg, ifd, littleEndian);
+                for (int i = 0; i < entries; i++) {
+                    final int entry = ifd + 2 + i * 12;
+                    if (readShort(jpeg, entry, littleEndian) == 0x0112) {
+                        return readShort(jpeg, entry + 8, littleEndian);
+                    }
+                }
+                return 0;
+            }
+            offset += 2 + length;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds an EXIF block whose IFD0 holds Make, Orientation and an XResolution pointing past the
+     * IFD, followed by padding standing in for a thumbnail.
+     */
+    private static byte[] exif(final int orientation, final boolean littleEndian, final int padding) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+        out.write(littleEndian ? 'I' : 'M');
+        out.write(littleEndian ? 'I' : 'M');
+        writeShort(out, 42, littleEndian);
+        writeInt(out, 8, littleEndian);
+        // IFD0: Make, Orientation, XResolution
+        writeShort(out, 3, littleEndian);
+        writeEntry(out, 0x010F, 2, 4, 'D' << 24 | 'o' << 16 | 'o' << 8, littleEndian);
+        writeShort(out, 0x0112, littleEndian);
+        writeShort(out, 3, littleEndian);
+        writeInt(out, 1, littleEndian);
+        writeShort(out, orientation, littleEndian);
+        writeShort(out, 0, littleEndian);
+        writeEntry(out, 0x011A, 5, 1, 8 + 2 + 3 * 12 + 4, littleEndian);
+        writeInt(out, 0, littleEndian);
+        writeInt(out, 72, littleEndian);
+        writeInt(out, 1, littleEndian);
+        out.write(new byte[padding], 0, padding);
+        return out.toByteArray();
+    }
+
+    private static void writeEntry(final ByteArrayOutputStream out, final int tag, final int type, final int count,
+                                   final int value, final boolean littleEndian) {
+        writeShort(out, tag, littleEndian);
+        writeShort(out, type, littleEndian);
+        writeInt(out, count, littleEndian);
+        if (type == 2) {
+            // Inline ASCII is stored in file order whatever the byte order
+            writeInt(out, value, false);
+        } else {
+            writeInt(out, value, littleEndian);
+        }
+    }
+
+    private static byte[] withPrefix(final String prefix, final int padding) {
+        final byte[] bytes = new byte[prefix.length() + padding];
+        for (int i = 0; i < prefix.length(); i++) {
+            bytes[i] = (byte) prefix.charAt(i);
+        }
+        return bytes;
+    }
+
+    private static void writeSegment(final ByteArrayOutputStream out, final int marker, final byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        writeShort(out, payload.length + 2, false);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static void writeShort(final ByteArrayOutputStream out, final int value, final boolean littleEndian) {
+        if (littleEndian) {
+            out.write(value & 0xFF);
+            out.write((value >> 8) & 0xFF);
+        } else {
+            out.write((value >> 8) & 0xFF);
+            out.write(value & 0xFF);
+        }
+    }
+
+    private static void writeInt(final ByteArrayOutputStream out, final int value, final boolean littleEndian) {
+        if (littleEndian) {
+            writeShort(out, value & 0xFFFF, true);
+            writeShort(out, (value >>> 16) & 0xFFFF, true);
+        } else {
+            writeShort(out, (value >>> 16) & 0xFFFF, false);
+            writeShort(out, value & 0xFFFF, false);
+        }
+    }
+
+    private static int readShort(final byte[] data, final int offset, final boolean littleEndian) {
+        final int b0 = data[offset] & 0xFF;
+        final int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(final byte[] data, final int offset, final boolean littleEndian) {
+        final int high = readShort(data, offset + (littleEndian ? 2 : 0), littleEndian);
+        final int low = readShort(data, offset + (littleEndian ? 0 : 2), littleEndian);
+        return high << 16 | low;
+    }
+}
@@ -30,9 +30,87 @@ function createCordovaPromise(actionName, module = DEFAULT_MODULE) {
   }
 }
 
+// Passing an `onItem` callback switches pickImages to streaming mode: each item is reported
+// as soon as it has been processed, and the promise resolves with the final summary.
+// Passing an `onPreviews` callback delivers small previews of the selection as they are ready.
+// Passing an `onProgress` callback reports the bytes read from the provider and the progress of video transcoding.
+// With `returnMode: "arraybuffer"` the processed files arrive as binary chunks, assembled here
+// into the `data` field of each item.
+function createStreamingCordovaPromise(actionName, module = DEFAULT_MODULE) {
+  const cordovaFunction = createCordovaFunction(actionName, module)
+  return (options) => {
+    const onItem = options && options.onItem;
+    const onPreviews = options && options.onPreviews;
+    const onProgress = options && options.onProgress;
+    const arrayBuffers = options && options.returnMode === "arraybuffer";
+    if (typeof onItem !== "function" && typeof onPreviews !== "function" && typeof onProgress !== "function" && !arrayBuffers) {
+      return new Promise((resolve, reject) => cordovaFunction(resolve, reject, options))
+    }
+
+    const nativeOptions = Object.assign({}, options);
+    delete nativeOptions.onItem;
+    delete nativeOptions.onPreviews;
+    delete nativeOptions.onProgress;
+    if (typeof onItem === "function") {
+      nativeOptions.streamResults = true;
+    }
+    if (typeof onPreviews === "function") {
+      nativeOptions.previews = true;
+    }
+    if (typeof onProgress === "function") {
+      nativeOptions.progressEvents = true;
+    }
+
+    // Item index -> bytes received so far
+    const buffers = {};
+    const attachData = (item, index) => {
+      if (item && item.returnMode === "arraybuffer" && buffers[index]) {
+        item.data = buffers[index].buffer;
+      }
+    };
+
+    return new Promise((resolve, reject) => cordovaFunction((result, chunk) => {
+      if (result && result.type === "chunk") {
+        if (!buffers[result.index] || result.offset === 0) {
+          buffers[result.index] = new Uint8Array(result.byteLength);
+        }
+        buffers[result.index].set(new Uint8Array(chunk), result.offset);
+      } else if (result && result.type === "item") {
+        attachData(result, result.index);
+        onItem(result);
+      } else if (result && result.type === "previews") {
+        onPreviews(result.previews);
+      } else if (result && result.type === "progress") {
+        onProgress(result);
+      } else {
+        if (result && Array.isArray(result.items)) {
+          result.items.forEach((item) => attachData(item, item.index));
+        } else {
+          attachData(result, 0);
+        }
+        resolve(result);
+      }
+    }, reject, nativeOptions))
+  }
+}
+
+// Handles from a lazy pick are passed to the native side together with the processing options
+const materialize = createStreamingCordovaPromise("materialize");
+const releaseHandles = createCordovaPromise("releaseHandles");
+
 var API = {
-  pickImage: createCordovaPromise("pickImage"),
-  pickImages: createCordovaPromise("pickImages")
+  pickImage: createStreamingCordovaPromise("pickImage"),
+  pickImages: createStreamingCordovaPromise("pickImages"),
+  materialize: (handles, options) => materialize(Object.assign({}, options, { handles: handles })),
+  releaseHandles: (handles) => releaseHandles({ handles: handles }),
+  getCacheStats: createCordovaPromise("getCacheStats"),
+  clearCache: createCordovaPromise("clearCache"),
+  getBitmapPoolStats: createCordovaPromise("getBitmapPoolStats"),
+  getMemoryStats: createCordovaPromise("getMemoryStats"),
+  getMetrics: createCordovaPromise("getMetrics"),
+  resetMetrics: createCordovaPromise("resetMetrics"),
+  cancel: createCordovaPromise("cancel"),
+  resumePending: createCordovaPromise("resumePending")
 };
 
 module.exports = API;
\ No newline at end of file